@@ -1,5 +1,13 @@
 package me.doubledutch.lazyjson;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * An array used to parse and inspect JSON data given in the form of a string.
  */
@@ -23,6 +31,244 @@ public class LazyArray extends LazyElement{
 		root=parser.root;
 	}
 
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given string, only tokenizing the given number of nested levels up
+	 * front. Objects and arrays nested deeper than that are only matched to
+	 * find their end, and are tokenized the first time they are accessed.
+	 * This saves most of the work for large documents where only a few
+	 * values near the top are read. Errors inside the deferred parts are not
+	 * reported until they are accessed.
+	 *
+	 * @param raw the input string
+	 * @param expandDepth the number of levels of objects and arrays below this one to tokenize up front
+	 * @throws LazyException if the string could not be parsed as a JSON array
+	 */
+	public LazyArray(String raw,int expandDepth) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.expandDepth=expandDepth;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given string, optionally decoding every number while tokenizing. This
+	 * makes parsing slower, but every later read of a number is a plain
+	 * field load, which pays off for documents such as metrics or
+	 * coordinates where most numbers are read, often more than once.
+	 *
+	 * @param raw the input string
+	 * @param decodeNumbers true to decode numbers up front instead of on first access
+	 * @throws LazyException if the string could not be parsed as a JSON array
+	 */
+	public LazyArray(String raw,boolean decodeNumbers) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.decodeNumbers=decodeNumbers;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given string, only tokenizing the fields included in the given
+	 * projection. All other fields are skipped during parsing and will not
+	 * be present in the array.
+	 *
+	 * @param raw the input string
+	 * @param projection the fields to include
+	 * @throws LazyException if the string could not be parsed as a JSON array
+	 */
+	public LazyArray(String raw,LazyProjection projection) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.setProjection(projection);
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given string, using the given pool to tokenize large arrays in
+	 * parallel. The values of the array are split into chunks that are
+	 * tokenized concurrently and then linked back together. The result is
+	 * identical to the one produced by the single threaded parser, which is
+	 * also used for small inputs or if the input can not be split.
+	 *
+	 * @param raw the input string
+	 * @param pool the pool used to run the tokenizer tasks
+	 * @throws LazyException if the string could not be parsed as a JSON array
+	 */
+	public LazyArray(String raw,ForkJoinPool pool) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.tokenize(pool);
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given range of characters. The array is used as is without copying, and
+	 * all indexes into it are absolute, so many documents can be packed into
+	 * one large pooled buffer. The caller keeps ownership of the array, but
+	 * must not modify the range while this array or any value taken from
+	 * it is in use. Values added with put are kept separately and are never
+	 * written to the array.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first character of the input
+	 * @param length the number of characters in the input
+	 * @throws LazyException if the input could not be parsed as a JSON array
+	 */
+	public LazyArray(char[] raw,int offset,int length) throws LazyException{
+		this(raw,offset,length,false);
+	}
+
+	/**
+	 * Same as above, optionally decoding every number while tokenizing, see
+	 * the string constructor taking the same flag.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first character of the input
+	 * @param length the number of characters in the input
+	 * @param decodeNumbers true to decode numbers up front instead of on first access
+	 * @throws LazyException if the input could not be parsed as a JSON array
+	 */
+	public LazyArray(char[] raw,int offset,int length,boolean decodeNumbers) throws LazyException{
+		LazyParser parser=new LazyParser(raw,offset,length);
+		parser.decodeNumbers=decodeNumbers;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation
+	 * between the position and the limit of the given buffer. If the buffer is
+	 * backed by an accessible array, such as the output of a CharsetDecoder,
+	 * that array is used without copying under the same rules as for a char
+	 * array range above. Read only buffers are copied first. The position and
+	 * limit of the buffer are left untouched.
+	 *
+	 * @param raw the input buffer
+	 * @throws LazyException if the input could not be parsed as a JSON array
+	 */
+	public LazyArray(CharBuffer raw) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given character sequence, such as a StringBuilder. Since the sequence
+	 * does not give access to its characters, they are copied once, straight
+	 * into the buffer that is tokenized, without going through a String.
+	 *
+	 * @param raw the input characters
+	 * @throws LazyException if the input could not be parsed as a JSON array
+	 */
+	public LazyArray(CharSequence raw) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON data in
+	 * the given byte array. The data is tokenized in place and is not decoded
+	 * until string values are requested, so the array must not be modified
+	 * while this object is in use.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(byte[] raw) throws LazyException{
+		this(ByteBuffer.wrap(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON data
+	 * between the position and the limit of the given buffer. The data is
+	 * tokenized in place and is not decoded until string values are
+	 * requested, so the buffer contents must not be modified while this array
+	 * is in use. The position and limit of the buffer are left untouched.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(ByteBuffer raw) throws LazyException{
+		this(raw,false);
+	}
+
+	/**
+	 * Same as above, optionally decoding every number while tokenizing, see
+	 * the string constructor taking the same flag. This also works for
+	 * buffers mapped from a file.
+	 *
+	 * @param raw the input data
+	 * @param decodeNumbers true to decode numbers up front instead of on first access
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(ByteBuffer raw,boolean decodeNumbers) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.decodeNumbers=decodeNumbers;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON data in the
+	 * given file. The file is memory mapped rather than read into the heap,
+	 * so values and sub elements are pulled straight from the page cache when
+	 * they are requested. The file must not be modified while the array is in
+	 * use.
+	 *
+	 * Files larger than 2GB, the limit of a single mapping, are mapped in
+	 * several windows that each hold a part of the values of the root, and
+	 * any value of the root must fit in a window. Errors in such files are
+	 * reported with their byte offset in the message.
+	 *
+	 * @param path the file to parse
+	 * @return a new array backed by the mapped file
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the file could not be parsed as a JSON array
+	 */
+	public static LazyArray open(Path path) throws IOException,LazyException{
+		return open(path,Integer.MAX_VALUE);
+	}
+
+	// Same as above with the size of the mapped windows as a parameter, so
+	// the windows can be tested without creating huge files
+	protected static LazyArray open(Path path,int windowSize) throws IOException,LazyException{
+		LazyNode root=map(path,windowSize);
+		if(root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",0);
+		}
+		return new LazyArray(root);
+	}
+
 	public LazyArray() throws LazyException{
 		LazyParser parser=new LazyParser("[]");
 		parser.tokenize();	
@@ -37,40 +283,6 @@ public class LazyArray extends LazyElement{
 		super(root,source,null);
 	}*/
 
-	protected String serializeElementToString(){
-		StringBuilder buf=new StringBuilder();
-		buf.append("[");
-		LazyNode pointer=root.child;
-		boolean first=true;
-		while(pointer!=null){
-			if(first){
-				first=false;
-			}else{
-				buf.append(",");
-			}
-			if(pointer.type==LazyNode.OBJECT){
-				buf.append(new LazyObject(pointer).toString());
-			}else if(pointer.type==LazyNode.ARRAY){
-				buf.append(new LazyArray(pointer).toString());
-			}else if(pointer.type==LazyNode.VALUE_STRING || pointer.type==LazyNode.VALUE_ESTRING){
-				buf.append("\"");
-				buf.append(pointer.getStringValue());
-				buf.append("\"");
-			}else if(pointer.type==LazyNode.VALUE_TRUE){
-				buf.append("true");
-			}else if(pointer.type==LazyNode.VALUE_FALSE){
-				buf.append("false");
-			}else if(pointer.type==LazyNode.VALUE_NULL){
-				buf.append("null");
-			}else{
-				buf.append(pointer.getStringValue());
-			}
-			pointer=pointer.next;
-		}
-		buf.append("]");
-		return buf.toString();
-	}
-
 	/**
 	 * Returns the type of this element.
 	 *
@@ -80,36 +292,6 @@ public class LazyArray extends LazyElement{
 		return LazyType.ARRAY;
 	}
 
-	public int hashCode(){
-		int code=2;
-		for(int i=0;i<length();i++){
-			LazyType t1=getType(i);
-			switch(t1){
-				case STRING:code+=getString(i).hashCode();
-					break;
-				case INTEGER:
-						long l=getLong(i);
-						code+=(int)(l ^ (l >>> 32));
-					break;
-				case FLOAT:
-						double d=getDouble(i);
-						l=Double.doubleToLongBits(d);
-						code+=(int)(l ^ (l >>> 32));
-					break;
-				case BOOLEAN:
-						if(getBoolean(i)){
-							code+=1;
-						}
-					break;
-				case OBJECT:code+=37*getJSONObject(i).hashCode();
-					break;
-				case ARRAY:code+=37*getJSONArray(i).hashCode();
-					break;
-			}
-		}
-		return code;
-	}
-
 	/**
 	 * Returns the value type of the given field.
 	 *
@@ -187,12 +369,14 @@ public class LazyArray extends LazyElement{
 			root.lastChild=token;
 		}
 		root.dirty=true;
+		root.doc.modified=true;
 		selectToken=null;
 		selectInt=-1;
 	}
 
 	private void insertChild(int index,LazyNode token) throws LazyException{
 		root.dirty=true;
+		root.doc.modified=true;
 		if(index==0){
 			token.next=root.child;
 			root.child=token;
@@ -250,9 +434,9 @@ public class LazyArray extends LazyElement{
 	public LazyArray put(boolean value) throws LazyException{
 		LazyNode child=null;
 		if(value){
-			child=LazyNode.cValueTrue(-1);
+			child=LazyNode.cValueTrue(-1,root.doc);
 		}else{
-			child=LazyNode.cValueFalse(-1);
+			child=LazyNode.cValueFalse(-1,root.doc);
 		}
 		child.dirty=true;
 		appendChild(child);
@@ -271,7 +455,7 @@ public class LazyArray extends LazyElement{
 
 	public LazyArray put(Object value) throws LazyException{
 		if(value==LazyObject.NULL){
-			LazyNode child=LazyNode.cValueNull(-1);
+			LazyNode child=LazyNode.cValueNull(-1,root.doc);
 			child.dirty=true;
 			appendChild(child);
 			return this;
@@ -307,7 +491,7 @@ public class LazyArray extends LazyElement{
 
 	public LazyArray put(int index,Object value) throws LazyException{
 		if(value==LazyObject.NULL){
-			LazyNode child=LazyNode.cValueNull(-1);
+			LazyNode child=LazyNode.cValueNull(-1,root.doc);
 			child.dirty=true;
 			insertChild(index,child);
 			return this;
@@ -379,9 +563,9 @@ public class LazyArray extends LazyElement{
 	public LazyArray put(int index,boolean value) throws LazyException{
 		LazyNode child=null;
 		if(value){
-			child=LazyNode.cValueTrue(-1);
+			child=LazyNode.cValueTrue(-1,root.doc);
 		}else{
-			child=LazyNode.cValueFalse(-1);
+			child=LazyNode.cValueFalse(-1,root.doc);
 		}
 		child.dirty=true;
 		insertChild(index,child);
@@ -407,15 +591,23 @@ public class LazyArray extends LazyElement{
 			if(pointer==token){
 				// System.out.println("yes, it was the first");
 				root.child=token.next;
+				if(root.lastChild==token){
+					root.lastChild=null;
+				}
 			}else{
 				while(pointer!=null){
 					if(pointer.next==token){
 						pointer.next=token.next;
+						if(root.lastChild==token){
+							root.lastChild=pointer;
+						}
 					}
 					pointer=pointer.next;
 				}
 			}
 			root.dirty=true;
+			root.doc.modified=true;
+			discard(token);
 		}
 		selectToken=null;
 		selectInt=-1;
@@ -545,6 +737,21 @@ public class LazyArray extends LazyElement{
 		return token.getStringValue();
 	}
 
+	/**
+	 * Returns the string value stored at the given index as a view of the
+	 * source characters, without copying them into a new String. Values with
+	 * escaped characters and values parsed from UTF-8 data are returned as a
+	 * String.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the requested value
+	 * @throws LazyException if the index is out of bounds
+	 */
+	public CharSequence getCharSequence(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		return token.getCharSequenceValue();
+	}
+
 	/**
 	 * Returns the string value stored at the given index or null if there was no such value.
 	 *
@@ -697,6 +904,61 @@ public class LazyArray extends LazyElement{
 		return token.getDoubleValue();
 	}
 
+	/**
+	 * Returns the integer value stored at the given index without any limit
+	 * on its size.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the value if it could be parsed as an integer
+	 * @throws LazyException if the index is out of bounds or the value was not an integer
+	 */
+	public BigInteger getBigInteger(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the integer value stored at the given index without any limit
+	 * on its size, or the default value if there was no such value.
+	 *
+	 * @param index the location of the value in this array
+	 * @param defaultValue the value to return if there is no value at the given index
+	 * @return the value if it could be parsed as an integer or the default value if there was no such value
+	 */
+	public BigInteger optBigInteger(int index,BigInteger defaultValue){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the exact decimal value stored at the given index.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the value if it could be parsed as a decimal
+	 * @throws LazyException if the index is out of bounds or the value was not a number
+	 */
+	public BigDecimal getBigDecimal(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		return token.getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the exact decimal value stored at the given index or the
+	 * default value if there was no such value.
+	 *
+	 * @param index the location of the value in this array
+	 * @param defaultValue the value to return if there is no value at the given index
+	 * @return the value if it could be parsed as a decimal or the default value if there was no such value
+	 */
+	public BigDecimal optBigDecimal(int index,BigDecimal defaultValue){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigDecimalValue();
+	}
+
 	/**
 	 * Returns true if the value stored at the given index is null.
 	 *
@@ -0,0 +1,113 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * A read only view of a range of characters in the source of a parsed
+ * document. Creating a view does not copy any characters, so values can be
+ * compared, hashed or appended to other buffers without creating a String.
+ *
+ * The hash code is computed the same way as for a String with the same
+ * characters. Since String.equals only accepts other strings, use
+ * contentEquals to compare a view with a String or any other CharSequence.
+ */
+public final class LazyCharSequence implements CharSequence{
+	private final char[] cbuf;
+	private final int start;
+	private final int end;
+
+	// Cached hash code, zero if not computed yet
+	private int hash=0;
+
+	/**
+	 * Create a new view of the given range of characters.
+	 *
+	 * @param cbuf the source
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 */
+	protected LazyCharSequence(char[] cbuf,int start,int end){
+		this.cbuf=cbuf;
+		this.start=start;
+		this.end=end;
+	}
+
+	public int length(){
+		return end-start;
+	}
+
+	public char charAt(int index){
+		if(index<0 || index>=end-start){
+			throw new IndexOutOfBoundsException("Index out of bounds "+index);
+		}
+		return cbuf[start+index];
+	}
+
+	public CharSequence subSequence(int from,int to){
+		if(from<0 || to>end-start || from>to){
+			throw new IndexOutOfBoundsException("Range out of bounds "+from+" to "+to);
+		}
+		return new LazyCharSequence(cbuf,start+from,start+to);
+	}
+
+	/**
+	 * Compares the characters of this view with the given sequence.
+	 *
+	 * @param other the sequence to compare with
+	 * @return true if both contain the exact same characters
+	 */
+	public boolean contentEquals(CharSequence other){
+		int length=end-start;
+		if(other.length()!=length){
+			return false;
+		}
+		if(other instanceof LazyCharSequence){
+			LazyCharSequence seq=(LazyCharSequence)other;
+			for(int i=0;i<length;i++){
+				if(cbuf[start+i]!=seq.cbuf[seq.start+i]){
+					return false;
+				}
+			}
+			return true;
+		}
+		for(int i=0;i<length;i++){
+			if(cbuf[start+i]!=other.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the characters of this view to the given builder without
+	 * creating an intermediate String.
+	 *
+	 * @param buf the builder to append to
+	 */
+	public void appendTo(StringBuilder buf){
+		buf.append(cbuf,start,end-start);
+	}
+
+	public boolean equals(Object other){
+		if(other==this){
+			return true;
+		}
+		if(!(other instanceof LazyCharSequence)){
+			return false;
+		}
+		return contentEquals((LazyCharSequence)other);
+	}
+
+	public int hashCode(){
+		int h=hash;
+		if(h==0){
+			for(int i=start;i<end;i++){
+				h=31*h+cbuf[i];
+			}
+			hash=h;
+		}
+		return h;
+	}
+
+	public String toString(){
+		return new String(cbuf,start,end-start);
+	}
+}
@@ -0,0 +1,144 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Holds the buffers shared by all tokens of a parsed document: the source
+ * that was tokenized and the buffer that values added after parsing are
+ * appended to. Tokens are given a reference to the document when they are
+ * created, so there is no need to walk the tree after parsing to hand out
+ * the buffers.
+ */
+final class LazyDocument{
+	protected final char[] cbuf;
+	// Set instead of cbuf when the source was parsed directly from UTF-8 data
+	protected final ByteBuffer bbuf;
+	// Values added after parsing are appended here. Unlike a StringBuilder
+	// the array can be read directly, so modified values are read by the
+	// exact same code as values in the source.
+	protected char[] dirtyBuf=null;
+	protected int dirtyLength=0;
+	// Set the first time any element of the document is changed, and never
+	// cleared. Hashes are only cached for documents that were not changed.
+	protected boolean modified=false;
+	// Number of characters in dirtyBuf held by values that were replaced or
+	// removed, only tracked while automatic compaction is enabled
+	protected int wasted=0;
+	// Fraction of dirtyBuf that may be wasted before the document is
+	// compacted automatically, or 0 if it never is
+	protected double compactionRatio=0;
+	// Hash indexes over the fields of wide objects, keyed by the object
+	// token. Only objects with more than LazyFieldIndex.THRESHOLD fields
+	// ever get one, so they are kept here instead of on every token.
+	private IdentityHashMap<LazyNode,LazyFieldIndex> indexes=null;
+
+	protected LazyDocument(char[] cbuf){
+		this.cbuf=cbuf;
+		this.bbuf=null;
+	}
+
+	protected LazyDocument(ByteBuffer bbuf){
+		this.cbuf=null;
+		this.bbuf=bbuf;
+	}
+
+	/**
+	 * Creates a document sharing the source of another document, with an
+	 * empty buffer for modified values. Used when compacting a document.
+	 *
+	 * @param doc the document to share the source and settings of
+	 */
+	protected LazyDocument(LazyDocument doc){
+		this.cbuf=doc.cbuf;
+		this.bbuf=doc.bbuf;
+		this.modified=doc.modified;
+		this.compactionRatio=doc.compactionRatio;
+	}
+
+	/**
+	 * Appends a value added to the document after it was parsed.
+	 *
+	 * @param value the characters to append
+	 * @return the index of the first appended character in dirtyBuf
+	 */
+	protected int append(String value){
+		int start=dirtyLength;
+		int length=value.length();
+		ensureCapacity(length);
+		value.getChars(0,length,dirtyBuf,start);
+		dirtyLength=start+length;
+		return start;
+	}
+
+	/**
+	 * Appends a range of characters, typically a value moved here from the
+	 * buffer of another document.
+	 *
+	 * @param source the characters to append from
+	 * @param offset the index of the first character to append
+	 * @param length the number of characters to append
+	 * @return the index of the first appended character in dirtyBuf
+	 */
+	protected int append(char[] source,int offset,int length){
+		int start=dirtyLength;
+		ensureCapacity(length);
+		System.arraycopy(source,offset,dirtyBuf,start,length);
+		dirtyLength=start+length;
+		return start;
+	}
+
+	/**
+	 * Returns the field index of an object of this document, building it the
+	 * first time it is requested.
+	 *
+	 * @param object the object token
+	 * @return the index over the fields of the object
+	 */
+	protected LazyFieldIndex getIndex(LazyNode object){
+		LazyFieldIndex index=findIndex(object);
+		if(index==null){
+			index=buildIndex(object);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the field index of an object of this document if one has been
+	 * built, without building it.
+	 *
+	 * @param object the object token
+	 * @return the index over the fields of the object or null
+	 */
+	protected LazyFieldIndex findIndex(LazyNode object){
+		if(indexes==null){
+			return null;
+		}
+		return indexes.get(object);
+	}
+
+	/**
+	 * Builds a new field index for an object of this document, replacing the
+	 * previous one.
+	 *
+	 * @param object the object token
+	 * @return the new index
+	 */
+	protected LazyFieldIndex buildIndex(LazyNode object){
+		if(indexes==null){
+			indexes=new IdentityHashMap<LazyNode,LazyFieldIndex>();
+		}
+		LazyFieldIndex index=LazyFieldIndex.build(object);
+		indexes.put(object,index);
+		return index;
+	}
+
+	private void ensureCapacity(int length){
+		if(dirtyBuf==null){
+			dirtyBuf=new char[Math.max(16,length)];
+		}else if(dirtyLength+length>dirtyBuf.length){
+			dirtyBuf=Arrays.copyOf(dirtyBuf,Math.max(dirtyBuf.length*2,dirtyLength+length));
+		}
+	}
+}
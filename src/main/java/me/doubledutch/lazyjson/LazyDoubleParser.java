@@ -0,0 +1,310 @@
+package me.doubledutch.lazyjson;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses decimal numbers straight from the source buffers into correctly
+ * rounded doubles, without creating a String first.
+ *
+ * The digits are collected into a 64 bit decimal mantissa and a power of
+ * ten. Small values that can be represented exactly are converted with a
+ * single multiplication or division, which is correctly rounded by IEEE 754
+ * itself. Everything else goes through the Eisel-Lemire algorithm, which
+ * multiplies the mantissa with a 128 bit approximation of the power of ten
+ * and only gives up on the rare inputs where the approximation is too close
+ * to a rounding boundary to decide.
+ *
+ * Inputs that are not plain JSON numbers, have more than 19 significant
+ * digits, or are given up on are reported by returning NaN, and the caller
+ * falls back to Double.parseDouble. Since a JSON number can never be NaN,
+ * the result is always bit for bit the same as Double.parseDouble would
+ * have returned.
+ */
+final class LazyDoubleParser{
+	// Range of powers of ten covered by the table. Any value outside of it
+	// is either zero or infinity, which is left to Double.parseDouble.
+	private static final int MIN_EXPONENT=-342;
+	private static final int MAX_EXPONENT=308;
+
+	// The high and low 64 bits of each power of ten, normalized so the top
+	// bit is set and rounded down
+	private static final long[] POWERS=new long[(MAX_EXPONENT-MIN_EXPONENT+1)*2];
+
+	// Powers of ten that are exactly representable as a double
+	private static final double[] SMALL_POWERS={
+		1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,
+		1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22
+	};
+
+	static{
+		BigInteger mask=BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for(int exp10=MIN_EXPONENT;exp10<=MAX_EXPONENT;exp10++){
+			BigInteger power=BigInteger.TEN.pow(Math.abs(exp10));
+			int bits=power.bitLength();
+			BigInteger value;
+			if(exp10<0){
+				value=BigInteger.ONE.shiftLeft(127+bits).divide(power);
+			}else if(bits>128){
+				value=power.shiftRight(bits-128);
+			}else{
+				value=power.shiftLeft(128-bits);
+			}
+			int index=(exp10-MIN_EXPONENT)*2;
+			POWERS[index]=value.shiftRight(64).longValue();
+			POWERS[index+1]=value.and(mask).longValue();
+		}
+	}
+
+	private LazyDoubleParser(){}
+
+	/**
+	 * Parses the given range of characters as a double.
+	 *
+	 * @param cbuf the source
+	 * @param start the index of the first character of the number
+	 * @param end the index after the last character of the number
+	 * @return the parsed value or NaN if the caller must use Double.parseDouble
+	 */
+	protected static double parse(char[] cbuf,int start,int end){
+		int i=start;
+		boolean negative=false;
+		if(i<end && cbuf[i]=='-'){
+			negative=true;
+			i++;
+		}
+		long mantissa=0;
+		int digits=0;
+		int exp10=0;
+		int digitStart=i;
+		char c=0;
+		while(i<end && (c=cbuf[i])>='0' && c<='9'){
+			mantissa=mantissa*10+(c-'0');
+			if(mantissa!=0){
+				digits++;
+			}
+			i++;
+		}
+		if(i==digitStart){
+			return Double.NaN;
+		}
+		if(i<end && c=='.'){
+			i++;
+			digitStart=i;
+			while(i<end && (c=cbuf[i])>='0' && c<='9'){
+				mantissa=mantissa*10+(c-'0');
+				if(mantissa!=0){
+					digits++;
+				}
+				exp10--;
+				i++;
+			}
+			if(i==digitStart){
+				return Double.NaN;
+			}
+		}
+		if(i<end && (c=='e' || c=='E')){
+			i++;
+			boolean negativeExponent=false;
+			if(i<end && (cbuf[i]=='-' || cbuf[i]=='+')){
+				negativeExponent=cbuf[i]=='-';
+				i++;
+			}
+			int exponent=0;
+			digitStart=i;
+			while(i<end && (c=cbuf[i])>='0' && c<='9'){
+				// Anything this large is zero or infinity anyway
+				if(exponent<100000){
+					exponent=exponent*10+(c-'0');
+				}
+				i++;
+			}
+			if(i==digitStart){
+				return Double.NaN;
+			}
+			exp10+=negativeExponent?-exponent:exponent;
+		}
+		if(i!=end || digits>19){
+			return Double.NaN;
+		}
+		return toDouble(mantissa,exp10,negative);
+	}
+
+	/**
+	 * Byte oriented version of parse for UTF-8 sources. Keep the two
+	 * versions in sync!
+	 *
+	 * @param bbuf the source
+	 * @param start the index of the first byte of the number
+	 * @param end the index after the last byte of the number
+	 * @return the parsed value or NaN if the caller must use Double.parseDouble
+	 */
+	protected static double parse(ByteBuffer bbuf,int start,int end){
+		int i=start;
+		boolean negative=false;
+		if(i<end && bbuf.get(i)=='-'){
+			negative=true;
+			i++;
+		}
+		long mantissa=0;
+		int digits=0;
+		int exp10=0;
+		int digitStart=i;
+		byte c=0;
+		while(i<end && (c=bbuf.get(i))>='0' && c<='9'){
+			mantissa=mantissa*10+(c-'0');
+			if(mantissa!=0){
+				digits++;
+			}
+			i++;
+		}
+		if(i==digitStart){
+			return Double.NaN;
+		}
+		if(i<end && c=='.'){
+			i++;
+			digitStart=i;
+			while(i<end && (c=bbuf.get(i))>='0' && c<='9'){
+				mantissa=mantissa*10+(c-'0');
+				if(mantissa!=0){
+					digits++;
+				}
+				exp10--;
+				i++;
+			}
+			if(i==digitStart){
+				return Double.NaN;
+			}
+		}
+		if(i<end && (c=='e' || c=='E')){
+			i++;
+			boolean negativeExponent=false;
+			if(i<end && (bbuf.get(i)=='-' || bbuf.get(i)=='+')){
+				negativeExponent=bbuf.get(i)=='-';
+				i++;
+			}
+			int exponent=0;
+			digitStart=i;
+			while(i<end && (c=bbuf.get(i))>='0' && c<='9'){
+				if(exponent<100000){
+					exponent=exponent*10+(c-'0');
+				}
+				i++;
+			}
+			if(i==digitStart){
+				return Double.NaN;
+			}
+			exp10+=negativeExponent?-exponent:exponent;
+		}
+		if(i!=end || digits>19){
+			return Double.NaN;
+		}
+		return toDouble(mantissa,exp10,negative);
+	}
+
+	/**
+	 * Returns the double closest to mantissa*10^exp10, where the mantissa is
+	 * an unsigned value of at most 19 decimal digits.
+	 *
+	 * @param mantissa the decimal digits
+	 * @param exp10 the power of ten
+	 * @param negative true if the value is negative
+	 * @return the correctly rounded value or NaN if it could not be decided
+	 */
+	protected static double toDouble(long mantissa,int exp10,boolean negative){
+		if(mantissa==0){
+			return negative?-0.0:0.0;
+		}
+		if(mantissa>0 && mantissa<=(1L<<53) && exp10>=-22 && exp10<=22){
+			// Both the mantissa and the power of ten are exact, so a single
+			// correctly rounded operation gives the right result
+			double value=mantissa;
+			if(exp10<0){
+				value/=SMALL_POWERS[-exp10];
+			}else{
+				value*=SMALL_POWERS[exp10];
+			}
+			return negative?-value:value;
+		}
+		if(exp10<MIN_EXPONENT || exp10>MAX_EXPONENT){
+			return Double.NaN;
+		}
+		return eiselLemire(mantissa,exp10,negative);
+	}
+
+	private static double eiselLemire(long mantissa,int exp10,boolean negative){
+		// Normalize the mantissa so its top bit is set
+		int shift=Long.numberOfLeadingZeros(mantissa);
+		mantissa<<=shift;
+		// 217706/2^16 is close enough to log2(10) for the table range
+		long exp2=((217706L*exp10)>>16)+64+1023-shift;
+
+		int index=(exp10-MIN_EXPONENT)*2;
+		long powerHigh=POWERS[index];
+		long powerLow=POWERS[index+1];
+		long high=multiplyHigh(mantissa,powerHigh);
+		long low=mantissa*powerHigh;
+
+		// If the truncated bits could change the result, use the low half
+		// of the power of ten as well
+		if((high&0x1FF)==0x1FF && unsignedLess(low+mantissa,mantissa)){
+			long carryHigh=multiplyHigh(mantissa,powerLow);
+			long carryLow=mantissa*powerLow;
+			long mergedHigh=high;
+			long mergedLow=low+carryHigh;
+			if(unsignedLess(mergedLow,low)){
+				mergedHigh++;
+			}
+			if((mergedHigh&0x1FF)==0x1FF && mergedLow==-1 && unsignedLess(carryLow+mantissa,mantissa)){
+				return Double.NaN;
+			}
+			high=mergedHigh;
+			low=mergedLow;
+		}
+
+		// Shift down to 54 bits, one more than needed, to round with
+		int msb=(int)(high>>>63);
+		long result=high>>>(msb+9);
+		exp2-=1^msb;
+
+		// Exactly halfway between two doubles, we can not tell which way to
+		// round without the rest of the digits
+		if(low==0 && (high&0x1FF)==0 && (result&3)==1){
+			return Double.NaN;
+		}
+
+		// Round to 53 bits
+		result+=result&1;
+		result>>>=1;
+		if((result>>>53)>0){
+			result>>>=1;
+			exp2++;
+		}
+		// Subnormals and infinity are left to Double.parseDouble
+		if(exp2<=0 || exp2>=0x7FF){
+			return Double.NaN;
+		}
+		long bits=(exp2<<52) | (result&0x000FFFFFFFFFFFFFL);
+		if(negative){
+			bits|=0x8000000000000000L;
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	// The high 64 bits of the unsigned 128 bit product of a and b
+	private static long multiplyHigh(long a,long b){
+		long aLow=a&0xFFFFFFFFL;
+		long aHigh=a>>>32;
+		long bLow=b&0xFFFFFFFFL;
+		long bHigh=b>>>32;
+		long lowLow=aLow*bLow;
+		long lowHigh=aLow*bHigh;
+		long highLow=aHigh*bLow;
+		long middle=(lowLow>>>32)+(lowHigh&0xFFFFFFFFL)+(highLow&0xFFFFFFFFL);
+		return aHigh*bHigh+(lowHigh>>>32)+(highLow>>>32)+(middle>>>32);
+	}
+
+	private static boolean unsignedLess(long a,long b){
+		return (a+Long.MIN_VALUE)<(b+Long.MIN_VALUE);
+	}
+}
@@ -1,17 +1,34 @@
 package me.doubledutch.lazyjson;
 
 import me.doubledutch.lazyjson.compressor.*;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.BufferOverflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public abstract class LazyElement{
 	protected LazyNode root;
 	protected LazyElement parent;
 
+	// The modification buffer is not compacted automatically while it is
+	// smaller than this, since copying it would gain little
+	private static final int MIN_COMPACTION_LENGTH=1024;
+
 	// Cache value for length
 	private int length=-1;
+	// Cache value for hashCode, only used while the document is unmodified
+	private int hash=0;
+	private boolean hashed=false;
 
 	protected LazyElement(LazyNode root){
+		// Deferred objects and arrays are tokenized the first time they are
+		// reached through an element
+		if(root.deferred){
+			root.expand();
+		}
 		this.root=root;
 	}
 
@@ -20,15 +37,72 @@ public abstract class LazyElement{
 	}
 
 	protected LazyNode appendAndSetDirtyString(byte type,String value) throws LazyException{
-		StringBuilder dirtyBuf=root.getDirtyBuf();
-		LazyNode child=new LazyNode(type,dirtyBuf.length());
-		dirtyBuf.append(value);
-		child.endIndex=dirtyBuf.length();
+		LazyNode child=new LazyNode(type,root.doc.append(value),root.doc);
+		child.endIndex=root.doc.dirtyLength;
 		child.dirty=true;
-		child.dirtyBuf=dirtyBuf;
 		return child;
 	}
 
+	/**
+	 * Rewrites the values that were put on this element's document after it
+	 * was parsed into a new buffer holding only the values still in use.
+	 *
+	 * Every put appends the text of the new value to a buffer shared by the
+	 * whole document, and the text of values that are replaced or removed
+	 * is never reclaimed. A document that is updated over and over again
+	 * should be compacted now and then, either with this method or
+	 * automatically by setting a compaction ratio, to keep its memory use
+	 * proportional to its current contents.
+	 *
+	 * The tree of the outermost element this element was reached from is
+	 * compacted. Values that were removed from that tree but are still held
+	 * elsewhere keep the old buffer and remain valid.
+	 */
+	public void compact(){
+		LazyDocument doc=root.doc;
+		if(doc.dirtyBuf==null){
+			return;
+		}
+		LazyElement top=this;
+		while(top.parent!=null){
+			top=top.parent;
+		}
+		LazyDocument compacted=new LazyDocument(doc);
+		top.root.moveTo(doc,compacted);
+		// In case this element is no longer part of the tree of its parent
+		root.moveTo(doc,compacted);
+	}
+
+	/**
+	 * Makes the document of this element compact itself automatically once
+	 * the given fraction of its modification buffer is taken up by values
+	 * that were replaced or removed, see compact. The setting applies to
+	 * every element of the document.
+	 *
+	 * @param ratio the fraction of wasted space that triggers compaction, or 0 to disable it
+	 */
+	public void setCompactionRatio(double ratio){
+		root.doc.compactionRatio=ratio;
+		root.doc.wasted=0;
+	}
+
+	/**
+	 * Records the values of a token that was replaced or removed as wasted,
+	 * and compacts the document if too much of its buffer is wasted.
+	 *
+	 * @param token the replaced or removed token
+	 */
+	protected void discard(LazyNode token){
+		LazyDocument doc=root.doc;
+		if(doc.compactionRatio<=0){
+			return;
+		}
+		doc.wasted+=token.getAppendedLength(doc);
+		if(doc.dirtyLength>=MIN_COMPACTION_LENGTH && doc.wasted>doc.dirtyLength*doc.compactionRatio){
+			compact();
+		}
+	}
+
 	public Template extractTemplate(){
 		Template t=new Template();
 		root.addSegments(t);
@@ -64,6 +138,67 @@ public abstract class LazyElement{
 		throw new LazyException("The given string is not a JSON object or array");
 	}
 
+	/**
+	 * Parses UTF-8 encoded data and returns either a LazyObject or LazyArray
+	 *
+	 * @param data the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] data) throws LazyException{
+		return parse(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of the
+	 * given buffer and returns either a LazyObject or LazyArray
+	 *
+	 * @param data the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(ByteBuffer data) throws LazyException{
+		int index=data.position();
+		while(index<data.limit()){
+			byte ch=data.get(index);
+			if(ch=='['){
+				return new LazyArray(data);
+			}
+			if(ch=='{'){
+				return new LazyObject(data);
+			}
+			index++;
+		}
+		throw new LazyException("The given data is not a JSON object or array");
+	}
+
+	/**
+	 * Maps the given file read only into memory and tokenizes it. Files
+	 * larger than the window size are mapped in several windows, see
+	 * LazyWindowTokenizer.
+	 *
+	 * @param path the file to map
+	 * @param windowSize the maximum number of bytes to map at a time
+	 * @return the root token of the file
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the file could not be parsed
+	 */
+	protected static LazyNode map(Path path,int windowSize) throws IOException,LazyException{
+		FileChannel channel=FileChannel.open(path,StandardOpenOption.READ);
+		try{
+			long size=channel.size();
+			if(size>windowSize){
+				return LazyWindowTokenizer.tokenize(channel,size,windowSize);
+			}
+			// The mapping stays valid after the channel has been closed
+			LazyParser parser=new LazyParser(channel.map(FileChannel.MapMode.READ_ONLY,0,size));
+			parser.tokenize();
+			return parser.root;
+		}finally{
+			channel.close();
+		}
+	}
+
 	protected static boolean shouldQuoteString(String str){
 		if(str==null)return false;
 		boolean found=false;
@@ -146,7 +281,44 @@ public abstract class LazyElement{
 		return length;
 	}
 
-	protected abstract String serializeElementToString();
+	protected String serializeElementToString(){
+		StringBuilder buf=new StringBuilder();
+		try{
+			root.writeTo(new LazySink.CharSink(buf));
+		}catch(IOException e){
+			// A StringBuilder never throws
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Writes the JSON representation of this element, the same characters
+	 * as toString, without building a string first. Unmodified objects and
+	 * arrays are copied from the source in one piece, so writing out a large
+	 * document after changing a single field costs little more than copying
+	 * its characters. Writers and StringBuilders are given whole ranges of
+	 * characters at a time.
+	 *
+	 * @param out the destination, such as a Writer or StringBuilder
+	 * @throws IOException if the destination could not be written to
+	 */
+	public void writeTo(Appendable out) throws IOException{
+		root.writeTo(new LazySink.CharSink(out));
+	}
+
+	/**
+	 * Writes the JSON representation of this element as UTF-8 encoded data.
+	 * Unmodified data parsed from UTF-8 is copied as it is, and the stream
+	 * is not flushed or closed.
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream could not be written to
+	 */
+	public void writeTo(OutputStream out) throws IOException{
+		LazySink sink=new LazySink.ByteSink(out);
+		root.writeTo(sink);
+		sink.finish();
+	}
 
 	/**
 	 * Returns a raw string extracted from the source string that covers the
@@ -158,12 +330,27 @@ public abstract class LazyElement{
 		if(root.isDirty()){
 			return serializeElementToString();
 		}else{
-			return new String(root.cbuf,root.startIndex,root.endIndex-root.startIndex);
+			return root.getRawStringValue();
 		}
 	}
 
 	/**
-	 * Returns the character count of the source string.
+	 * Returns the same characters as toString, but as a view of the source
+	 * if this element has not been modified and was not parsed from UTF-8
+	 * data, so the characters do not have to be copied.
+	 *
+	 * @return the JSON representation of this element
+	 */
+	public CharSequence toCharSequence(){
+		if(root.isDirty() || root.doc.bbuf!=null){
+			return toString();
+		}
+		return new LazyCharSequence(root.doc.cbuf,root.startIndex,root.endIndex);
+	}
+
+	/**
+	 * Returns the character count of the source string. For elements parsed
+	 * from UTF-8 data, this is the number of bytes.
 	 * 
 	 * @return the length of the source string for this element
 	 */
@@ -178,68 +365,57 @@ public abstract class LazyElement{
 		return buf.array();
 	}
 
-	public abstract int hashCode();
-
-	private boolean equalObjects(LazyObject o1,LazyObject o2){
-		if(o1.length()!=o2.length())return false;
-		for(String key:o1.keySet()){
-			if(!o2.has(key))return false;
-			LazyType t1=o1.getType(key);
-			if(t1!=o2.getType(key))return false;
-			switch(t1){
-				// NULL, implicitly true
-				case STRING:if(!o1.getString(key).equals(o2.getString(key)))return false;
-					break;
-				case INTEGER:if(o1.getLong(key)!=o2.getLong(key))return false;
-					break;
-				case FLOAT:if(o1.getDouble(key)!=o2.getDouble(key))return false;
-					break;
-				case BOOLEAN:if(o1.getBoolean(key)!=o2.getBoolean(key))return false;
-					break;
-				case OBJECT:if(!o1.getJSONObject(key).equals(o2.getJSONObject(key)))return false;
-					break;
-				case ARRAY:if(!o1.getJSONArray(key).equals(o2.getJSONArray(key)))return false;
-					break;
-			}
+	/**
+	 * Returns a hash of the values in this element, computed in a single
+	 * pass over its tokens. Field names are not part of the hash. The hash
+	 * is cached as long as no element of the document has been modified.
+	 *
+	 * @return the hash of this element
+	 */
+	public int hashCode(){
+		if(hashed && !root.doc.modified){
+			return hash;
 		}
-		return true;
-	}
-
-	private boolean equalArrays(LazyArray a1,LazyArray a2){
-		if(a1.length()!=a2.length())return false;
-		for(int i=0;i<length();i++){
-			LazyType t1=a1.getType(i);
-			if(t1!=a2.getType(i))return false;
-			switch(t1){
-				// NULL, implicitly true
-				case STRING:if(!a1.getString(i).equals(a2.getString(i)))return false;
-					break;
-				case INTEGER:if(a1.getLong(i)!=a2.getLong(i))return false;
-					break;
-				case FLOAT:if(a1.getDouble(i)!=a2.getDouble(i))return false;
-					break;
-				case BOOLEAN:if(a1.getBoolean(i)!=a2.getBoolean(i))return false;
-					break;
-				case OBJECT:if(!a1.getJSONObject(i).equals(a2.getJSONObject(i)))return false;
-					break;
-				case ARRAY:if(!a1.getJSONArray(i).equals(a2.getJSONArray(i)))return false;
-					break;
-			}
+		int code=root.getContentHash();
+		// Once a document has been modified its tree may also share tokens
+		// with other documents, so the hash could change without notice
+		if(!root.doc.modified){
+			hash=code;
+			hashed=true;
 		}
-		return true;
+		return code;
 	}
 
+	/**
+	 * Compares the values of this element with another element of the same
+	 * type. Objects are equal if they have the same fields with equal values
+	 * in any order, arrays if their values are equal in the same order.
+	 * Floating point values are compared like Double.equals, so 0.0 and -0.0
+	 * are not equal, which keeps equals consistent with hashCode.
+	 *
+	 * Elements that have not been modified and cover the exact same source
+	 * text are equal without looking at their tokens. Otherwise both trees
+	 * are walked once, comparing values in place where possible.
+	 *
+	 * @param obj the object to compare with
+	 * @return true if the elements are equal
+	 */
 	public boolean equals(Object obj){
 		// Verify both are LazyElement
 		if(!(obj instanceof LazyElement))return false;
 		LazyElement el=(LazyElement)obj;
+		if(el==this)return true;
 		// Verify both are same type
-		if(el.getType()!=getType())return false;
-		// Do a deep comparison
-		if(getType()==LazyType.OBJECT){
-			return equalObjects((LazyObject)this,(LazyObject)el);
-		}else{
-			return equalArrays((LazyArray)this,(LazyArray)el);
+		if(el.root.type!=root.type)return false;
+		if(hashed && el.hashed && !root.doc.modified && !el.root.doc.modified && hash!=el.hash){
+			return false;
 		}
+		// Identical source text of the same kind means equal contents, as
+		// long as neither tree was changed or projected after parsing
+		if(!root.dirty && !el.root.dirty && (root.doc.bbuf==null)==(el.root.doc.bbuf==null) && root.rangeEquals(el.root) && !root.isDirty() && !el.root.isDirty()){
+			return true;
+		}
+		// Do a deep comparison
+		return LazyNode.equalValues(root,el.root);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,458 @@
+package me.doubledutch.lazyjson;
+
+import java.util.Arrays;
+
+/**
+ * The destination of the tokens found by the tokenizer. LazyParser walks
+ * the source, validates its structure and keeps track of the open objects,
+ * arrays and fields itself, so an emitter only has to record each token in
+ * whatever form it is needed, be it a tree of LazyNodes, a tape or a single
+ * event.
+ *
+ * Ranges are absolute indexes into the source. For strings and field names
+ * the range excludes the quotes, for all other tokens the end index is the
+ * index after the last character of the token.
+ */
+abstract class LazyEmitter{
+	// Set by emitters that want the tokenizer to return after the current
+	// token instead of continuing to the end of the source
+	protected boolean paused=false;
+
+	/**
+	 * Called for the opening curly brace of an object.
+	 *
+	 * @param index the index of the brace
+	 * @throws LazyException if the object can not be added
+	 */
+	protected abstract void startObject(int index) throws LazyException;
+
+	/**
+	 * Called for the opening bracket of an array.
+	 *
+	 * @param index the index of the bracket
+	 * @throws LazyException if the array can not be added
+	 */
+	protected abstract void startArray(int index) throws LazyException;
+
+	/**
+	 * Called for the closing curly brace of an object.
+	 *
+	 * @param index the index of the brace
+	 */
+	protected abstract void endObject(int index);
+
+	/**
+	 * Called for the closing bracket of an array.
+	 *
+	 * @param index the index of the bracket
+	 */
+	protected abstract void endArray(int index);
+
+	/**
+	 * Called for the name of a field. The value of the field follows unless
+	 * the emitter asks for it to be skipped.
+	 *
+	 * @param start the index of the first character of the name
+	 * @param end the index of the closing quote
+	 * @param escaped true if the name contains escape sequences
+	 * @return false to skip the value of the field
+	 * @throws LazyException if the field can not be added
+	 */
+	protected abstract boolean field(int start,int end,boolean escaped) throws LazyException;
+
+	/**
+	 * Called for a string, number, boolean or null value.
+	 *
+	 * @param type the LazyNode type of the value
+	 * @param start the index of the first character of the value
+	 * @param end the index after the value, or of the closing quote for strings
+	 * @throws LazyException if the value can not be added
+	 */
+	protected abstract void value(byte type,int start,int end) throws LazyException;
+
+	/**
+	 * Called for an object or array nested deeper than the expand depth of
+	 * the parser. Its contents were only matched to find the end of it, so
+	 * the emitter either records it as a single token or tokenizes it now.
+	 *
+	 * @param type the LazyNode type of the object or array
+	 * @param start the index of the opening brace or bracket
+	 * @param end the index after the closing brace or bracket
+	 * @throws LazyException if the contents are tokenized now and can not be parsed
+	 */
+	protected abstract void deferred(byte type,int start,int end) throws LazyException;
+
+	/**
+	 * Builds the tree of LazyNodes used by LazyObject and LazyArray.
+	 *
+	 * The emitter uses a crude stack that maintains a reference to the top
+	 * element on the stack and automatically establishes a parent child
+	 * relation ship when elements are pushed onto the stack.
+	 */
+	static final class NodeEmitter extends LazyEmitter{
+		// Read the comments on push before changing these!
+		private static final int STACK_INCREASE=31;
+		private int STACK_SIZE=32;
+
+		private LazyDocument doc;
+		protected LazyNode root=null;
+
+		private LazyNode[] stack=new LazyNode[STACK_SIZE];
+		private LazyNode stackTop=null;
+		private int stackPointer=1;
+		// Number of objects and arrays currently open
+		private int depth=0;
+
+		// The projection used for each open object and array by depth, null if
+		// no projection was given. A null entry means everything is included.
+		private LazyProjection[] projections=null;
+		// The projection for the value of the last selected field
+		private LazyProjection fieldProjection=null;
+
+		// Decode the value of each number as soon as it has been consumed,
+		// while its digits are still in the cache, see LazyNode.decodeNumber
+		private final boolean decodeNumbers;
+
+		protected NodeEmitter(LazyDocument doc,LazyProjection projection,boolean decodeNumbers){
+			this.doc=doc;
+			this.decodeNumbers=decodeNumbers;
+			if(projection!=null){
+				projections=new LazyProjection[STACK_SIZE];
+				projections[1]=projection;
+			}
+		}
+
+		// Use the given token as the root and attach everything that follows
+		// to it, used to tokenize ranges without the surrounding brackets
+		protected void open(LazyNode token){
+			stack[stackPointer++]=token;
+			root=token;
+			stackTop=token;
+			depth=1;
+		}
+
+		// Attach the tokens that follow to a new document. The objects and
+		// arrays still open started in the previous one, so their range can
+		// not be copied from either source and they are marked dirty to be
+		// written out from their children. The tree now spans several
+		// documents, so changes made below the root would not be seen on its
+		// document, which is marked modified to keep its hash from being
+		// cached.
+		protected void moveTo(LazyDocument doc){
+			for(int i=1;i<stackPointer;i++){
+				LazyNode token=stack[i];
+				if(token.type==LazyNode.OBJECT || token.type==LazyNode.ARRAY){
+					token.dirty=true;
+				}
+			}
+			root.doc.modified=true;
+			this.doc=doc;
+		}
+
+		// Push a token onto the stack and attach it to the previous top as a child
+		private void push(final LazyNode token){
+			stackTop.addChild(token);
+			// The stack allocation strategy here is to increase it in increments
+			// of a power of two. This lets us check when all low bits are set and
+			// its time to increase the stack again.
+			// This lets us do a compare between a constant and a variable instead
+			// of between two variables.
+			if((stackPointer & STACK_INCREASE)==STACK_INCREASE){
+				LazyNode[] newStack=new LazyNode[STACK_SIZE+STACK_INCREASE+1];
+				System.arraycopy(stack,0,newStack,0,STACK_SIZE);
+				STACK_SIZE=STACK_SIZE+STACK_INCREASE+1;
+				stack=newStack;
+			}
+			stack[stackPointer++]=token;
+			stackTop=token;
+		}
+
+		// Pop a token off the stack and reset the stackTop pointer
+		private LazyNode pop(){
+			LazyNode value=stackTop;
+			stackPointer--;
+			stackTop=stack[stackPointer-1];
+			return value;
+		}
+
+		// If the last value was the value for a field, pop off that field too
+		private void endValue(){
+			if(stackTop!=null && (stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD)){
+				stackPointer--;
+				stackTop=stack[stackPointer-1];
+			}
+		}
+
+		private void start(final LazyNode token){
+			if(stackTop==null){
+				// The root is pushed manually so future push operations can
+				// avoid doing an if empty check when setting the parent child
+				// relationship
+				open(token);
+				return;
+			}
+			if(projections!=null){
+				enterProjection();
+			}
+			push(token);
+			depth++;
+		}
+
+		protected void startObject(int index){
+			start(LazyNode.cObject(index,doc));
+		}
+
+		protected void startArray(int index){
+			start(LazyNode.cArray(index,doc));
+		}
+
+		protected void endObject(int index){
+			pop().endIndex=index+1;
+			depth--;
+			endValue();
+		}
+
+		protected void endArray(int index){
+			pop().endIndex=index+1;
+			depth--;
+			endValue();
+		}
+
+		protected void deferred(byte type,int start,int end){
+			LazyNode token=new LazyNode(type,start,doc);
+			token.endIndex=end;
+			token.deferred=true;
+			stackTop.addChild(token);
+			endValue();
+		}
+
+		protected boolean field(int start,int end,boolean escaped){
+			LazyNode token=LazyNode.cField(start,doc);
+			if(escaped){
+				token.type=LazyNode.EFIELD;
+			}
+			token.endIndex=end;
+			if(projections!=null && !selectField(token)){
+				// The field is not part of the projection, its value is skipped
+				stackTop.projected=true;
+				return false;
+			}
+			push(token);
+			return true;
+		}
+
+		protected void value(byte type,int start,int end){
+			LazyNode token;
+			if(type==LazyNode.VALUE_STRING || type==LazyNode.VALUE_ESTRING){
+				token=new LazyNode(type,start,doc);
+				token.endIndex=end;
+			}else if(type==LazyNode.VALUE_INTEGER || type==LazyNode.VALUE_FLOAT){
+				token=new LazyNode(type,start,doc);
+				token.endIndex=end;
+				if(decodeNumbers){
+					token.decodeNumber();
+				}
+			}else{
+				// Literals only keep the index of their last character
+				token=new LazyNode(type,end-1,doc);
+				token.endIndex=end-1;
+			}
+			stackTop.addChild(token);
+			endValue();
+		}
+
+		// Returns true if the given field of the object on top of the stack is
+		// part of its projection, in which case the projection for its value is
+		// selected as well
+		private boolean selectField(final LazyNode field){
+			LazyProjection projection=projections[depth];
+			if(projection==null){
+				fieldProjection=null;
+				return true;
+			}
+			int index;
+			if(field.type==LazyNode.EFIELD){
+				index=projection.indexOf(field.getStringValue());
+			}else if(doc.bbuf!=null){
+				index=projection.indexOf(doc.bbuf,field.startIndex,field.endIndex);
+			}else{
+				index=projection.indexOf(doc.cbuf,field.startIndex,field.endIndex);
+			}
+			if(index<0){
+				return false;
+			}
+			fieldProjection=projection.getChild(index);
+			return true;
+		}
+
+		// Select the projection for an object or array about to be pushed. The
+		// values of an array share the projection of the array itself.
+		private void enterProjection(){
+			if(depth+1==projections.length){
+				projections=Arrays.copyOf(projections,projections.length*2);
+			}
+			if(stackTop.type==LazyNode.ARRAY){
+				projections[depth+1]=projections[depth];
+			}else{
+				projections[depth+1]=fieldProjection;
+			}
+		}
+	}
+
+	/**
+	 * Appends the tokens to the parallel arrays of a LazyTape in document
+	 * order. The tape keeps its own stack of open token indexes to link
+	 * each token to its previous sibling.
+	 */
+	static final class TapeEmitter extends LazyEmitter{
+		private final LazyTape tape;
+		private final LazyDocument doc;
+
+		protected TapeEmitter(LazyTape tape,LazyDocument doc){
+			this.tape=tape;
+			this.doc=doc;
+		}
+
+		// If the last value was the value for a field, pop off that field too
+		private void endValue(){
+			byte top=tape.topType();
+			if(top==LazyNode.FIELD || top==LazyNode.EFIELD){
+				tape.pop();
+			}
+		}
+
+		protected void startObject(int index) throws LazyException{
+			tape.push(LazyNode.OBJECT,index);
+		}
+
+		protected void startArray(int index) throws LazyException{
+			tape.push(LazyNode.ARRAY,index);
+		}
+
+		protected void endObject(int index){
+			tape.end[tape.pop()]=index+1;
+			endValue();
+		}
+
+		protected void endArray(int index){
+			tape.end[tape.pop()]=index+1;
+			endValue();
+		}
+
+		protected boolean field(int start,int end,boolean escaped) throws LazyException{
+			int token=tape.push(escaped?LazyNode.EFIELD:LazyNode.FIELD,start);
+			tape.end[token]=end;
+			return true;
+		}
+
+		protected void value(byte type,int start,int end) throws LazyException{
+			int token;
+			if(type==LazyNode.VALUE_TRUE || type==LazyNode.VALUE_FALSE || type==LazyNode.VALUE_NULL){
+				// Literals only keep the index of their last character
+				token=tape.addChild(type,end-1);
+				tape.end[token]=end-1;
+			}else{
+				token=tape.addChild(type,start);
+				tape.end[token]=end;
+			}
+			endValue();
+		}
+
+		// A tape has no way to mark a token for later expansion, so the
+		// contents are tokenized right away with a parser of their own. It
+		// emits the same tokens the outer parser would have.
+		protected void deferred(byte type,int start,int end) throws LazyException{
+			LazyParser parser=new LazyParser(doc,start,end-start);
+			parser.tokenize(tape);
+		}
+	}
+
+	/**
+	 * Records each token as the current event of a LazyReader and pauses
+	 * the tokenizer, so the reader gets exactly one token per call.
+	 */
+	static final class ReaderEmitter extends LazyEmitter{
+		private final LazyReader reader;
+
+		// The end of an object or array whose contents were deferred, which
+		// becomes the next event, or -1 if there is none
+		private int deferredEnd=-1;
+		private byte deferredType;
+
+		protected ReaderEmitter(LazyReader reader){
+			this.reader=reader;
+		}
+
+		private void set(LazyEvent event,byte type,int start,int end){
+			reader.set(event,type,start,end);
+			paused=true;
+		}
+
+		protected void startObject(int index){
+			set(LazyEvent.START_OBJECT,LazyNode.OBJECT,index,index+1);
+		}
+
+		protected void startArray(int index){
+			set(LazyEvent.START_ARRAY,LazyNode.ARRAY,index,index+1);
+		}
+
+		protected void endObject(int index){
+			set(LazyEvent.END_OBJECT,LazyNode.OBJECT,index,index+1);
+		}
+
+		protected void endArray(int index){
+			set(LazyEvent.END_ARRAY,LazyNode.ARRAY,index,index+1);
+		}
+
+		protected boolean field(int start,int end,boolean escaped){
+			set(LazyEvent.FIELD_NAME,escaped?LazyNode.EFIELD:LazyNode.FIELD,start,end);
+			return true;
+		}
+
+		protected void value(byte type,int start,int end){
+			LazyEvent event;
+			switch(type){
+				case LazyNode.VALUE_INTEGER: event=LazyEvent.VALUE_INTEGER;break;
+				case LazyNode.VALUE_FLOAT: event=LazyEvent.VALUE_FLOAT;break;
+				case LazyNode.VALUE_TRUE: event=LazyEvent.VALUE_TRUE;break;
+				case LazyNode.VALUE_FALSE: event=LazyEvent.VALUE_FALSE;break;
+				case LazyNode.VALUE_NULL: event=LazyEvent.VALUE_NULL;break;
+				default: event=LazyEvent.VALUE_STRING;
+			}
+			set(event,type,start,end);
+		}
+
+		// The contents are skipped just like with LazyReader.skipChildren, so
+		// the start event is followed directly by the end event
+		protected void deferred(byte type,int start,int end){
+			set(type==LazyNode.OBJECT?LazyEvent.START_OBJECT:LazyEvent.START_ARRAY,type,start,start+1);
+			deferredType=type;
+			deferredEnd=end-1;
+		}
+
+		/**
+		 * Reports the end of the object or array whose contents were deferred
+		 * by the last event, if any.
+		 *
+		 * @return true if the end event was reported
+		 */
+		protected boolean endDeferred(){
+			if(deferredEnd<0){
+				return false;
+			}
+			set(deferredType==LazyNode.OBJECT?LazyEvent.END_OBJECT:LazyEvent.END_ARRAY,deferredType,deferredEnd,deferredEnd+1);
+			deferredEnd=-1;
+			return true;
+		}
+
+		/**
+		 * Returns true if the last event started an object or array whose
+		 * contents were deferred, and which the parser never opened.
+		 *
+		 * @return true if the end event is still pending
+		 */
+		protected boolean hasDeferred(){
+			return deferredEnd>-1;
+		}
+	}
+}
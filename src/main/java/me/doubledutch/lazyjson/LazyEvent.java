@@ -0,0 +1,5 @@
+package me.doubledutch.lazyjson;
+
+public enum LazyEvent{
+	START_OBJECT,END_OBJECT,START_ARRAY,END_ARRAY,FIELD_NAME,VALUE_STRING,VALUE_INTEGER,VALUE_FLOAT,VALUE_TRUE,VALUE_FALSE,VALUE_NULL
+}
\ No newline at end of file
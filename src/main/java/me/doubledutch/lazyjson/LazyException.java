@@ -24,6 +24,11 @@ public final class LazyException extends RuntimeException{
 		this.message=str;
 	}
 
+	// The index in the source the error was found at, or -1 if unknown
+	protected int getPosition(){
+		return position;
+	}
+
 	public String toString(){
 		if(position>-1){
 			return "@"+position+":"+message;
@@ -0,0 +1,195 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A non-blocking parser for UTF-8 encoded JSON data that arrives in
+ * fragments, such as the buffers read from a channel by a selector loop.
+ *
+ * Data is handed to the parser with feed as it arrives, and never blocks
+ * waiting for more. The state of the scanner is kept between calls, so
+ * fragments can be split anywhere, even in the middle of a string or a
+ * multi-byte character. Each top level element is tokenized as soon as its
+ * last byte has been fed and can then be taken with next.
+ *
+ * If the data starts with an array, each value in that array is returned
+ * as a separate element. Otherwise the data is read as a sequence of
+ * whitespace separated objects and arrays, such as JSON lines or
+ * concatenated JSON. Either way every element must be an object or an
+ * array, so a top level array of strings, numbers, booleans or nulls such as
+ * [1,"a",true] can not be split. Feeding such a value throws a
+ * LazyException, and the array has to be read as a whole by creating the
+ * parser with split mode turned off.
+ *
+ * The following snippet parses the data read from a channel.
+ *
+ * <pre>
+ * LazyFeed feed=new LazyFeed();
+ * while(channel.read(buffer)!=-1){
+ *     buffer.flip();
+ *     feed.feed(buffer);
+ *     buffer.clear();
+ *     for(LazyElement element=feed.next();element!=null;element=feed.next()){
+ *         // Process the element
+ *     }
+ * }
+ * feed.endOfInput();
+ * </pre>
+ *
+ * Elements are tokenized in place as their data arrives: after each
+ * fragment the element being read is tokenized up to its last complete
+ * token, so the work for a large element is spread over the fragments it
+ * arrives in and next only has to wrap the finished tree. A single token,
+ * such as a very long string, is only tokenized once all of it has arrived.
+ *
+ * Fragments are copied into chunks that are never overwritten, and elements
+ * point straight into the chunks their data arrived in instead of getting a
+ * copy of it. When a chunk is full, only the data that has not been
+ * tokenized yet is moved to a new one. A returned element therefore keeps
+ * its chunks, which may be shared with the elements around it, reachable
+ * for as long as it is in use.
+ */
+public final class LazyFeed{
+	private static final int DEFAULT_CHUNK_SIZE=8192;
+
+	private final LazyScanner scanner;
+	private final ArrayDeque<LazyElement> ready=new ArrayDeque<LazyElement>();
+
+	private byte[] buf;
+	private ByteBuffer bbuf;
+	// Next index to scan and index after the last valid data in the buffer
+	private int pos=0;
+	private int limit=0;
+	private boolean ended=false;
+	// Tokenizer of the element currently being read, if it has started
+	private LazyParser parser=null;
+
+	/**
+	 * Create a new parser. If the data starts with an array, the values of
+	 * that array are returned as elements.
+	 */
+	public LazyFeed(){
+		this(true);
+	}
+
+	/**
+	 * Create a new parser.
+	 *
+	 * @param splitArray if true and the data starts with an array, the values of that array are returned as elements instead of the array itself
+	 */
+	public LazyFeed(boolean splitArray){
+		scanner=new LazyScanner(splitArray);
+		buf=new byte[DEFAULT_CHUNK_SIZE];
+		bbuf=ByteBuffer.wrap(buf);
+	}
+
+	/**
+	 * Hands the next fragment of data to the parser. All remaining bytes in
+	 * the buffer are consumed, leaving its position at its limit. Elements
+	 * completed by the fragment are tokenized right away.
+	 *
+	 * @param data the next fragment of data
+	 * @throws LazyException if the data could not be parsed or the end of the input has already been signalled
+	 */
+	public void feed(ByteBuffer data) throws LazyException{
+		if(ended){
+			throw new LazyException("Data fed after end of input");
+		}
+		int length=data.remaining();
+		ensureCapacity(length);
+		data.get(buf,limit,length);
+		limit+=length;
+		while(pos<limit){
+			int end=scanner.scan(bbuf,pos,limit);
+			if(end==-1){
+				pos=limit;
+				break;
+			}
+			pos=end;
+			ready.add(createElement(end));
+		}
+		if(scanner.inElement()){
+			advance(scanner.boundary);
+		}
+	}
+
+	/**
+	 * Signals that no more data will be fed to the parser.
+	 *
+	 * @throws LazyException if the data ended in the middle of an element or array
+	 */
+	public void endOfInput() throws LazyException{
+		ended=true;
+		scanner.finish();
+	}
+
+	/**
+	 * Returns the next completed element, if there is one.
+	 *
+	 * @return the next element or null if no complete element is available yet
+	 */
+	public LazyElement next(){
+		return ready.poll();
+	}
+
+	/**
+	 * Returns true if endOfInput has been called and every completed element
+	 * has been taken.
+	 *
+	 * @return true if there are no more elements to take
+	 */
+	public boolean isDone(){
+		return ended && ready.isEmpty();
+	}
+
+	// Tokenizes the element currently being read up to the given index
+	private LazyNode advance(int end) throws LazyException{
+		if(parser==null){
+			parser=new LazyParser(bbuf,scanner.start,end-scanner.start);
+		}
+		return parser.tokenizeTo(end);
+	}
+
+	private LazyElement createElement(int end) throws LazyException{
+		LazyNode root=advance(end);
+		parser=null;
+		if(root==null){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		if(root.type==LazyNode.OBJECT){
+			return new LazyObject(root);
+		}
+		return new LazyArray(root);
+	}
+
+	// Makes room for the given number of bytes after the valid data. The
+	// buffer is never overwritten, since returned elements and the element
+	// being read point into it, so a new one is started holding only the
+	// data that has not been tokenized yet. It is at least twice the size of
+	// that data, which keeps the cost of moving a long token linear.
+	private void ensureCapacity(int length){
+		if(limit+length<=buf.length){
+			return;
+		}
+		int keep=limit;
+		if(parser!=null){
+			keep=parser.getPosition();
+		}else if(scanner.inElement()){
+			keep=scanner.start;
+		}
+		int size=limit-keep;
+		byte[] next=new byte[Math.max(DEFAULT_CHUNK_SIZE,(size+length)*2)];
+		System.arraycopy(buf,keep,next,0,size);
+		buf=next;
+		bbuf=ByteBuffer.wrap(buf);
+		limit=size;
+		pos-=keep;
+		scanner.start-=keep;
+		scanner.boundary-=keep;
+		scanner.offset+=keep;
+		if(parser!=null){
+			parser.moveTo(bbuf);
+		}
+	}
+}
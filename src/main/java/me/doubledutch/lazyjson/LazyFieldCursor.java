@@ -0,0 +1,283 @@
+package me.doubledutch.lazyjson;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A cursor over the fields of a LazyObject, in document order.
+ *
+ * The cursor walks the list of field tokens directly, and the accessors
+ * read the name and value of the current field from its token. Visiting
+ * every field of an object is therefore a single linear pass, rather than
+ * a lookup by name for each key returned by keys or keySet.
+ *
+ * The following snippet sums up all integer fields of an object.
+ *
+ * <pre>
+ * LazyFieldCursor cursor=obj.fieldCursor();
+ * long sum=0;
+ * while(cursor.next()){
+ *     if(cursor.getType()==LazyType.INTEGER){
+ *         sum+=cursor.getLong();
+ *     }
+ * }
+ * </pre>
+ *
+ * Fields put on the object while iterating are visited if they are added
+ * after the current field. Removing fields while iterating is not supported.
+ */
+public final class LazyFieldCursor{
+	private final LazyObject object;
+	private LazyNode field=null;
+	private LazyNode next;
+
+	protected LazyFieldCursor(LazyObject object){
+		this.object=object;
+		next=object.root.child;
+	}
+
+	/**
+	 * Advances to the next field.
+	 *
+	 * @return true if the cursor is on a field, false if there were no more fields
+	 */
+	public boolean next(){
+		if(next==null){
+			field=null;
+			return false;
+		}
+		field=next;
+		next=field.next;
+		return true;
+	}
+
+	/**
+	 * Returns the name of the current field. Names without escaped
+	 * characters are returned as a view of the source instead of a copy,
+	 * unless the object was parsed from UTF-8 data.
+	 *
+	 * @return the name of the current field
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public CharSequence getKey() throws LazyException{
+		return current().getCharSequenceValue();
+	}
+
+	/**
+	 * Returns the name of the current field as a string.
+	 *
+	 * @return the name of the current field
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public String getKeyString() throws LazyException{
+		return current().getStringValue();
+	}
+
+	/**
+	 * Returns true if the current field has the given name. The name is
+	 * compared to the source without creating a string.
+	 *
+	 * @param key the name to compare with
+	 * @return true if the name of the current field matches
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public boolean isKey(String key) throws LazyException{
+		return LazyObject.keyMatch(key,current());
+	}
+
+	/**
+	 * Returns true if the current field has the name of the given key.
+	 *
+	 * @param key the prepared name to compare with
+	 * @return true if the name of the current field matches
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public boolean isKey(LazyKey key) throws LazyException{
+		return key.matches(current());
+	}
+
+	/**
+	 * Returns the value type of the current field.
+	 *
+	 * @return the type of the value
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public LazyType getType() throws LazyException{
+		LazyNode token=value();
+		switch(token.type){
+			case LazyNode.OBJECT: return LazyType.OBJECT;
+			case LazyNode.ARRAY: return LazyType.ARRAY;
+			case LazyNode.VALUE_TRUE: return LazyType.BOOLEAN;
+			case LazyNode.VALUE_FALSE: return LazyType.BOOLEAN;
+			case LazyNode.VALUE_NULL: return LazyType.NULL;
+			case LazyNode.VALUE_STRING: return LazyType.STRING;
+			case LazyNode.VALUE_ESTRING: return LazyType.STRING;
+			case LazyNode.VALUE_INTEGER: return LazyType.INTEGER;
+			case LazyNode.VALUE_FLOAT: return LazyType.FLOAT;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the value of the current field, using the same types as
+	 * LazyObject.get.
+	 *
+	 * @return the value of the current field
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public Object get() throws LazyException{
+		LazyNode token=value();
+		switch(token.type){
+			case LazyNode.OBJECT: return getJSONObject();
+			case LazyNode.ARRAY: return getJSONArray();
+			case LazyNode.VALUE_TRUE: return (Boolean)true;
+			case LazyNode.VALUE_FALSE: return (Boolean)false;
+			case LazyNode.VALUE_NULL: return LazyObject.NULL;
+			case LazyNode.VALUE_STRING: return token.getStringValue();
+			case LazyNode.VALUE_ESTRING: return token.getStringValue();
+			case LazyNode.VALUE_INTEGER: return (Long)token.getLongValue();
+			case LazyNode.VALUE_FLOAT: return (Double)token.getDoubleValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the string value of the current field.
+	 *
+	 * @return the string value or null if the value is null
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public String getString() throws LazyException{
+		return value().getStringValue();
+	}
+
+	/**
+	 * Returns the string value of the current field as a view of the source
+	 * characters where possible, see LazyObject.getCharSequence.
+	 *
+	 * @return the value or null if the value is null
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public CharSequence getCharSequence() throws LazyException{
+		return value().getCharSequenceValue();
+	}
+
+	/**
+	 * Returns the integer value of the current field.
+	 *
+	 * @return the integer value
+	 * @throws LazyException if the value was not an integer
+	 */
+	public int getInt() throws LazyException{
+		return value().getIntValue();
+	}
+
+	/**
+	 * Returns the long value of the current field.
+	 *
+	 * @return the long value
+	 * @throws LazyException if the value was not a long
+	 */
+	public long getLong() throws LazyException{
+		return value().getLongValue();
+	}
+
+	/**
+	 * Returns the double value of the current field.
+	 *
+	 * @return the double value
+	 * @throws LazyException if the value was not a double
+	 */
+	public double getDouble() throws LazyException{
+		return value().getDoubleValue();
+	}
+
+	/**
+	 * Returns the integer value of the current field without any limit on
+	 * its size.
+	 *
+	 * @return the integer value
+	 * @throws LazyException if the value was not an integer
+	 */
+	public BigInteger getBigInteger() throws LazyException{
+		return value().getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the exact decimal value of the current field.
+	 *
+	 * @return the decimal value
+	 * @throws LazyException if the value was not a number
+	 */
+	public BigDecimal getBigDecimal() throws LazyException{
+		return value().getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the boolean value of the current field.
+	 *
+	 * @return the boolean value
+	 * @throws LazyException if the value was not a boolean
+	 */
+	public boolean getBoolean() throws LazyException{
+		LazyNode token=value();
+		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
+			String str=token.getStringValue().toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+			throw new LazyException("Requested value is not a boolean",token);
+		}
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		if(token.type==LazyNode.VALUE_FALSE)return false;
+		throw new LazyException("Requested value is not a boolean",token);
+	}
+
+	/**
+	 * Returns true if the value of the current field is null.
+	 *
+	 * @return true if the value is null
+	 * @throws LazyException if the cursor is not on a field
+	 */
+	public boolean isNull() throws LazyException{
+		return value().type==LazyNode.VALUE_NULL;
+	}
+
+	/**
+	 * Returns the JSON object stored in the current field.
+	 *
+	 * @return an object value
+	 * @throws LazyException if the value was not an object
+	 */
+	public LazyObject getJSONObject() throws LazyException{
+		LazyNode token=value();
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		LazyObject obj=new LazyObject(token);
+		obj.parent=object;
+		return obj;
+	}
+
+	/**
+	 * Returns the JSON array stored in the current field.
+	 *
+	 * @return an array value
+	 * @throws LazyException if the value was not an array
+	 */
+	public LazyArray getJSONArray() throws LazyException{
+		LazyNode token=value();
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		LazyArray arr=new LazyArray(token);
+		arr.parent=object;
+		return arr;
+	}
+
+	private LazyNode current() throws LazyException{
+		if(field==null){
+			throw new LazyException("No current field");
+		}
+		return field;
+	}
+
+	private LazyNode value() throws LazyException{
+		return current().child;
+	}
+}
@@ -0,0 +1,196 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * An open addressing hash table mapping field names to the field tokens of
+ * a wide object, so looking up a field does not have to walk the list of
+ * fields.
+ *
+ * The hash of each field is computed directly from its range in the source
+ * using the same function as String.hashCode, which lets lookups use the
+ * hash a String key has already cached instead of creating strings for the
+ * field names. Slots are found by linear probing, and the stored hashes are
+ * compared before the characters of a field are.
+ *
+ * Only the first field with a given name is indexed, matching the result of
+ * a linear scan when a document contains duplicate names.
+ *
+ * The index also keeps the indexed fields by their position in the object.
+ * A LazyKey remembers the position its field was last found at, and the
+ * field at that position is checked before probing the table, so documents
+ * of the same shape find each field with a single comparison of its name.
+ * Only the first field with a given name is kept by position, so a name
+ * found there is always the one a probe would find.
+ */
+final class LazyFieldIndex{
+	// Objects with fewer fields than this are cheaper to scan than to index
+	protected static final int THRESHOLD=16;
+
+	private final LazyNode[] fields;
+	private final int[] hashes;
+	// Position of each field in the object, and the indexed fields by their
+	// position. Positions after a removed field are not updated, which only
+	// makes keys that remembered them fall back to probing.
+	private final int[] ordinals;
+	private final LazyNode[] positions;
+	private final int mask;
+	private int size=0;
+	// Number of fields in the object, including duplicates
+	private int count=0;
+
+	private LazyFieldIndex(int capacity){
+		fields=new LazyNode[capacity];
+		hashes=new int[capacity];
+		ordinals=new int[capacity];
+		positions=new LazyNode[capacity];
+		mask=capacity-1;
+	}
+
+	/**
+	 * Builds an index over all fields currently attached to an object.
+	 *
+	 * @param object the object token
+	 * @return the new index
+	 */
+	protected static LazyFieldIndex build(LazyNode object){
+		int count=0;
+		for(LazyNode field=object.child;field!=null;field=field.next){
+			count++;
+		}
+		// Keep the table at most half full so probe sequences stay short,
+		// with room for a few added fields before it has to be rebuilt
+		int capacity=Integer.highestOneBit(Math.max(count,THRESHOLD)*2)*2;
+		LazyFieldIndex index=new LazyFieldIndex(capacity);
+		for(LazyNode field=object.child;field!=null;field=field.next){
+			index.insert(field,field.getStringHash(),index.count++);
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the field with the given name.
+	 *
+	 * @param key the name of the field
+	 * @return the field token or null if there is no such field
+	 */
+	protected LazyNode get(String key){
+		int hash=key.hashCode();
+		for(int i=slot(hash);fields[i]!=null;i=(i+1)&mask){
+			if(hashes[i]==hash && LazyObject.keyMatch(key,fields[i])){
+				return fields[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the field with the name of the given key. The field at the
+	 * position the key last found its field at is checked first. Otherwise
+	 * the table is probed using the hash the key computed when it was
+	 * created, and the position of the field is stored in the key for the
+	 * next lookup.
+	 *
+	 * @param key the prepared name of the field
+	 * @return the field token or null if there is no such field
+	 */
+	protected LazyNode get(LazyKey key){
+		int ordinal=key.ordinal;
+		if(ordinal>=0 && ordinal<positions.length){
+			LazyNode field=positions[ordinal];
+			if(field!=null && key.matches(field)){
+				return field;
+			}
+		}
+		int hash=key.hash;
+		for(int i=slot(hash);fields[i]!=null;i=(i+1)&mask){
+			if(hashes[i]==hash && key.matches(fields[i])){
+				key.ordinal=ordinals[i];
+				return fields[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the field with the same name as a field token of another object.
+	 *
+	 * @param field the field token to look for
+	 * @return the field token or null if there is no such field
+	 */
+	protected LazyNode get(LazyNode field){
+		int hash=field.getStringHash();
+		for(int i=slot(hash);fields[i]!=null;i=(i+1)&mask){
+			if(hashes[i]==hash && field.stringEquals(fields[i])){
+				return fields[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a field that was attached to the end of the object after the index
+	 * was built.
+	 *
+	 * @param field the new field token
+	 * @return false if the table is full and the index must be rebuilt instead
+	 */
+	protected boolean add(LazyNode field){
+		if((size+1)*2>fields.length){
+			return false;
+		}
+		insert(field,field.getStringHash(),count++);
+		return true;
+	}
+
+	/**
+	 * Removes a field that was detached from the object. Entries following it
+	 * in the same probe sequence are moved back, so no tombstones are needed.
+	 *
+	 * @param field the removed field token
+	 */
+	protected void remove(LazyNode field){
+		count--;
+		int i=slot(field.getStringHash());
+		while(fields[i]!=field){
+			if(fields[i]==null){
+				// Not indexed, it was a duplicate of an earlier field
+				return;
+			}
+			i=(i+1)&mask;
+		}
+		fields[i]=null;
+		size--;
+		if(ordinals[i]<positions.length && positions[ordinals[i]]==field){
+			positions[ordinals[i]]=null;
+		}
+		for(int j=(i+1)&mask;fields[j]!=null;j=(j+1)&mask){
+			LazyNode moved=fields[j];
+			fields[j]=null;
+			size--;
+			insert(moved,hashes[j],ordinals[j]);
+		}
+	}
+
+	// Inserts a field unless a field with the same name is already indexed
+	private void insert(LazyNode field,int hash,int ordinal){
+		int i=slot(hash);
+		while(fields[i]!=null){
+			if(hashes[i]==hash && field.stringEquals(fields[i])){
+				return;
+			}
+			i=(i+1)&mask;
+		}
+		fields[i]=field;
+		hashes[i]=hash;
+		ordinals[i]=ordinal;
+		if(ordinal<positions.length){
+			positions[ordinal]=field;
+		}
+		size++;
+	}
+
+	// Mix the high bits into the low ones, since the hash of short ascii
+	// strings varies little in its low bits
+	private int slot(int hash){
+		return (hash^(hash>>>16))&mask;
+	}
+}
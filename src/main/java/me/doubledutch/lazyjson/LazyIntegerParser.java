@@ -0,0 +1,156 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes integers straight from the source buffers, eight digits at a
+ * time.
+ *
+ * Eight ascii digits are packed into a long with the first digit in the
+ * lowest byte. A few masks check that every byte is a digit, and three
+ * multiplications combine neighbouring digits into pairs, then quads and
+ * finally the eight digit value, instead of running one multiply and add
+ * per digit.
+ *
+ * Values with more than 19 significant digits or outside the range of a
+ * long are never wrapped around. They are reported by returning INVALID,
+ * just like input that is not an integer at all.
+ */
+final class LazyIntegerParser{
+	// Returned for input that is not an integer or does not fit in a long.
+	// Since it is also the smallest long, callers have to look at the digits
+	// again to tell the two apart.
+	protected static final long INVALID=Long.MIN_VALUE;
+
+	private LazyIntegerParser(){}
+
+	/**
+	 * Decodes the given range of characters as a long.
+	 *
+	 * @param cbuf the source
+	 * @param start the index of the first character of the integer
+	 * @param end the index after the last character of the integer
+	 * @return the value or INVALID
+	 */
+	protected static long parse(char[] cbuf,int start,int end){
+		int i=start;
+		boolean negative=false;
+		if(i<end && cbuf[i]=='-'){
+			negative=true;
+			i++;
+		}
+		if(i==end){
+			return INVALID;
+		}
+		// Leading zeros do not count towards the 19 digits a long can hold
+		while(i<end-1 && cbuf[i]=='0'){
+			i++;
+		}
+		if(end-i>19){
+			return INVALID;
+		}
+		// At most 19 digits always fit in an unsigned long
+		long value=0;
+		while(end-i>=8){
+			long word=0;
+			int bits=0;
+			for(int j=i+7;j>=i;j--){
+				char c=cbuf[j];
+				bits|=c;
+				word=(word<<8)|c;
+			}
+			if(bits>0xFF){
+				return INVALID;
+			}
+			long digits=convert(word);
+			if(digits<0){
+				return INVALID;
+			}
+			value=value*100000000L+digits;
+			i+=8;
+		}
+		while(i<end){
+			char c=cbuf[i];
+			if(c<'0' || c>'9'){
+				return INVALID;
+			}
+			value=value*10+(c-'0');
+			i++;
+		}
+		return finish(value,negative);
+	}
+
+	/**
+	 * Byte oriented version of parse for UTF-8 sources. Keep the two
+	 * versions in sync!
+	 *
+	 * @param bbuf the source
+	 * @param start the index of the first byte of the integer
+	 * @param end the index after the last byte of the integer
+	 * @return the value or INVALID
+	 */
+	protected static long parse(ByteBuffer bbuf,int start,int end){
+		int i=start;
+		boolean negative=false;
+		if(i<end && bbuf.get(i)=='-'){
+			negative=true;
+			i++;
+		}
+		if(i==end){
+			return INVALID;
+		}
+		while(i<end-1 && bbuf.get(i)=='0'){
+			i++;
+		}
+		if(end-i>19){
+			return INVALID;
+		}
+		boolean bigEndian=bbuf.order()==ByteOrder.BIG_ENDIAN;
+		long value=0;
+		while(end-i>=8){
+			long word=bbuf.getLong(i);
+			if(bigEndian){
+				word=Long.reverseBytes(word);
+			}
+			long digits=convert(word);
+			if(digits<0){
+				return INVALID;
+			}
+			value=value*100000000L+digits;
+			i+=8;
+		}
+		while(i<end){
+			byte c=bbuf.get(i);
+			if(c<'0' || c>'9'){
+				return INVALID;
+			}
+			value=value*10+(c-'0');
+			i++;
+		}
+		return finish(value,negative);
+	}
+
+	// Converts eight ascii digits packed into a word with the first digit in
+	// the lowest byte, or returns -1 if any of the bytes is not a digit
+	private static long convert(long word){
+		// The high nibble of a digit is 3, and adding 6 to it must not carry
+		// into the high nibble
+		if(((word&0xF0F0F0F0F0F0F0F0L) | (((word+0x0606060606060606L)&0xF0F0F0F0F0F0F0F0L)>>>4))!=0x3333333333333333L){
+			return -1;
+		}
+		word=((word&0x0F0F0F0F0F0F0F0FL)*2561)>>>8;
+		word=((word&0x00FF00FF00FF00FFL)*6553601)>>>16;
+		return (((word&0x0000FFFF0000FFFFL)*42949672960001L)>>>32)&0xFFFFFFFFL;
+	}
+
+	// Applies the sign to the unsigned magnitude, checking the range
+	private static long finish(long value,boolean negative){
+		if(value<0){
+			// Only the smallest long has a magnitude above the largest one,
+			// and that happens to be INVALID as well
+			return INVALID;
+		}
+		return negative?-value:value;
+	}
+}
@@ -0,0 +1,123 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A field name prepared for repeated lookups, typically the same few keys
+ * read from a large number of documents.
+ *
+ * The hash, characters and UTF-8 encoding of the name are computed once
+ * when the key is created. Comparing the key to a field then rejects names
+ * of a different length before looking at any characters, compares against
+ * UTF-8 sources byte by byte even for names outside of ascii, and the field
+ * index of wide objects can use the hash directly.
+ *
+ * A key also remembers the position in the object where its field was last
+ * found, much like an inline cache in a JIT. Streams of documents with the
+ * same shape keep their fields in the same order, so the field index of a
+ * wide object checks the field at that position before probing its table,
+ * and only compares the name of the key to that one field. A document of a
+ * different shape simply misses and falls back to the probe, which updates
+ * the position. Since the index only keeps the first field of each name by
+ * position, a key finds the same field as its name would, even in documents
+ * with several fields of the same name.
+ *
+ * Keys can be shared freely between threads, so they are best kept in
+ * static fields. The remembered position is only a hint that is always
+ * verified, so concurrent updates of it can at worst cause a probe.
+ *
+ * <pre>
+ * private static final LazyKey USER_ID=LazyKey.of("user_id");
+ * ...
+ * long id=obj.getLong(USER_ID);
+ * </pre>
+ */
+public final class LazyKey{
+	private final String name;
+	protected final char[] chars;
+	protected final byte[] bytes;
+	protected final int hash;
+	// Position of the field in the object it was last found in, or -1
+	protected int ordinal=-1;
+
+	private LazyKey(String name){
+		this.name=name;
+		chars=name.toCharArray();
+		bytes=name.getBytes(StandardCharsets.UTF_8);
+		hash=name.hashCode();
+	}
+
+	/**
+	 * Prepares a key for the given field name.
+	 *
+	 * @param name the name of the field
+	 * @return a new key
+	 */
+	public static LazyKey of(String name){
+		return new LazyKey(name);
+	}
+
+	/**
+	 * Returns the number of characters in the name of this key.
+	 *
+	 * @return the length of the name
+	 */
+	public int length(){
+		return chars.length;
+	}
+
+	/**
+	 * Returns true if the name of the given field token matches this key.
+	 *
+	 * @param token the field token
+	 * @return true if the names are equal
+	 */
+	protected boolean matches(LazyNode token){
+		if(token.type==LazyNode.EFIELD){
+			return name.equals(token.getStringValue());
+		}
+		int offset=token.startIndex;
+		if(!token.dirty && token.doc.bbuf!=null){
+			int length=bytes.length;
+			if(token.endIndex-offset!=length){
+				return false;
+			}
+			ByteBuffer bbuf=token.doc.bbuf;
+			for(int i=0;i<length;i++){
+				if(bytes[i]!=bbuf.get(offset+i)){
+					return false;
+				}
+			}
+			return true;
+		}
+		int length=chars.length;
+		if(token.endIndex-offset!=length){
+			return false;
+		}
+		char[] cbuf=token.getChars();
+		for(int i=0;i<length;i++){
+			if(chars[i]!=cbuf[offset+i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean equals(Object obj){
+		return obj instanceof LazyKey && ((LazyKey)obj).name.equals(name);
+	}
+
+	public int hashCode(){
+		return hash;
+	}
+
+	/**
+	 * Returns the name of this key.
+	 *
+	 * @return the name of the field
+	 */
+	public String toString(){
+		return name;
+	}
+}
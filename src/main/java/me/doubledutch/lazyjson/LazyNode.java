@@ -1,6 +1,9 @@
 package me.doubledutch.lazyjson;
 
 import java.util.*;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.BufferOverflowException;
 import me.doubledutch.lazyjson.compressor.*;
@@ -28,8 +31,13 @@ public final class LazyNode{
 	protected byte type;
 
 	protected boolean dirty=false;
-	protected char[] cbuf=null;
-	protected StringBuilder dirtyBuf=null;
+	// Set on objects and arrays whose contents have not been tokenized yet
+	protected boolean deferred=false;
+	// Set on objects where fields were skipped by a projection, so the raw
+	// source no longer matches their contents
+	protected boolean projected=false;
+	// The document holding the source and modified values for this token
+	protected LazyDocument doc=null;
 
 	// Start and end index into source string for this token.
 	// For an object or array, the end index will be the end of the entire
@@ -37,6 +45,12 @@ public final class LazyNode{
 	protected int startIndex;
 	protected int endIndex=-1;
 
+	// The value of a number token decoded while tokenizing, holding the value
+	// of an integer or the bits of a double. Left at LazyIntegerParser.INVALID
+	// unless the parser was asked to decode numbers up front, or if the value
+	// must be read from the source.
+	protected long number=LazyIntegerParser.INVALID;
+
 	// Children are stored as a linked list by maintaining the first and last
 	// child of this token, as well as a link to the next sibling
 	protected LazyNode child;
@@ -54,11 +68,35 @@ public final class LazyNode{
 		this.type=type;
 	}
 
-	protected StringBuilder getDirtyBuf(){
-		if(dirtyBuf==null){
-			dirtyBuf=new StringBuilder();
+	/**
+	 * Construct a new LazyNode with the given type and index into the source
+	 * string of the given document
+	 *
+	 * @param type the type of this token
+	 * @param startIndex the index into the source string where this token was found
+	 * @param doc the document holding the source
+	 */
+	protected LazyNode(byte type,int startIndex,LazyDocument doc){
+		this.startIndex=startIndex;
+		this.type=type;
+		this.doc=doc;
+	}
+
+	/**
+	 * Tokenizes the contents of a deferred object or array and attaches the
+	 * resulting tokens as the children of this token.
+	 *
+	 * @throws LazyException if the contents could not be parsed
+	 */
+	protected void expand() throws LazyException{
+		LazyParser parser=new LazyParser(doc,startIndex,endIndex-startIndex);
+		parser.tokenize();
+		if(parser.root.type!=type){
+			throw new LazyException("Unexpected end of "+(type==OBJECT?"object":"array"),endIndex-1);
 		}
-		return dirtyBuf;
+		child=parser.root.child;
+		lastChild=parser.root.lastChild;
+		deferred=false;
 	}
 
 	/*
@@ -77,8 +115,19 @@ public final class LazyNode{
 		}
 	}*/
 
+	/**
+	 * Returns the buffer holding the characters of this token, which is the
+	 * source for tokens found by the parser and the dirty buffer of the
+	 * document for values added later.
+	 *
+	 * @return the character buffer for this token
+	 */
+	protected char[] getChars(){
+		return dirty?doc.dirtyBuf:doc.cbuf;
+	}
+
 	protected boolean isDirty(){
-		if(dirty){
+		if(dirty || projected){
 			return true;
 		}
 		if(child==null){
@@ -92,6 +141,53 @@ public final class LazyNode{
 		return false;
 	}
 
+	// True for tokens whose characters were appended to the dirty buffer of
+	// the given document
+	private boolean isAppendedTo(LazyDocument from){
+		return dirty && doc==from && type!=OBJECT && type!=ARRAY && type!=VALUE_TRUE && type!=VALUE_FALSE && type!=VALUE_NULL;
+	}
+
+	/**
+	 * Counts the characters appended to the dirty buffer of a document by
+	 * this token and its children.
+	 *
+	 * @param from the document whose buffer to count
+	 * @return the number of characters
+	 */
+	protected int getAppendedLength(LazyDocument from){
+		int length=isAppendedTo(from)?endIndex-startIndex:0;
+		for(LazyNode pointer=child;pointer!=null;pointer=pointer.next){
+			length+=pointer.getAppendedLength(from);
+		}
+		return length;
+	}
+
+	/**
+	 * Moves this token and its children from one document to another that
+	 * shares the same source, copying appended characters into the buffer
+	 * of the new document and rebasing their indexes. Tokens belonging to
+	 * other documents are left alone, but their children are still visited.
+	 *
+	 * @param from the document to move tokens out of
+	 * @param to the document to move tokens into
+	 */
+	protected void moveTo(LazyDocument from,LazyDocument to){
+		if(doc==to){
+			return;
+		}
+		if(doc==from){
+			if(isAppendedTo(from)){
+				int length=endIndex-startIndex;
+				startIndex=to.append(from.dirtyBuf,startIndex,length);
+				endIndex=startIndex+length;
+			}
+			doc=to;
+		}
+		for(LazyNode pointer=child;pointer!=null;pointer=pointer.next){
+			pointer.moveTo(from,to);
+		}
+	}
+
 	/**
 	 * Add a new child to the current linked list of child tokens
 	 *
@@ -115,6 +211,9 @@ public final class LazyNode{
 	 * @return the number of child tokens attached to this token
 	 */
 	protected int getChildCount(){
+		if(deferred){
+			expand();
+		}
 		int num=0;
 		LazyNode token=child;
 		while(token!=null){
@@ -129,10 +228,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cArray(int index){
-		return new LazyNode(ARRAY,index);
+	protected static LazyNode cArray(int index,LazyDocument doc){
+		return new LazyNode(ARRAY,index,doc);
 	}
 
 	/**
@@ -140,10 +240,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cObject(int index){
-		return new LazyNode(OBJECT,index);
+	protected static LazyNode cObject(int index,LazyDocument doc){
+		return new LazyNode(OBJECT,index,doc);
 	}
 
 	/**
@@ -151,10 +252,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cField(int index){
-		return new LazyNode(FIELD,index);
+	protected static LazyNode cField(int index,LazyDocument doc){
+		return new LazyNode(FIELD,index,doc);
 	}
 
 	/**
@@ -162,10 +264,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cStringValue(int index){
-		return new LazyNode(VALUE_STRING,index);
+	protected static LazyNode cStringValue(int index,LazyDocument doc){
+		return new LazyNode(VALUE_STRING,index,doc);
 	}
 
 	/**
@@ -173,10 +276,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cNumberValue(int index){
-		return new LazyNode(VALUE_INTEGER,index);
+	protected static LazyNode cNumberValue(int index,LazyDocument doc){
+		return new LazyNode(VALUE_INTEGER,index,doc);
 	}
 
 	/**
@@ -184,10 +288,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cValueTrue(int index){
-		return new LazyNode(VALUE_TRUE,index);
+	protected static LazyNode cValueTrue(int index,LazyDocument doc){
+		return new LazyNode(VALUE_TRUE,index,doc);
 	}
 
 	/**
@@ -195,10 +300,11 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cValueFalse(int index){
-		return new LazyNode(VALUE_FALSE,index);
+	protected static LazyNode cValueFalse(int index,LazyDocument doc){
+		return new LazyNode(VALUE_FALSE,index,doc);
 	}
 
 	/**
@@ -206,90 +312,309 @@ public final class LazyNode{
 	 * with the starting index set to the given index.
 	 *
 	 * @param index the starting index for this token
+	 * @param doc the document holding the source
 	 * @return a new token
 	 */
-	protected static LazyNode cValueNull(int index){
-		return new LazyNode(VALUE_NULL,index);
+	protected static LazyNode cValueNull(int index,LazyDocument doc){
+		return new LazyNode(VALUE_NULL,index,doc);
 	}
 	/*
 	protected int getIntValue(char[] source) throws LazyException{
 		return getIntValue(source,null);
 	}*/
 
+	/**
+	 * Computes the hash of the characters of this field or string token,
+	 * using the same function as String.hashCode. Unescaped values are
+	 * hashed straight from the source without creating a string.
+	 *
+	 * @return the hash of the unescaped characters
+	 */
+	protected int getStringHash(){
+		if(type==EFIELD || type==VALUE_ESTRING){
+			return getStringValue().hashCode();
+		}
+		int hash=0;
+		if(!dirty && doc.bbuf!=null){
+			ByteBuffer bbuf=doc.bbuf;
+			for(int i=startIndex;i<endIndex;i++){
+				byte b=bbuf.get(i);
+				if(b<0){
+					// Multi-byte characters must be decoded to hash the same
+					// way as the string
+					return getStringValue().hashCode();
+				}
+				hash=31*hash+b;
+			}
+			return hash;
+		}
+		char[] cbuf=getChars();
+		for(int i=startIndex;i<endIndex;i++){
+			hash=31*hash+cbuf[i];
+		}
+		return hash;
+	}
+
+	/**
+	 * Compares the characters of this field or string token with those of
+	 * another. Unescaped values read from the same kind of source are
+	 * compared in place.
+	 *
+	 * @param token the other field or string token
+	 * @return true if the unescaped characters are equal
+	 */
+	protected boolean stringEquals(LazyNode token){
+		boolean escaped=type==EFIELD || type==VALUE_ESTRING || token.type==EFIELD || token.type==VALUE_ESTRING;
+		if(!escaped){
+			boolean utf8=!dirty && doc.bbuf!=null;
+			if(utf8==(!token.dirty && token.doc.bbuf!=null)){
+				// The UTF-8 encodings of two strings are equal exactly when
+				// the strings are
+				return rangeEquals(token);
+			}
+		}
+		return getStringValue().equals(token.getStringValue());
+	}
+
+	/**
+	 * Compares the raw characters or bytes covered by this token with those
+	 * covered by another token read from the same kind of source.
+	 *
+	 * @param token the other token
+	 * @return true if both ranges hold the same data
+	 */
+	protected boolean rangeEquals(LazyNode token){
+		int length=endIndex-startIndex;
+		if(token.endIndex-token.startIndex!=length){
+			return false;
+		}
+		if(!dirty && doc.bbuf!=null){
+			ByteBuffer b1=doc.bbuf;
+			ByteBuffer b2=token.doc.bbuf;
+			if(b1==b2 && startIndex==token.startIndex){
+				return true;
+			}
+			for(int i=0;i<length;i++){
+				if(b1.get(startIndex+i)!=b2.get(token.startIndex+i)){
+					return false;
+				}
+			}
+			return true;
+		}
+		char[] c1=getChars();
+		char[] c2=token.getChars();
+		if(c1==c2 && startIndex==token.startIndex){
+			return true;
+		}
+		for(int i=0;i<length;i++){
+			if(c1[startIndex+i]!=c2[token.startIndex+i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the hash of an object or array token in a single pass over
+	 * its children. Field names are not part of the hash, and nested objects
+	 * and arrays add 37 times their own hash.
+	 *
+	 * @return the hash of the contents of this token
+	 * @throws LazyException if a nested value could not be parsed
+	 */
+	protected int getContentHash() throws LazyException{
+		if(deferred){
+			expand();
+		}
+		int code=type==OBJECT?1:2;
+		for(LazyNode pointer=child;pointer!=null;pointer=pointer.next){
+			LazyNode value=type==OBJECT?pointer.child:pointer;
+			switch(value.type){
+				case VALUE_STRING:
+				case VALUE_ESTRING:
+					code+=value.getStringHash();
+					break;
+				case VALUE_INTEGER:
+					code+=value.getIntegerHash();
+					break;
+				case VALUE_FLOAT:
+					long l=Double.doubleToLongBits(value.getDoubleValue());
+					code+=(int)(l ^ (l >>> 32));
+					break;
+				case VALUE_TRUE:
+					code+=1;
+					break;
+				case OBJECT:
+				case ARRAY:
+					code+=37*value.getContentHash();
+					break;
+			}
+		}
+		return code;
+	}
+
+	// Integers too large for a long are hashed by their exact value rather
+	// than failing
+	private int getIntegerHash() throws LazyException{
+		long l=number;
+		if(l==LazyIntegerParser.INVALID){
+			l=parseLong();
+			if(l==LazyIntegerParser.INVALID){
+				BigInteger big=getBigIntegerValue();
+				if(big.bitLength()>63){
+					return big.hashCode();
+				}
+				l=big.longValue();
+			}
+		}
+		return (int)(l ^ (l >>> 32));
+	}
+
+	private boolean integerEquals(LazyNode token) throws LazyException{
+		long l1=number;
+		if(l1==LazyIntegerParser.INVALID){
+			l1=parseLong();
+		}
+		long l2=token.number;
+		if(l2==LazyIntegerParser.INVALID){
+			l2=token.parseLong();
+		}
+		if(l1!=LazyIntegerParser.INVALID && l2!=LazyIntegerParser.INVALID){
+			return l1==l2;
+		}
+		return getBigIntegerValue().equals(token.getBigIntegerValue());
+	}
+
+	/**
+	 * Compares the values of two tokens, following the rules of
+	 * LazyElement.equals. Objects and arrays are compared with a single walk
+	 * over both lists of children.
+	 *
+	 * @param a the first value token
+	 * @param b the second value token
+	 * @return true if the values are equal
+	 * @throws LazyException if a value could not be parsed
+	 */
+	protected static boolean equalValues(LazyNode a,LazyNode b) throws LazyException{
+		if(a.type!=b.type){
+			// Strings with and without escapes can still be equal
+			return (a.type==VALUE_STRING || a.type==VALUE_ESTRING) && (b.type==VALUE_STRING || b.type==VALUE_ESTRING) && a.stringEquals(b);
+		}
+		switch(a.type){
+			case VALUE_STRING:
+			case VALUE_ESTRING:
+				return a.stringEquals(b);
+			case VALUE_INTEGER:
+				return a.integerEquals(b);
+			case VALUE_FLOAT:
+				// Compared like Double.equals so that 0.0 and -0.0 differ, in
+				// agreement with the bits used by getContentHash
+				return Double.doubleToLongBits(a.getDoubleValue())==Double.doubleToLongBits(b.getDoubleValue());
+			case OBJECT:
+				return equalObjects(a,b);
+			case ARRAY:
+				return equalArrays(a,b);
+		}
+		// Booleans and nulls are equal when their types are
+		return true;
+	}
+
+	private static boolean equalArrays(LazyNode a,LazyNode b) throws LazyException{
+		if(a.deferred){
+			a.expand();
+		}
+		if(b.deferred){
+			b.expand();
+		}
+		LazyNode p1=a.child;
+		LazyNode p2=b.child;
+		while(p1!=null && p2!=null){
+			if(!equalValues(p1,p2)){
+				return false;
+			}
+			p1=p1.next;
+			p2=p2.next;
+		}
+		return p1==null && p2==null;
+	}
+
+	private static boolean equalObjects(LazyNode a,LazyNode b) throws LazyException{
+		int count=a.getChildCount();
+		if(count!=b.getChildCount()){
+			return false;
+		}
+		// Objects built from the same data usually list their fields in the
+		// same order, so the field at the same position is tried first and
+		// the other object is only searched when that misses
+		LazyNode p2=b.child;
+		for(LazyNode p1=a.child;p1!=null;p1=p1.next){
+			LazyNode field=p2;
+			if(field==null || !p1.stringEquals(field)){
+				field=findField(b,p1,count);
+				if(field==null){
+					return false;
+				}
+			}
+			if(!equalValues(p1.child,field.child)){
+				return false;
+			}
+			p2=field.next;
+		}
+		return true;
+	}
+
+	private static LazyNode findField(LazyNode object,LazyNode field,int count){
+		if(count>=LazyFieldIndex.THRESHOLD){
+			return object.doc.getIndex(object).get(field);
+		}
+		for(LazyNode pointer=object.child;pointer!=null;pointer=pointer.next){
+			if(pointer.stringEquals(field)){
+				return pointer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes the value of this number token right away, while its digits
+	 * are still in the cache. Values that can not be decoded by the fast
+	 * parsers are left to be read from the source as usual.
+	 */
+	protected void decodeNumber(){
+		if(type==VALUE_FLOAT){
+			double d;
+			if(doc.bbuf!=null){
+				d=LazyDoubleParser.parse(doc.bbuf,startIndex,endIndex);
+			}else{
+				d=LazyDoubleParser.parse(doc.cbuf,startIndex,endIndex);
+			}
+			if(d==d){
+				number=Double.doubleToRawLongBits(d);
+			}
+		}else{
+			number=parseLong();
+		}
+	}
+
 	/**
 	 * Parses the characters of this token and attempts to construct an integer
 	 * value from them.
 	 *
 	 * @return the integer value if it could be parsed
-	 * @throws LazyException if the value could not be parsed
+	 * @throws LazyException if the value could not be parsed or does not fit in an integer
 	 */
 	protected int getIntValue() throws LazyException{
-		int i=startIndex;
-		boolean sign=false;
-		int value=0;
 		if(type==VALUE_FLOAT){
 			return (int)getDoubleValue();
-		}else if(type==VALUE_STRING || type==VALUE_ESTRING){
-			// Attempt to parse as an int, throw if impossible
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
+		}else if(type==VALUE_INTEGER || type==VALUE_STRING || type==VALUE_ESTRING){
+			long value=number;
+			if(value==LazyIntegerParser.INVALID){
+				value=decodeLong("integer");
 			}
-			return sign?value:-value;
-		}else if(type==VALUE_INTEGER){
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
+			if(value<Integer.MIN_VALUE || value>Integer.MAX_VALUE){
+				throw new LazyException("'"+getStringValue()+"' is out of range for an integer",startIndex);
 			}
-			return sign?value:-value;
+			return (int)value;
 		}
 		throw new LazyException("Not an integer",startIndex);
 	}
@@ -299,79 +624,115 @@ public final class LazyNode{
 	 * value from them.
 	 *
 	 * @return the long value if it could be parsed
-	 * @throws LazyException if the value could not be parsed
+	 * @throws LazyException if the value could not be parsed or does not fit in a long
 	 */
 	protected long getLongValue() throws LazyException{
-		int i=startIndex;
-		boolean sign=false;
-		long value=0;
 		if(type==VALUE_FLOAT){
 			return (long)getDoubleValue();
-		}else if(type==VALUE_STRING || type==VALUE_ESTRING){
-			// Attempt to parse as an int, throw if impossible
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid long",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid long",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}
-			return sign?value:-value;
-		}else if(type==VALUE_INTEGER){
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
+		}else if(type==VALUE_INTEGER || type==VALUE_STRING || type==VALUE_ESTRING){
+			long value=number;
+			if(value!=LazyIntegerParser.INVALID){
+				return value;
 			}
-			return sign?value:-value;
+			return decodeLong("long");
 		}
 		throw new LazyException("Not a long",startIndex);
 	}
 
+	/**
+	 * Decodes the digits of this token, reporting values that do not fit in
+	 * a long instead of letting them wrap around.
+	 *
+	 * @param kind the name of the requested type used in error messages
+	 * @return the long value if it could be parsed
+	 * @throws LazyException if the value could not be parsed or does not fit in a long
+	 */
+	private long decodeLong(String kind) throws LazyException{
+		long value=parseLong();
+		if(value!=LazyIntegerParser.INVALID){
+			return value;
+		}
+		// Tell the smallest long apart from values that are invalid or too
+		// large, which are rare enough to go through BigInteger
+		String str=getStringValue();
+		if(!isInteger(str)){
+			throw new LazyException("'"+str+"' is not a valid "+kind,startIndex);
+		}
+		BigInteger big=new BigInteger(str);
+		if(big.bitLength()>63){
+			throw new LazyException("'"+str+"' is out of range for a long",startIndex);
+		}
+		return big.longValue();
+	}
+
+	/**
+	 * Parses the characters of this token as an integer of any size.
+	 *
+	 * @return the integer value if it could be parsed
+	 * @throws LazyException if the value could not be parsed
+	 */
+	protected BigInteger getBigIntegerValue() throws LazyException{
+		if(type==VALUE_FLOAT){
+			return getBigDecimalValue().toBigInteger();
+		}else if(type==VALUE_INTEGER || type==VALUE_STRING || type==VALUE_ESTRING){
+			long value=parseLong();
+			if(value!=LazyIntegerParser.INVALID){
+				return BigInteger.valueOf(value);
+			}
+			String str=getStringValue();
+			if(!isInteger(str)){
+				throw new LazyException("'"+str+"' is not a valid integer",startIndex);
+			}
+			return new BigInteger(str);
+		}
+		throw new LazyException("Not an integer",startIndex);
+	}
+
+	/**
+	 * Parses the characters of this token as an exact decimal number.
+	 *
+	 * @return the decimal value if it could be parsed
+	 * @throws LazyException if the value could not be parsed
+	 */
+	protected BigDecimal getBigDecimalValue() throws LazyException{
+		if(type==VALUE_INTEGER){
+			return new BigDecimal(getBigIntegerValue());
+		}else if(type==VALUE_FLOAT || type==VALUE_STRING || type==VALUE_ESTRING){
+			String str=getStringValue();
+			try{
+				return new BigDecimal(str);
+			}catch(NumberFormatException nfe){
+				throw new LazyException("'"+str+"' is not a valid decimal",startIndex);
+			}
+		}
+		throw new LazyException("Not a decimal",startIndex);
+	}
+
+	// Decodes the digits of this token from whichever buffer holds them,
+	// returning LazyIntegerParser.INVALID if they do not form a long
+	protected long parseLong(){
+		if(!dirty && doc.bbuf!=null){
+			return LazyIntegerParser.parse(doc.bbuf,startIndex,endIndex);
+		}
+		return LazyIntegerParser.parse(getChars(),startIndex,endIndex);
+	}
+
+	// Returns true if the string is an optional minus sign followed by one or
+	// more digits, the only format accepted when decoding integers
+	private static boolean isInteger(String str){
+		int i=str.startsWith("-")?1:0;
+		if(i==str.length()){
+			return false;
+		}
+		for(;i<str.length();i++){
+			char c=str.charAt(i);
+			if(c<'0' || c>'9'){
+				return false;
+			}
+		}
+		return true;
+	}
+
 	// protected double getDoubleValue(char[] source) throws LazyException{
 	//	return getDoubleValue(source,null);
 	// }
@@ -384,6 +745,25 @@ public final class LazyNode{
 	 * @throws LazyException if the value could not be parsed
 	 */
 	protected double getDoubleValue() throws LazyException{
+		long value=number;
+		if(value!=LazyIntegerParser.INVALID){
+			// Decoded while tokenizing. Converting a long to a double rounds
+			// the same way as parsing its digits would.
+			return type==VALUE_FLOAT?Double.longBitsToDouble(value):(double)value;
+		}
+		if(type==VALUE_FLOAT || type==VALUE_INTEGER || type==VALUE_STRING){
+			// Parse straight from the source, NaN means the value has to go
+			// through Double.parseDouble instead
+			double d;
+			if(!dirty && doc.bbuf!=null){
+				d=LazyDoubleParser.parse(doc.bbuf,startIndex,endIndex);
+			}else{
+				d=LazyDoubleParser.parse(getChars(),startIndex,endIndex);
+			}
+			if(d==d){
+				return d;
+			}
+		}
 		double d=0.0;
 		String str=getStringValue();
 		try{
@@ -409,77 +789,159 @@ public final class LazyNode{
 	protected String getStringValue(){
 		if(type==VALUE_NULL){
 			return null;
-		}else if(!(type==VALUE_ESTRING||type==EFIELD)){
-			if(dirty){
-				return dirtyBuf.substring(startIndex,endIndex);
+		}else if(!dirty && doc.bbuf!=null){
+			if(type==VALUE_ESTRING || type==EFIELD){
+				// Escape sequences are plain ascii, so it is safe to decode the
+				// UTF-8 data before handling them
+				char[] source=decode(doc.bbuf,startIndex,endIndex).toCharArray();
+				return unescape(source,0,source.length);
 			}
-			return new String(cbuf,startIndex,endIndex-startIndex);
-		}else{
-			StringBuilder buf=new StringBuilder(endIndex-startIndex);
-			if(dirty){
-				for(int i=startIndex;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					if(c=='\\'){
-						i++;
-						c=dirtyBuf.charAt(i);
-						if(c=='"' || c=='\\' || c=='/'){
-							buf.append(c);
-						}else if(c=='b'){
-							buf.append('\b');
-						}else if(c=='f'){
-							buf.append('\f');
-						}else if(c=='n'){
-							buf.append('\n');
-						}else if(c=='r'){
-							buf.append('\r');
-						}else if(c=='t'){
-							buf.append('\t');
-						}else if(c=='u'){
-							String code=dirtyBuf.substring(i+1,i+5);
-							buf.append((char)Integer.parseInt(code, 16));
-							i+=4;
-						}
-					}else{
-						buf.append(c);
-					}
+			return decode(doc.bbuf,startIndex,endIndex);
+		}else if(type==VALUE_ESTRING || type==EFIELD){
+			return unescape(getChars(),startIndex,endIndex);
+		}
+		return new String(getChars(),startIndex,endIndex-startIndex);
+	}
+
+	/**
+	 * Builds a string from the given range of characters, replacing escape
+	 * sequences with the characters they represent.
+	 *
+	 * @param source the characters to unescape
+	 * @param startIndex the first character to include
+	 * @param endIndex the index after the last character to include
+	 * @return the unescaped string
+	 */
+	private static String unescape(char[] source,int startIndex,int endIndex){
+		StringBuilder buf=new StringBuilder(endIndex-startIndex);
+		for(int i=startIndex;i<endIndex;i++){
+			char c=source[i];
+			if(c=='\\'){
+				i++;
+				c=source[i];
+				if(c=='"' || c=='\\' || c=='/'){
+					buf.append(c);
+				}else if(c=='b'){
+					buf.append('\b');
+				}else if(c=='f'){
+					buf.append('\f');
+				}else if(c=='n'){
+					buf.append('\n');
+				}else if(c=='r'){
+					buf.append('\r');
+				}else if(c=='t'){
+					buf.append('\t');
+				}else if(c=='u'){
+					String code=new String(source,i+1,4);
+					buf.append((char)Integer.parseInt(code, 16));
+					i+=4;
 				}
 			}else{
-				for(int i=startIndex;i<endIndex;i++){
-					char c=cbuf[i];
-					if(c=='\\'){
-						i++;
-						c=cbuf[i];
-						if(c=='"' || c=='\\' || c=='/'){
-							buf.append(c);
-						}else if(c=='b'){
-							buf.append('\b');
-						}else if(c=='f'){
-							buf.append('\f');
-						}else if(c=='n'){
-							buf.append('\n');
-						}else if(c=='r'){
-							buf.append('\r');
-						}else if(c=='t'){
-							buf.append('\t');
-						}else if(c=='u'){
-							String code=new String(cbuf,i+1,4);
-							buf.append((char)Integer.parseInt(code, 16));
-							i+=4;
-						}
+				buf.append(c);
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Decodes a range of UTF-8 data into a string.
+	 *
+	 * @param source the buffer holding the data
+	 * @param startIndex the absolute index of the first byte
+	 * @param endIndex the absolute index after the last byte
+	 * @return the decoded string
+	 */
+	protected static String decode(ByteBuffer source,int startIndex,int endIndex){
+		if(source.hasArray()){
+			return new String(source.array(),source.arrayOffset()+startIndex,endIndex-startIndex,StandardCharsets.UTF_8);
+		}
+		// Work on a duplicate so we never touch the position of a buffer
+		// that might be shared between threads
+		byte[] data=new byte[endIndex-startIndex];
+		ByteBuffer dup=source.duplicate();
+		dup.position(startIndex);
+		dup.get(data);
+		return new String(data,StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the value of this token as a view of the source characters if
+	 * possible. Values that have to be unescaped or decoded from UTF-8 are
+	 * returned as a String instead.
+	 *
+	 * @return the value held by this token
+	 */
+	protected CharSequence getCharSequenceValue(){
+		if((!dirty && doc.bbuf!=null) || type==VALUE_NULL || type==VALUE_ESTRING || type==EFIELD){
+			return getStringValue();
+		}
+		return new LazyCharSequence(getChars(),startIndex,endIndex);
+	}
+
+	protected String getRawStringValue(){
+		if(!dirty && doc.bbuf!=null){
+			return decode(doc.bbuf,startIndex,endIndex);
+		}
+		return new String(getChars(),startIndex,endIndex-startIndex);
+	}
+
+	/**
+	 * Writes the JSON representation of this token. Objects and arrays that
+	 * contain no modified values are copied from the source in one piece,
+	 * only the path down to modified values is written token by token.
+	 *
+	 * @param out the sink to write to
+	 * @throws IOException if the sink could not be written to
+	 */
+	protected void writeTo(LazySink out) throws IOException{
+		switch(type){
+			case OBJECT:
+			case ARRAY:
+				if(!isDirty()){
+					writeRaw(out);
+					return;
+				}
+				out.write(type==OBJECT?'{':'[');
+				for(LazyNode pointer=child;pointer!=null;pointer=pointer.next){
+					if(pointer!=child){
+						out.write(',');
+					}
+					if(type==OBJECT){
+						out.write('"');
+						pointer.writeRaw(out);
+						out.write("\":");
+						pointer.child.writeTo(out);
 					}else{
-						buf.append(c);
+						pointer.writeTo(out);
 					}
 				}
-			}
-			return buf.toString();
+				out.write(type==OBJECT?'}':']');
+				return;
+			case VALUE_STRING:
+			case VALUE_ESTRING:
+				out.write('"');
+				writeRaw(out);
+				out.write('"');
+				return;
+			case VALUE_TRUE:
+				out.write("true");
+				return;
+			case VALUE_FALSE:
+				out.write("false");
+				return;
+			case VALUE_NULL:
+				out.write("null");
+				return;
 		}
+		writeRaw(out);
 	}
 
-	protected String getRawStringValue(){
-		if(dirty){
-			return dirtyBuf.substring(startIndex,endIndex);
+	// Writes the characters covered by this token as they are in the source
+	private void writeRaw(LazySink out) throws IOException{
+		if(!dirty && doc.bbuf!=null){
+			out.write(doc.bbuf,startIndex,endIndex-startIndex);
 		}else{
-			return new String(cbuf,startIndex,endIndex-startIndex);
+			out.write(getChars(),startIndex,endIndex-startIndex);
 		}
 	}
 
@@ -518,6 +980,9 @@ public final class LazyNode{
 		out+=":["+startIndex+","+endIndex+"]";
 		if(dirty)out+="d";
 		out+="\n";
+		if(deferred){
+			expand();
+		}
 		if(child!=null){
 			LazyNode token=child;
 			while(token!=null){
@@ -537,6 +1002,9 @@ public final class LazyNode{
 		private LazyNode next;
 
 		protected StringIterator(LazyNode token){
+			if(token.deferred){
+				token.expand();
+			}
 			next=token.child;
 		}
 
@@ -595,6 +1063,9 @@ public final class LazyNode{
 
 	protected void writeSegmentValues(ByteBuffer buf,DictionaryCache dict) throws BufferOverflowException{
 		if(type==OBJECT || type==ARRAY){
+			if(deferred){
+				expand();
+			}
 			LazyNode next=child;
 			while(next!=null){
 				next.writeSegmentValues(buf,dict);
@@ -646,6 +1117,9 @@ public final class LazyNode{
 	}
 
 	protected void addSegments(Template template){
+		if(deferred){
+			expand();
+		}
 		if(type==OBJECT){
 			template.addConstant("{");
 			addCommaSeparatedChildren(template);
@@ -739,6 +1213,9 @@ public final class LazyNode{
 		buf.putInt(startIndex);
 		buf.putInt(endIndex);
 		if(type==OBJECT || type==ARRAY){
+			if(deferred){
+				expand();
+			}
 			LazyNode n=child;
 			while(n!=null){
 				n.writeToBuffer(buf);
@@ -753,6 +1230,9 @@ public final class LazyNode{
 	protected int getBufferSize(){
 		int size=1+4+4; // type, start and end index, modifier
 		if(type==OBJECT || type==ARRAY){
+			if(deferred){
+				expand();
+			}
 			LazyNode n=child;
 			while(n!=null){
 				size+=n.getBufferSize();
@@ -5,7 +5,12 @@ import me.doubledutch.lazyjson.compressor.Template;
 import java.util.Iterator;
 import java.util.HashSet;
 import java.util.Set;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
 
 /**
  * An object used to parse and inspect JSON data given in the form of a string.
@@ -28,6 +33,221 @@ public class LazyObject extends LazyElement{
 		// source=raw;
 	}
 
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the
+	 * given string, only tokenizing the given number of nested levels up
+	 * front. Objects and arrays nested deeper than that are only matched to
+	 * find their end, and are tokenized the first time they are accessed.
+	 * This saves most of the work for large documents where only a few
+	 * values near the top are read. Errors inside the deferred parts are not
+	 * reported until they are accessed.
+	 *
+	 * @param raw the input string
+	 * @param expandDepth the number of levels of objects and arrays below this one to tokenize up front
+	 * @throws LazyException if the string could not be parsed as a JSON object
+	 */
+	public LazyObject(String raw,int expandDepth) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.expandDepth=expandDepth;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the
+	 * given string, optionally decoding every number while tokenizing. This
+	 * makes parsing slower, but every later read of a number is a plain
+	 * field load, which pays off for documents such as metrics or
+	 * coordinates where most numbers are read, often more than once.
+	 *
+	 * @param raw the input string
+	 * @param decodeNumbers true to decode numbers up front instead of on first access
+	 * @throws LazyException if the string could not be parsed as a JSON object
+	 */
+	public LazyObject(String raw,boolean decodeNumbers) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.decodeNumbers=decodeNumbers;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the
+	 * given string, only tokenizing the fields included in the given
+	 * projection. All other fields are skipped during parsing and will not
+	 * be present in the object.
+	 *
+	 * @param raw the input string
+	 * @param projection the fields to include
+	 * @throws LazyException if the string could not be parsed as a JSON object
+	 */
+	public LazyObject(String raw,LazyProjection projection) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.setProjection(projection);
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the
+	 * given range of characters. The array is used as is without copying, and
+	 * all indexes into it are absolute, so many documents can be packed into
+	 * one large pooled buffer. The caller keeps ownership of the array, but
+	 * must not modify the range while this object or any value taken from
+	 * it is in use. Values added with put are kept separately and are never
+	 * written to the array.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first character of the input
+	 * @param length the number of characters in the input
+	 * @throws LazyException if the input could not be parsed as a JSON object
+	 */
+	public LazyObject(char[] raw,int offset,int length) throws LazyException{
+		this(raw,offset,length,false);
+	}
+
+	/**
+	 * Same as above, optionally decoding every number while tokenizing, see
+	 * the string constructor taking the same flag.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first character of the input
+	 * @param length the number of characters in the input
+	 * @param decodeNumbers true to decode numbers up front instead of on first access
+	 * @throws LazyException if the input could not be parsed as a JSON object
+	 */
+	public LazyObject(char[] raw,int offset,int length,boolean decodeNumbers) throws LazyException{
+		LazyParser parser=new LazyParser(raw,offset,length);
+		parser.decodeNumbers=decodeNumbers;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation
+	 * between the position and the limit of the given buffer. If the buffer is
+	 * backed by an accessible array, such as the output of a CharsetDecoder,
+	 * that array is used without copying under the same rules as for a char
+	 * array range above. Read only buffers are copied first. The position and
+	 * limit of the buffer are left untouched.
+	 *
+	 * @param raw the input buffer
+	 * @throws LazyException if the input could not be parsed as a JSON object
+	 */
+	public LazyObject(CharBuffer raw) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the
+	 * given character sequence, such as a StringBuilder. Since the sequence
+	 * does not give access to its characters, they are copied once, straight
+	 * into the buffer that is tokenized, without going through a String.
+	 *
+	 * @param raw the input characters
+	 * @throws LazyException if the input could not be parsed as a JSON object
+	 */
+	public LazyObject(CharSequence raw) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON data in
+	 * the given byte array. The data is tokenized in place and is not decoded
+	 * until string values are requested, so the array must not be modified
+	 * while this object is in use.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(byte[] raw) throws LazyException{
+		this(ByteBuffer.wrap(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON data
+	 * between the position and the limit of the given buffer. The data is
+	 * tokenized in place and is not decoded until string values are
+	 * requested, so the buffer contents must not be modified while this object
+	 * is in use. The position and limit of the buffer are left untouched.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(ByteBuffer raw) throws LazyException{
+		this(raw,false);
+	}
+
+	/**
+	 * Same as above, optionally decoding every number while tokenizing, see
+	 * the string constructor taking the same flag. This also works for
+	 * buffers mapped from a file.
+	 *
+	 * @param raw the input data
+	 * @param decodeNumbers true to decode numbers up front instead of on first access
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(ByteBuffer raw,boolean decodeNumbers) throws LazyException{
+		LazyParser parser=new LazyParser(raw);
+		parser.decodeNumbers=decodeNumbers;
+		parser.tokenize();
+		if(parser.root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		root=parser.root;
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON data in
+	 * the given file. The file is memory mapped rather than read into the
+	 * heap and must not be modified while the object is in use.
+	 *
+	 * Files larger than 2GB, the limit of a single mapping, are mapped in
+	 * several windows that each hold a part of the values of the root, and
+	 * any value of the root must fit in a window. Errors in such files are
+	 * reported with their byte offset in the message.
+	 *
+	 * @param path the file to parse
+	 * @return a new object backed by the mapped file
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the file could not be parsed as a JSON object
+	 */
+	public static LazyObject open(Path path) throws IOException,LazyException{
+		return open(path,Integer.MAX_VALUE);
+	}
+
+	// Same as above with the size of the mapped windows as a parameter, so
+	// the windows can be tested without creating huge files
+	protected static LazyObject open(Path path,int windowSize) throws IOException,LazyException{
+		LazyNode root=map(path,windowSize);
+		if(root.type!=LazyNode.OBJECT){
+			throw new LazyException("JSON Object must start with {",0);
+		}
+		return new LazyObject(root);
+	}
+
 	public LazyObject() throws LazyException{
 		LazyParser parser=new LazyParser("{}");
 		parser.tokenize();	
@@ -75,6 +295,29 @@ public class LazyObject extends LazyElement{
 		return null;
 	}
 
+	/**
+	 * Returns the value type of the given field.
+	 *
+	 * @param key the prepared name of the requested field
+	 * @return the type of the value for the given field
+	 * @throws LazyException if the requested field did not exist
+	 */
+	public LazyType getType(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		switch(token.type){
+			case LazyNode.OBJECT: return LazyType.OBJECT;
+			case LazyNode.ARRAY: return LazyType.ARRAY;
+			case LazyNode.VALUE_TRUE: return LazyType.BOOLEAN;
+			case LazyNode.VALUE_FALSE: return LazyType.BOOLEAN;
+			case LazyNode.VALUE_NULL: return LazyType.NULL;
+			case LazyNode.VALUE_STRING: return LazyType.STRING;
+			case LazyNode.VALUE_ESTRING: return LazyType.STRING;
+			case LazyNode.VALUE_INTEGER: return LazyType.INTEGER;
+			case LazyNode.VALUE_FLOAT: return LazyType.FLOAT;
+		}
+		return null;
+	}
+
 	public Object opt(String key) throws LazyException{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token!=null){
@@ -97,6 +340,28 @@ public class LazyObject extends LazyElement{
 		return null;
 	}
 
+	public Object opt(LazyKey key) throws LazyException{
+		LazyNode token=getOptionalFieldToken(key);
+		if(token!=null){
+			switch(token.type){
+				case LazyNode.OBJECT: LazyObject obj=new LazyObject(token);
+									  obj.parent=this;
+									  return obj;
+				case LazyNode.ARRAY: LazyArray arr= new LazyArray(token);
+									 arr.parent=this;
+									 return arr;
+				case LazyNode.VALUE_TRUE: return (Boolean)true;
+				case LazyNode.VALUE_FALSE: return (Boolean)false;
+				case LazyNode.VALUE_NULL: return LazyObject.NULL;
+				case LazyNode.VALUE_STRING: return token.getStringValue();
+				case LazyNode.VALUE_ESTRING: return token.getStringValue();
+				case LazyNode.VALUE_INTEGER: return (Long)token.getLongValue();
+				case LazyNode.VALUE_FLOAT: return (Double)token.getDoubleValue();
+			}
+		}
+		return null;
+	}
+
 	public Object get(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
 		if(token!=null){
@@ -120,6 +385,29 @@ public class LazyObject extends LazyElement{
 		return null;
 	}
 
+	public Object get(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		if(token!=null){
+			switch(token.type){
+				case LazyNode.OBJECT: LazyObject obj=new LazyObject(token);
+									  obj.parent=this;
+									  return obj;
+				case LazyNode.ARRAY: LazyArray arr= new LazyArray(token);
+									 arr.parent=this;
+									 return arr;
+				case LazyNode.VALUE_TRUE: return (Boolean)true;
+				case LazyNode.VALUE_FALSE: return (Boolean)false;
+				case LazyNode.VALUE_NULL: return LazyObject.NULL;
+				case LazyNode.VALUE_STRING: return token.getStringValue();
+				case LazyNode.VALUE_ESTRING: return token.getStringValue();
+				case LazyNode.VALUE_INTEGER: return (Long)token.getLongValue();
+				case LazyNode.VALUE_FLOAT: return (Double)token.getDoubleValue();
+			}
+		}
+		// Should never happen
+		return null;
+	}
+
 	public Object remove(String key) throws LazyException{
 		Object obj=opt(key); // TODO: should this be get instead of opt?
 		LazyNode token=getOptionalField(key);
@@ -135,64 +423,41 @@ public class LazyObject extends LazyElement{
 				while(pointer!=null){
 					if(pointer.next==token){
 						pointer.next=token.next;
+						if(root.lastChild==token){
+							root.lastChild=pointer;
+						}
 					}
 					pointer=pointer.next;
 				}
 			}
+			LazyFieldIndex index=root.doc.findIndex(root);
+			if(index!=null){
+				index.remove(token);
+				// A later field with the same name is now the one to find
+				for(pointer=token.next;pointer!=null;pointer=pointer.next){
+					if(keyMatch(key,pointer)){
+						root.doc.buildIndex(root);
+						break;
+					}
+				}
+			}
 			root.dirty=true;
+			root.doc.modified=true;
+			discard(token);
 		}
 		return obj;
 	}
 
-	protected String serializeElementToString(){
-		StringBuilder buf=new StringBuilder();
-		buf.append("{");
-		LazyNode pointer=root.child;
-		boolean first=true;
-		while(pointer!=null){
-			if(first){
-				first=false;
-			}else{
-				buf.append(",");
-			}
-			buf.append("\"");
-			buf.append(pointer.getStringValue());
-			buf.append("\":");
-			if(pointer.child.type==LazyNode.OBJECT){
-				buf.append(new LazyObject(pointer.child).toString());
-			}else if(pointer.child.type==LazyNode.ARRAY){
-				buf.append(new LazyArray(pointer.child).toString());
-			}else if(pointer.child.type==LazyNode.VALUE_STRING || pointer.child.type==LazyNode.VALUE_ESTRING){
-				buf.append("\"");
-				buf.append(pointer.child.getRawStringValue());
-				buf.append("\"");
-			}else if(pointer.child.type==LazyNode.VALUE_TRUE){
-				buf.append("true");
-			}else if(pointer.child.type==LazyNode.VALUE_FALSE){
-				buf.append("false");
-			}else if(pointer.child.type==LazyNode.VALUE_NULL){
-				buf.append("null");
-			}else{
-				buf.append(pointer.child.getStringValue());
-			}
-			pointer=pointer.next;
-		}
-		buf.append("}");
-		return buf.toString();
-	}
-
 	private void attachField(String key,LazyNode child) throws LazyException{
+		root.doc.modified=true;
 		// TODO: change to avoid this constant check
-		StringBuilder dirtyBuf=root.getDirtyBuf();
 		LazyNode token=getOptionalField(key);
 		if(token==null){
 			// new field
-			token=LazyNode.cField(dirtyBuf.length());
-			token.dirty=true;
-			token.dirtyBuf=dirtyBuf;
 			// TODO: we should be encoding the value
-			dirtyBuf.append(key);
-			token.endIndex=dirtyBuf.length();
+			token=LazyNode.cField(root.doc.append(key),root.doc);
+			token.dirty=true;
+			token.endIndex=root.doc.dirtyLength;
 			if(root.child==null){
 				root.child=token;
 				root.lastChild=token;
@@ -200,9 +465,17 @@ public class LazyObject extends LazyElement{
 				root.lastChild.next=token;
 				root.lastChild=token;
 			}
+			LazyFieldIndex index=root.doc.findIndex(root);
+			if(index!=null && !index.add(token)){
+				root.doc.buildIndex(root);
+			}
 		}
+		LazyNode replaced=token.child;
 		token.child=child;
 		token.lastChild=child;
+		if(replaced!=null){
+			discard(replaced);
+		}
 	}
 
 	public LazyObject put(String key,String value) throws LazyException{
@@ -247,9 +520,9 @@ public class LazyObject extends LazyElement{
 	public LazyObject put(String key,boolean value) throws LazyException{
 		LazyNode child=null;
 		if(value){
-			child=LazyNode.cValueTrue(-1);
+			child=LazyNode.cValueTrue(-1,root.doc);
 		}else{
-			child=LazyNode.cValueFalse(-1);
+			child=LazyNode.cValueFalse(-1,root.doc);
 		}
 		child.dirty=true;
 		attachField(key,child);
@@ -291,7 +564,7 @@ public class LazyObject extends LazyElement{
 
 	public LazyObject put(String key,Object value) throws LazyException{
 		if(value==NULL){
-			LazyNode child=LazyNode.cValueNull(-1);
+			LazyNode child=LazyNode.cValueNull(-1,root.doc);
 			child.dirty=true;
 			attachField(key,child);
 			return this;
@@ -338,6 +611,48 @@ public class LazyObject extends LazyElement{
 		return token.getStringValue();
 	}
 
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested string value
+	 * @throws LazyException if the value for the given key was not a string.
+	 */
+	public String getString(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getStringValue();
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key as a
+	 * view of the source characters, without copying them into a new
+	 * String. Values with escaped characters and values parsed from UTF-8
+	 * data are returned as a String.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested value
+	 * @throws LazyException if the given key did not exist
+	 */
+	public CharSequence getCharSequence(String key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getCharSequenceValue();
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key as a
+	 * view of the source characters, without copying them into a new
+	 * String. Values with escaped characters and values parsed from UTF-8
+	 * data are returned as a String.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested value
+	 * @throws LazyException if the given key did not exist
+	 */
+	public CharSequence getCharSequence(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getCharSequenceValue();
+	}
+
 	/**
 	 * Returns the string value stored in this object for the given key.
 	 * Returns null if there is no such key.
@@ -352,6 +667,20 @@ public class LazyObject extends LazyElement{
 		return token.getStringValue();
 	}
 
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 * Returns null if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested string value or null if there was no such key
+	 */
+	public String optString(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		return token.getStringValue();
+	}
+
 	/**
 	 * Returns the string value stored in this object for the given key.
 	 * Returns the default value if there is no such key.
@@ -367,6 +696,21 @@ public class LazyObject extends LazyElement{
 		return token.getStringValue();
 	}
 
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested string value or the default value if there was no such key
+	 */
+	public String optString(LazyKey key,String defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getStringValue();
+	}
+
 	/**
 	 * Returns the integer value stored in this object for the given key.
 	 *
@@ -379,6 +723,18 @@ public class LazyObject extends LazyElement{
 		return token.getIntValue();
 	}
 
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an integer value
+	 * @throws LazyException if the value for the given key was not an integer.
+	 */
+	public int getInt(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getIntValue();
+	}
+
 	/**
 	 * Returns the integer value stored in this object for the given key.
 	 * Returns 0 if there is no such key.
@@ -393,6 +749,20 @@ public class LazyObject extends LazyElement{
 		return token.getIntValue();
 	}
 
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 * Returns 0 if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested integer value or 0 if there was no such key
+	 */
+	public int optInt(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return 0;
+		if(token.type==LazyNode.VALUE_NULL)return 0;
+		return token.getIntValue();
+	}
+
 	/**
 	 * Returns the integer value stored in this object for the given key.
 	 * Returns the default value if there is no such key.
@@ -409,17 +779,44 @@ public class LazyObject extends LazyElement{
 	}
 
 	/**
-	 * Returns the long value stored in this object for the given key.
+	 * Returns the integer value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
 	 *
-	 * @param key the name of the field on this object
-	 * @return a boolean value
-	 * @throws LazyException if the value for the given key was not a long.
-	 */
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested integer value or the default value if there was no such key
+	 */
+	public int optInt(LazyKey key,int defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getIntValue();
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a long.
+	 */
 	public long getLong(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
 		return token.getLongValue();
 	}
 
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a long.
+	 */
+	public long getLong(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getLongValue();
+	}
+
 	/**
 	 * Returns the long value stored in this object for the given key.
 	 * Returns 0 if there is no such key.
@@ -434,6 +831,20 @@ public class LazyObject extends LazyElement{
 		return token.getLongValue();
 	}
 
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 * Returns 0 if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested long value or 0 if there was no such key
+	 */
+	public long optLong(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return 0l;
+		if(token.type==LazyNode.VALUE_NULL)return 0l;
+		return token.getLongValue();
+	}
+
 	/**
 	 * Returns the long value stored in this object for the given key.
 	 * Returns the default value if there is no such key.
@@ -449,6 +860,21 @@ public class LazyObject extends LazyElement{
 		return token.getLongValue();
 	}
 
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested long value or the default value if there was no such key
+	 */
+	public long optLong(LazyKey key,long defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getLongValue();
+	}
+
 	/**
 	 * Returns the double value stored in this object for the given key.
 	 *
@@ -461,6 +887,18 @@ public class LazyObject extends LazyElement{
 		return token.getDoubleValue();
 	}
 
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a double.
+	 */
+	public double getDouble(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getDoubleValue();
+	}
+
 	/**
 	 * Returns the double value stored in this object for the given key.
 	 * Returns 0.0 if there is no such key.
@@ -475,6 +913,20 @@ public class LazyObject extends LazyElement{
 		return token.getDoubleValue();
 	}
 
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 * Returns 0.0 if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested double value or 0.0 if there was no such key
+	 */
+	public double optDouble(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return 0.0;
+		if(token.type==LazyNode.VALUE_NULL)return 0.0;
+		return token.getDoubleValue();
+	}
+
 	/**
 	 * Returns the double value stored in this object for the given key.
 	 * Returns the default value if there is no such key.
@@ -490,6 +942,137 @@ public class LazyObject extends LazyElement{
 		return token.getDoubleValue();
 	}
 
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested long value or the default value if there was no such key
+	 */
+	public double optDouble(LazyKey key,double defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getDoubleValue();
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key
+	 * without any limit on its size.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested integer value
+	 * @throws LazyException if the value for the given key was not an integer.
+	 */
+	public BigInteger getBigInteger(String key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key
+	 * without any limit on its size.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested integer value
+	 * @throws LazyException if the value for the given key was not an integer.
+	 */
+	public BigInteger getBigInteger(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key
+	 * without any limit on its size.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested integer value or the default value if there was no such key
+	 */
+	public BigInteger optBigInteger(String key,BigInteger defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key
+	 * without any limit on its size.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested integer value or the default value if there was no such key
+	 */
+	public BigInteger optBigInteger(LazyKey key,BigInteger defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the exact decimal value stored in this object for the given
+	 * key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested decimal value
+	 * @throws LazyException if the value for the given key was not a number.
+	 */
+	public BigDecimal getBigDecimal(String key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the exact decimal value stored in this object for the given
+	 * key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested decimal value
+	 * @throws LazyException if the value for the given key was not a number.
+	 */
+	public BigDecimal getBigDecimal(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the exact decimal value stored in this object for the given
+	 * key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested decimal value or the default value if there was no such key
+	 */
+	public BigDecimal optBigDecimal(String key,BigDecimal defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the exact decimal value stored in this object for the given
+	 * key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested decimal value or the default value if there was no such key
+	 */
+	public BigDecimal optBigDecimal(LazyKey key,BigDecimal defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigDecimalValue();
+	}
+
 	/**
 	 * Returns true if the value stored in this object for the given key is null.
 	 *
@@ -504,6 +1087,20 @@ public class LazyObject extends LazyElement{
 		return false;
 	}
 
+	/**
+	 * Returns true if the value stored in this object for the given key is null.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return true if the value is null, false otherwise
+	 * @throws LazyException if no value was set for the given key.
+	 */
+	public boolean isNull(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return true;
+		if(token.type==LazyNode.VALUE_NULL)return true;
+		return false;
+	}
+
 	/**
 	 * Returns the boolean value stored in this object for the given key.
 	 *
@@ -524,6 +1121,26 @@ public class LazyObject extends LazyElement{
 		throw new LazyException("Requested value is not a boolean",token);
 	}
 
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a boolean.
+	 */
+	public boolean getBoolean(LazyKey key){
+		LazyNode token=getFieldToken(key);
+		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
+			String str=token.getStringValue().toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+			throw new LazyException("Requested value is not a boolean",token);
+		}
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		if(token.type==LazyNode.VALUE_FALSE)return false;
+		throw new LazyException("Requested value is not a boolean",token);
+	}
+
 	/**
 	 * Returns the boolean value stored in this object for the given key.
 	 * Returns false if there is no such key.
@@ -546,6 +1163,28 @@ public class LazyObject extends LazyElement{
 		return false;
 	}
 
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns false if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested boolean value or false if there was no such key
+	 */
+	public boolean optBoolean(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return false;
+		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
+			String str=token.getStringValue().toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+			throw new LazyException("Requested value is not a boolean",token);
+		}
+		// if(token.type==LazyNode.VALUE_NULL)return false;
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		// if(token.type==LazyNode.VALUE_FALSE)return false;
+		return false;
+	}
+
 	/**
 	 * Returns the boolean value stored in this object for the given key.
 	 * Returns the default value if there is no such key.
@@ -568,6 +1207,28 @@ public class LazyObject extends LazyElement{
 		return false;
 	}
 
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested boolean value or the default value if there was no such key
+	 */
+	public boolean optBoolean(LazyKey key,boolean defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
+			String str=token.getStringValue().toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+			throw new LazyException("Requested value is not a boolean",token);
+		}
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		return false;
+	}
+
 	/**
 	 * Returns the JSON object stored in this object for the given key.
 	 *
@@ -583,6 +1244,21 @@ public class LazyObject extends LazyElement{
 		return obj;
 	}
 
+	/**
+	 * Returns the JSON object stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an object.
+	 */
+	public LazyObject getJSONObject(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		LazyObject obj=new LazyObject(token);
+		obj.parent=this;
+		return obj;
+	}
+
 	/**
 	 * Returns the JSON object stored in this object for the given key on null if the key doesn't exist.
 	 *
@@ -600,6 +1276,23 @@ public class LazyObject extends LazyElement{
 		return obj;
 	}
 
+	/**
+	 * Returns the JSON object stored in this object for the given key on null if the key doesn't exist.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @throws LazyException if the value for the given key was not an object.
+	 * @return an object value or null if there was no such key
+	 */
+	public LazyObject optJSONObject(LazyKey key) throws LazyException{
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		if(token.type!=LazyNode.OBJECT)return null;
+		LazyObject obj=new LazyObject(token);
+		obj.parent=this;
+		return obj;
+	}
+
 	/**
 	 * Returns the JSON array stored in this object for the given key.
 	 *
@@ -615,6 +1308,21 @@ public class LazyObject extends LazyElement{
 		return arr;
 	}
 
+	/**
+	 * Returns the JSON array stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an array.
+	 */
+	public LazyArray getJSONArray(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		LazyArray arr=new LazyArray(token);
+		arr.parent=this;
+		return arr;
+	}
+
 	/**
 	 * Returns the JSON array stored in this object for the given key or null if the key doesn't exist.
 	 *
@@ -632,6 +1340,23 @@ public class LazyObject extends LazyElement{
 		return arr;
 	}
 
+	/**
+	 * Returns the JSON array stored in this object for the given key or null if the key doesn't exist.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an array value or null if the key doesn't exist
+	 * @throws LazyException if the value for the given key was not an array.
+	 */
+	public LazyArray optJSONArray(LazyKey key) throws LazyException{
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		if(token.type!=LazyNode.ARRAY)return null;
+		LazyArray arr=new LazyArray(token);
+		arr.parent=this;
+		return arr;
+	}
+
 	/**
 	 * Returns a string iterator with the fields of this object as values.
 	 *
@@ -655,42 +1380,22 @@ public class LazyObject extends LazyElement{
 		return set;
 	}
 
+	/**
+	 * Returns a cursor over the fields of this object. Unlike keys and
+	 * keySet, the cursor gives access to the value of each field directly,
+	 * so walking an entire object does not need a lookup for every key.
+	 *
+	 * @return a cursor positioned before the first field
+	 */
+	public LazyFieldCursor fieldCursor(){
+		return new LazyFieldCursor(this);
+	}
+
 	public static java.lang.String[] getNames(LazyObject obj){
 		Set<String> keys=obj.keySet();
 		return keys.toArray(new String[keys.size()]);
 	}
 
-	public int hashCode(){
-		int code=1;
-		for(String key:keySet()){
-			LazyType t1=getType(key);
-			switch(t1){
-				case STRING:code+=getString(key).hashCode();
-					break;
-				case INTEGER:
-						long l=getLong(key);
-						code+=(int)(l ^ (l >>> 32));
-					break;
-				case FLOAT:
-						double d=getDouble(key);
-						l=Double.doubleToLongBits(d);
-						code+=(int)(l ^ (l >>> 32));
-					break;
-				case BOOLEAN:
-						if(getBoolean(key)){
-							code+=1;
-						}
-					break;
-				case OBJECT:code+=37*getJSONObject(key).hashCode();
-					break;
-				case ARRAY:code+=37*getJSONArray(key).hashCode();
-					break;
-			}
-		}
-		return code;
-	}
-
-
 	/**
 	 * Utility method to evaluate wether a given string matches the value
 	 * of a field.
@@ -699,10 +1404,28 @@ public class LazyObject extends LazyElement{
 	 * @param token the field token
 	 * @return true if the key matches, false otherwise
 	 */
-	private boolean keyMatch(String key,LazyNode token){
+	protected static boolean keyMatch(String key,LazyNode token){
 		if(token.type==LazyNode.EFIELD){
 			String field=token.getStringValue();
 			return field.equals(key);
+		}else if(!token.dirty && token.doc.bbuf!=null){
+			// A UTF-8 field is never shorter in bytes than the key is in
+			// characters, and only equal in length if it is plain ascii
+			int length=key.length();
+			int size=token.endIndex-token.startIndex;
+			if(size<length){
+				return false;
+			}
+			for(int i=0;i<length;i++){
+				char c=key.charAt(i);
+				if(c>0x7F){
+					return key.equals(token.getStringValue());
+				}
+				if(c!=token.doc.bbuf.get(token.startIndex+i)){
+					return false;
+				}
+			}
+			return size==length;
 		}else{
 			// Quickly check the length first
 			int length=key.length();
@@ -710,19 +1433,11 @@ public class LazyObject extends LazyElement{
 				return false;
 			}
 			// Now go through the field character for character to compare
-			if(token.dirty){
-				for(int i=0;i<length;i++){
-					char c=key.charAt(i);
-					if(c!=token.dirtyBuf.charAt(token.startIndex+i)){
-						return false;
-					}
-				}
-			}else{
-				for(int i=0;i<length;i++){
-					char c=key.charAt(i);
-					if(c!=token.cbuf[token.startIndex+i]){
-						return false;
-					}
+			char[] cbuf=token.getChars();
+			for(int i=0;i<length;i++){
+				char c=key.charAt(i);
+				if(c!=cbuf[token.startIndex+i]){
+					return false;
 				}
 			}
 			return true;
@@ -736,14 +1451,17 @@ public class LazyObject extends LazyElement{
 	 * @return true if the key exists, false otherwise
 	 */
 	public boolean has(String key){
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return true;
-			}
-			child=child.next;
-		}
-		return false;
+		return getOptionalField(key)!=null;
+	}
+
+	/**
+	 * Returns true if the given key matches a field on this object.
+	 *
+	 * @param key the prepared name of the field to look for
+	 * @return true if the key exists, false otherwise
+	 */
+	public boolean has(LazyKey key){
+		return getOptionalField(key)!=null;
 	}
 
 	/**
@@ -757,14 +1475,29 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the field does not exist
 	 */
 	private LazyNode getFieldToken(String key) throws LazyException{
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return child.child;
-			}
-			child=child.next;
+		LazyNode field=getOptionalField(key);
+		if(field==null){
+			throw new LazyException("Unknown field '"+key+"'");
 		}
-		throw new LazyException("Unknown field '"+key+"'");
+		return field.child;
+	}
+
+	/**
+	 * Fields for an object are attached as children on the token representing
+	 * the object itself. This method finds the correct field for a given key
+	 * and returns its first child - the child being the value for that field.
+	 * This is a utility method used internally to extract field values.
+	 *
+	 * @param key the prepared name of the desired field
+	 * @return the first child of the matching field token if one exists
+	 * @throws LazyException if the field does not exist
+	 */
+	private LazyNode getFieldToken(LazyKey key) throws LazyException{
+		LazyNode field=getOptionalField(key);
+		if(field==null){
+			throw new LazyException("Unknown field '"+key+"'");
+		}
+		return field.child;
 	}
 
 	/**
@@ -777,12 +1510,53 @@ public class LazyObject extends LazyElement{
 	 * @return the first child of the matching field token if one exists, null otherwise
 	 */
 	private LazyNode getOptionalFieldToken(String key){
+		LazyNode field=getOptionalField(key);
+		if(field==null){
+			return null;
+		}
+		return field.child;
+	}
+
+	/**
+	 * Fields for an object are attached as children on the token representing
+	 * the object itself. This method finds the correct field for a given key
+	 * and returns its first child - the child being the value for that field.
+	 * This is a utility method used internally to extract field values.
+	 *
+	 * @param key the prepared name of the desired field
+	 * @return the first child of the matching field token if one exists, null otherwise
+	 */
+	private LazyNode getOptionalFieldToken(LazyKey key){
+		LazyNode field=getOptionalField(key);
+		if(field==null){
+			return null;
+		}
+		return field.child;
+	}
+
+	/**
+	 * Fields for an object are attached as children on the token representing
+	 * the object itself. This method finds the correct field for a given key.
+	 * This is a utility method used internally to extract field values.
+	 *
+	 * The first LazyFieldIndex.THRESHOLD fields are simply scanned. For
+	 * wider objects the rest is looked up in a hash index, which is built the
+	 * first time and kept by the document for all following lookups.
+	 *
+	 * @param key the name of the desired field
+	 * @return the first child of the matching field token if one exists, null otherwise
+	 */
+	private LazyNode getOptionalField(String key){
 		LazyNode child=root.child;
+		int count=0;
 		while(child!=null){
 			if(keyMatch(key,child)){
-				return child.child;
+				return child;
 			}
 			child=child.next;
+			if(++count==LazyFieldIndex.THRESHOLD && child!=null){
+				return root.doc.getIndex(root).get(key);
+			}
 		}
 		return null;
 	}
@@ -792,16 +1566,27 @@ public class LazyObject extends LazyElement{
 	 * the object itself. This method finds the correct field for a given key.
 	 * This is a utility method used internally to extract field values.
 	 *
-	 * @param key the name of the desired field
+	 * Like lookups by name, the first LazyFieldIndex.THRESHOLD fields are
+	 * scanned in order and the rest is found through the hash index of the
+	 * object. The index checks the position the key last found its field at
+	 * before probing, so documents of the same shape are read with a single
+	 * comparison per field, and a different shape only costs a probe.
+	 *
+	 * @param key the prepared name of the desired field
 	 * @return the first child of the matching field token if one exists, null otherwise
 	 */
-	private LazyNode getOptionalField(String key){
+	private LazyNode getOptionalField(LazyKey key){
 		LazyNode child=root.child;
+		int count=0;
 		while(child!=null){
-			if(keyMatch(key,child)){
+			if(key.matches(child)){
+				key.ordinal=count;
 				return child;
 			}
 			child=child.next;
+			if(++count==LazyFieldIndex.THRESHOLD && child!=null){
+				return root.doc.getIndex(root).get(key);
+			}
 		}
 		return null;
 	}
@@ -0,0 +1,212 @@
+package me.doubledutch.lazyjson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tokenizes a large top level array by splitting it into parts that are
+ * tokenized in parallel on a fork join pool and then linked back together.
+ *
+ * Finding the commas that separate the values of the top level array
+ * requires knowing whether each character is inside a string, which in turn
+ * depends on everything before it. Each chunk is therefore scanned once
+ * while speculating on both possible string states at its start. A short
+ * sequential pass over the chunk summaries then resolves the real state and
+ * picks one top level comma per chunk to split on.
+ *
+ * The speculation is only used to pick split points. Every part is still
+ * fully tokenized and validated by LazyParser, so if anything does not line
+ * up we give up and return null, leaving the caller to run the sequential
+ * tokenizer.
+ */
+final class LazyParallelTokenizer{
+	// Sources smaller than this are not worth splitting
+	protected static final int MIN_PARALLEL_SIZE=1<<20;
+	protected static final int MIN_CHUNK_SIZE=1<<16;
+	// Number of chunks to create per thread in the pool, allowing the pool
+	// to balance the work when the values vary in size
+	private static final int CHUNKS_PER_THREAD=4;
+
+	private LazyParallelTokenizer(){}
+
+	/**
+	 * Tokenizes the given range of characters, which must contain a single
+	 * array, using the given pool.
+	 *
+	 * @param doc the document holding the source
+	 * @param offset the index of the first character of the source
+	 * @param length the index after the last character of the source
+	 * @param pool the pool to run the tokenizer tasks on
+	 * @param minChunkSize the minimum number of characters in a chunk
+	 * @return the root array token or null if the source could not be tokenized in parallel
+	 */
+	protected static LazyNode tokenize(LazyDocument doc,int offset,int length,ForkJoinPool pool,int minChunkSize){
+		char[] cbuf=doc.cbuf;
+		int start=offset;
+		while(start<length && isWhiteSpace(cbuf[start])){
+			start++;
+		}
+		int end=length-1;
+		while(end>start && isWhiteSpace(cbuf[end])){
+			end--;
+		}
+		if(end<=start || cbuf[start]!='[' || cbuf[end]!=']'){
+			return null;
+		}
+		int size=end-start-1;
+		int count=Math.min(size/minChunkSize,pool.getParallelism()*CHUNKS_PER_THREAD);
+		if(count<2){
+			return null;
+		}
+
+		// Scan all chunks for split candidates
+		List<ScanTask> scans=new ArrayList<ScanTask>(count);
+		int chunkStart=start+1;
+		for(int i=1;i<=count;i++){
+			int chunkEnd=start+1+(int)((long)size*i/count);
+			// Never start a chunk right after a backslash, that way we know the
+			// first character of every chunk is not escaped
+			while(chunkEnd<end && cbuf[chunkEnd-1]=='\\'){
+				chunkEnd++;
+			}
+			if(chunkEnd>chunkStart){
+				scans.add(new ScanTask(cbuf,chunkStart,chunkEnd));
+			}
+			chunkStart=chunkEnd;
+		}
+		for(ScanTask task:scans){
+			pool.execute(task);
+		}
+		for(ScanTask task:scans){
+			task.join();
+		}
+
+		// Resolve the real string state and depth at the start of each chunk
+		// and pick the splits
+		List<Integer> splits=new ArrayList<Integer>(count);
+		int depth=1;
+		int state=0;
+		for(ScanTask task:scans){
+			if(task.comma[state]>-1 && depth+task.commaDepth[state]==1){
+				splits.add(task.comma[state]);
+			}
+			depth+=task.depth[state];
+			state^=task.quotes;
+		}
+		if(depth!=1 || state!=0 || splits.isEmpty()){
+			return null;
+		}
+
+		// Tokenize the values between the splits
+		List<TokenizeTask> parts=new ArrayList<TokenizeTask>(splits.size()+1);
+		int partStart=start+1;
+		for(int split:splits){
+			parts.add(new TokenizeTask(doc,partStart,split));
+			partStart=split+1;
+		}
+		parts.add(new TokenizeTask(doc,partStart,end));
+		for(TokenizeTask task:parts){
+			pool.execute(task);
+		}
+		LazyNode root=LazyNode.cArray(start,doc);
+		root.endIndex=end+1;
+		for(TokenizeTask task:parts){
+			LazyNode list=task.join();
+			if(list==null){
+				return null;
+			}
+			if(root.child==null){
+				root.child=list.child;
+			}else{
+				root.lastChild.next=list.child;
+			}
+			root.lastChild=list.lastChild;
+		}
+		return root;
+	}
+
+	private static boolean isWhiteSpace(char c){
+		return c==' ' || c=='\n' || c=='\r' || c=='\t';
+	}
+
+	// Scans a chunk once, collecting statistics for both the case where the
+	// chunk starts outside a string (index 0) and inside a string (index 1).
+	// Since the same quote characters toggle the string state in both cases,
+	// we only need to track the quote parity since the start of the chunk.
+	private static final class ScanTask extends RecursiveAction{
+		private static final long serialVersionUID=1L;
+
+		private final char[] cbuf;
+		private final int start;
+		private final int end;
+
+		// Change in depth over the whole chunk
+		private final int[] depth=new int[2];
+		// The first comma at the lowest depth in the chunk and that depth
+		private final int[] comma={-1,-1};
+		private final int[] commaDepth=new int[2];
+		// 1 if the chunk contains an odd number of unescaped quotes
+		private int quotes=0;
+
+		private ScanTask(char[] cbuf,int start,int end){
+			this.cbuf=cbuf;
+			this.start=start;
+			this.end=end;
+		}
+
+		protected void compute(){
+			int parity=0;
+			for(int i=start;i<end;i++){
+				char c=cbuf[i];
+				switch(c){
+					case '"':
+						parity^=1;
+						break;
+					case '\\':
+						i++;
+						break;
+					case '{':
+					case '[':
+						depth[parity]++;
+						break;
+					case '}':
+					case ']':
+						depth[parity]--;
+						break;
+					case ',':
+						if(comma[parity]==-1 || depth[parity]<commaDepth[parity]){
+							comma[parity]=i;
+							commaDepth[parity]=depth[parity];
+						}
+						break;
+				}
+			}
+			quotes=parity;
+		}
+	}
+
+	private static final class TokenizeTask extends RecursiveTask<LazyNode>{
+		private static final long serialVersionUID=1L;
+
+		private final LazyDocument doc;
+		private final int start;
+		private final int end;
+
+		private TokenizeTask(LazyDocument doc,int start,int end){
+			this.doc=doc;
+			this.start=start;
+			this.end=end;
+		}
+
+		protected LazyNode compute(){
+			try{
+				return new LazyParser(doc,start,end-start).tokenizeValues(LazyNode.ARRAY);
+			}catch(RuntimeException e){
+				return null;
+			}
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package me.doubledutch.lazyjson;
 
 import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
 
 public final class LazyParser{
 	private final char CH_SPACE=' ';
@@ -33,73 +37,214 @@ public final class LazyParser{
 	private final char CH_BEGIN_BRACKET='[';
 	private final char CH_END_BRACKET=']';
 
-	// Read the comments on push before changing these!
-	private final int STACK_INCREASE=31;
-	private int STACK_SIZE=32;
+
+	// Words used to scan UTF-8 data eight bytes at a time
+	private static final long SPACES=0x2020202020202020L;
+	private static final long QUOTES=0x2222222222222222L;
+	private static final long BACKSLASHES=0x5C5C5C5C5C5C5C5CL;
+	private static final long LOW_BITS=0x7F7F7F7F7F7F7F7FL;
 
 	protected LazyNode root;
-	protected final char[] cbuf;
-	protected final int length;
+	protected char[] cbuf;
+	// When parsing from UTF-8 data, bbuf holds the source and cbuf is null.
+	// All structural characters in JSON are plain ascii and every byte of a
+	// multi-byte UTF-8 sequence has its high bit set, so the source can be
+	// tokenized byte by byte without decoding it first.
+	protected ByteBuffer bbuf;
+	// The index after the last character of the source
+	protected int length;
+	// Shared by all tokens created by this parser
+	protected LazyDocument doc;
+	// Byte order used by bbuf, which decides how a word read with getLong
+	// maps to the bytes in the buffer
+	private boolean bigEndian=true;
 	private int n=0;
+	// Objects and arrays nested deeper than this below the root are not
+	// tokenized up front, see LazyEmitter.deferred
+	protected int expandDepth=Integer.MAX_VALUE;
+	// Decode the value of each number as soon as it has been consumed, while
+	// its digits are still in the cache, see LazyNode.decodeNumber
+	protected boolean decodeNumbers=false;
+	// Limits the fields tokenized in objects, see LazyProjection
+	private LazyProjection projection=null;
+
+	// The emitter receiving the tokens
+	private LazyEmitter out;
+	// Types of the open objects, arrays and fields, innermost last. The
+	// tokenizer keeps these itself so every emitter gets the same checks.
+	private byte[] open=new byte[32];
+	private int top=0;
+	// Number of objects and arrays currently open
+	private int depth=0;
+	// State of the tokenizer between tokens, see consumeTokens
+	private boolean expectValue=false;
+	private boolean firstValue=true;
 
 	protected LazyParser(final String source){
 		length=source.length();
 		cbuf=new char[length];
 		source.getChars(0,length,cbuf,0);
+		bbuf=null;
+		doc=new LazyDocument(cbuf);
+	}
+
+	// The array is used as is without copying. Tokens will use absolute
+	// indexes into the array.
+	protected LazyParser(final char[] source,final int offset,final int length){
+		cbuf=source;
+		bbuf=null;
+		n=offset;
+		this.length=offset+length;
+		doc=new LazyDocument(cbuf);
 	}
 
-	// The parser uses a crude stack while parsing that maintains a reference
-	// to the top element on the stack and automatically establishes a parent
-	// child relation ship when elements are pushed onto the stack.
-	private LazyNode[] stack=new LazyNode[STACK_SIZE];
-	private LazyNode stackTop=null;
-	private int stackPointer=1;
+	// Tokenize the characters between the position and the limit of the
+	// buffer. Buffers backed by an accessible array are used as is without
+	// copying, and tokens will use absolute indexes into that array. Read
+	// only buffers and buffers wrapping other sequences are copied first.
+	protected LazyParser(final CharBuffer source){
+		if(source.hasArray()){
+			cbuf=source.array();
+			n=source.arrayOffset()+source.position();
+			length=source.arrayOffset()+source.limit();
+		}else{
+			length=source.remaining();
+			cbuf=new char[length];
+			source.duplicate().get(cbuf);
+		}
+		bbuf=null;
+		doc=new LazyDocument(cbuf);
+	}
+
+	// Sequences such as StringBuilder do not give access to their array, so
+	// the characters are copied once, straight into the buffer we tokenize
+	protected LazyParser(final CharSequence source){
+		length=source.length();
+		cbuf=new char[length];
+		if(source instanceof StringBuilder){
+			((StringBuilder)source).getChars(0,length,cbuf,0);
+		}else{
+			for(int i=0;i<length;i++){
+				cbuf[i]=source.charAt(i);
+			}
+		}
+		bbuf=null;
+		doc=new LazyDocument(cbuf);
+	}
+
+	// Tokenize a range of the source of an existing document, such as the
+	// contents of a deferred object or array. The tokens share the document
+	// with the rest of the tree.
+	protected LazyParser(final LazyDocument source,final int offset,final int length){
+		cbuf=source.cbuf;
+		bbuf=source.bbuf;
+		n=offset;
+		this.length=offset+length;
+		if(bbuf!=null){
+			bigEndian=bbuf.order()==ByteOrder.BIG_ENDIAN;
+		}
+		doc=source;
+	}
+
+	// The buffer is used as is without copying. Tokens will use absolute
+	// indexes into the buffer, covering the range from its current position
+	// to its limit.
+	protected LazyParser(final ByteBuffer source){
+		bbuf=source;
+		cbuf=null;
+		n=source.position();
+		length=source.limit();
+		bigEndian=source.order()==ByteOrder.BIG_ENDIAN;
+		doc=new LazyDocument(bbuf);
+	}
+
+	// Same as above, but for the given range of the buffer instead of the
+	// range between its position and limit
+	protected LazyParser(final ByteBuffer source,final int offset,final int length){
+		bbuf=source;
+		cbuf=null;
+		n=offset;
+		this.length=offset+length;
+		bigEndian=source.order()==ByteOrder.BIG_ENDIAN;
+		doc=new LazyDocument(bbuf);
+	}
 
-	// Push a token onto the stack and attach it to the previous top as a child
-	private void push(final LazyNode token){
-		stackTop.addChild(token);
-		// The stack allocation strategy here is to increase it in increments
-		// of a power of two. This lets us check when all low bits are set and
-		// its time to increase the stack again.
-		// This lets us do a compare between a constant and a variable instead
-		// of between two variables.
-		if((stackPointer & STACK_INCREASE)==STACK_INCREASE){
-			LazyNode[] newStack=new LazyNode[STACK_SIZE+STACK_INCREASE+1];
-			System.arraycopy(stack,0,newStack,0,STACK_SIZE);
-			STACK_SIZE=STACK_SIZE+STACK_INCREASE+1;
-			stack=newStack;
+	// Prepare the parser to tokenize a new source, keeping the stack that was
+	// allocated for the previous one. The array is used as is, just like the
+	// constructor above.
+	protected void reset(final char[] source,final int offset,final int length){
+		if(source!=cbuf){
+			doc=new LazyDocument(source);
 		}
-		stack[stackPointer++]=token;
-		stackTop=token;
+		cbuf=source;
+		bbuf=null;
+		n=offset;
+		this.length=offset+length;
+		root=null;
+		out=null;
+		top=0;
+		depth=0;
+		expectValue=false;
+		firstValue=true;
 	}
 
-	// Pop a token off the stack and reset the stackTop pointer
-	private LazyNode pop(){
-		LazyNode value=stackTop;
-		stackPointer--;
-		if(stackPointer>0){
-			stackTop=stack[stackPointer-1];
+	// Same as above, but for the given range of UTF-8 data
+	protected void reset(final ByteBuffer source,final int offset,final int length){
+		if(source!=bbuf){
+			doc=new LazyDocument(source);
 		}
-		return value;
+		cbuf=null;
+		bbuf=source;
+		n=offset;
+		this.length=offset+length;
+		bigEndian=source.order()==ByteOrder.BIG_ENDIAN;
+		root=null;
+		out=null;
+		top=0;
+		depth=0;
+		expectValue=false;
+		firstValue=true;
 	}
 
-	// Pop a token off the stack and reset the stackTop pointer without returning the value
-	private void drop(){
-		stackPointer--;
-		stackTop=stack[stackPointer-1];
+	// Limit the fields tokenized in objects to the ones in the given
+	// projection, see LazyProjection
+	protected void setProjection(final LazyProjection projection){
+		this.projection=projection;
 	}
 
-	private int size(){
-		return stackPointer-1;
+	// Push the type of an object, array or field that was opened
+	private void push(final byte type){
+		if(top==open.length){
+			open=Arrays.copyOf(open,top*2);
+		}
+		open[top++]=type;
+	}
+
+	// The character at the given index of the source. Only ascii characters
+	// matter to the structure of JSON data, so bytes are simply widened.
+	private final char at(final int i){
+		if(cbuf!=null){
+			return cbuf[i];
+		}
+		return (char)(bbuf.get(i)&0xFF);
 	}
 
 	// Utility method to consume sections of whitespace
 	private final void consumeWhiteSpace(){
-		char c=cbuf[n];
-		while(c==CH_SPACE|| c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN){
-			n++;
-			c=cbuf[n];
+		if(bbuf!=null){
+			consumeWhiteSpaceBytes();
+			return;
+		}
+		// Work on local copies so the loop does not have to store n and
+		// reload cbuf on every iteration
+		final char[] buf=cbuf;
+		int i=n;
+		char c=buf[i];
+		while(c<=CH_SPACE && (c==CH_SPACE|| c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN)){
+			i++;
+			c=buf[i];
 		}
+		n=i;
 	}
 
 	// Attempt to advance and consume any whitespace
@@ -111,25 +256,147 @@ public final class LazyParser{
 		n--;
 	}
 
-	// Consume all characters in a string and correctly mark the stackTop
-	// element if an escape character is found
+	// Consume all characters in a string, leaving n at the closing quote.
+	// Returns true if an escape character was found.
 	private final boolean consumeString() throws LazyException{
+		if(bbuf!=null){
+			return consumeStringBytes();
+		}
+		boolean escaped=false;
+		final char[] buf=cbuf;
+		int i=n+1;
+		for(;;){
+			// The inner loop only looks for the two characters that can end
+			// a run of ordinary characters
+			char c=buf[i];
+			while(c!=CH_QUOTE && c!=CH_BACKSLASH){
+				i++;
+				c=buf[i];
+			}
+			if(c==CH_QUOTE){
+				n=i;
+				return escaped;
+			}
+			i++;
+			c=buf[i];
+			if(!(c==CH_QUOTE || c==CH_BACKSLASH || c==CH_SLASH || c==CH_b || c==CH_f || c==CH_n || c==CH_r || c==CH_t || c==CH_u)){
+				n=i;
+				throw new LazyException("Invalid escape code",n);
+			}
+			escaped=true;
+			i++;
+		}
+	}
+
+	// UTF-8 versions of the two methods above. Runs of indentation and of
+	// ordinary characters in strings are skipped eight bytes at a time.
+	private final void consumeWhiteSpaceBytes(){
+		while(n+8<=length && bbuf.getLong(n)==SPACES){
+			n+=8;
+		}
+		// Stop at the end of the data, which for LazyFeed is only the data
+		// that has arrived so far
+		while(n<length){
+			byte c=bbuf.get(n);
+			if(!(c==CH_SPACE|| c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN)){
+				break;
+			}
+			n++;
+		}
+	}
+
+	private final boolean consumeStringBytes() throws LazyException{
 		boolean escaped=false;
 		n++;
-		char c=cbuf[n];
-		while(c!=CH_QUOTE){
+		for(;;){
+			// Skip eight bytes at a time until a word contains a quote or a
+			// backslash, then continue from the first one of those
+			while(n+8<=length){
+				long word=bbuf.getLong(n);
+				long found=findBytes(word,QUOTES)|findBytes(word,BACKSLASHES);
+				if(found!=0){
+					n+=bigEndian?Long.numberOfLeadingZeros(found)>>>3:Long.numberOfTrailingZeros(found)>>>3;
+					break;
+				}
+				n+=8;
+			}
+			byte c=bbuf.get(n);
+			if(c==CH_QUOTE){
+				return escaped;
+			}
 			if(c==CH_BACKSLASH){
 				n++;
-				c=cbuf[n];
+				c=bbuf.get(n);
 				if(!(c==CH_QUOTE || c==CH_BACKSLASH || c==CH_SLASH || c==CH_b || c==CH_f || c==CH_n || c==CH_r || c==CH_t || c==CH_u)){
 					throw new LazyException("Invalid escape code",n);
 				}
 				escaped=true;
 			}
 			n++;
-			c=cbuf[n];
 		}
-		return escaped;
+	}
+
+	// Returns a word with the high bit set in every byte of the given word
+	// that is equal to the byte repeated in pattern. Unlike the shorter
+	// (x-0x01..)&~x trick, no carry ever crosses from one byte to the next,
+	// so there are no false positives and the first set bit can be trusted.
+	private static long findBytes(long word,long pattern){
+		long x=word^pattern;
+		return ~(((x&LOW_BITS)+LOW_BITS)|x|LOW_BITS);
+	}
+
+	// Move n from the start of an object or array to its last character. Only
+	// quotes and brackets are matched to find the end of it.
+	private void skipContainer() throws LazyException{
+		int level=1;
+		int i=n+1;
+		for(;i<length;i++){
+			char c=at(i);
+			if(c==CH_QUOTE){
+				for(i++;i<length && at(i)!=CH_QUOTE;i++){
+					if(at(i)==CH_BACKSLASH){
+						i++;
+					}
+				}
+			}else if(c==CH_BEGIN_CURLY || c==CH_BEGIN_BRACKET){
+				level++;
+			}else if(c==CH_END_CURLY || c==CH_END_BRACKET){
+				level--;
+				if(level==0){
+					break;
+				}
+			}
+		}
+		if(level>0){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		n=i;
+	}
+
+	// Skip the value following a field that is not part of the projection,
+	// leaving n at its last character. The value is only checked enough to
+	// find its end.
+	private void skipValue() throws LazyException{
+		n++;
+		char c=at(n);
+		if(c==CH_QUOTE){
+			consumeString();
+		}else if(c==CH_BEGIN_CURLY || c==CH_BEGIN_BRACKET){
+			skipContainer();
+		}else{
+			int start=n;
+			while(n<length){
+				c=at(n);
+				if(c==CH_COMMA || c==CH_END_CURLY || c==CH_END_BRACKET || c==CH_SPACE || c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN){
+					break;
+				}
+				n++;
+			}
+			if(n==start){
+				throw new LazyException("Syntax error",n);
+			}
+			n--;
+		}
 	}
 
 	// Consume all characters in a number and throw an exception if the format
@@ -139,7 +406,7 @@ public final class LazyParser{
 		if(c==CH_DASH){
 			// If the number started with a minus sign it must be followed by at least one digit
 			n++;
-			c=cbuf[n];
+			c=at(n);
 			if(c<CH_0 || c>CH_9){
 				throw new LazyException("Digit expected",n);
 			}
@@ -147,40 +414,40 @@ public final class LazyParser{
 		n++;
 		if(c==CH_0){
 			// First digit was zero - next may not be digit!
-			c=cbuf[n];
+			c=at(n);
 			if(c>=CH_0 && c<=CH_9){
 				throw new LazyException("Number may not start with leading zero",n);
 			}
 		}else{
-			c=cbuf[n];
+			c=at(n);
 		}
 		while(!(c<CH_0 || c>CH_9)){
 			n++;
-			c=cbuf[n];
+			c=at(n);
 		}
 		if(c==CH_DOT){
 			floatChar=true;
 			// The fractional part must contain one or more digits
 			n++;
-			c=cbuf[n];
+			c=at(n);
 			if(c<CH_0 || c>CH_9){
 				throw new LazyException("Digit expected",n);
 			}
 			n++;
-			c=cbuf[n];
+			c=at(n);
 			while(!(c<CH_0 || c>CH_9)){
 				n++;
-				c=cbuf[n];
+				c=at(n);
 			}
 		}
 		if(c==CH_e || c==CH_E){
 			floatChar=true;
 			n++;
-			c=cbuf[n];
+			c=at(n);
 			if(c==CH_DASH || c==CH_PLUS){
 				// We must have at least one digit following this
 				n++;
-				c=cbuf[n];
+				c=at(n);
 				if(c<CH_0 || c>CH_9){
 					throw new LazyException("Digit expected",n);
 				}
@@ -188,10 +455,10 @@ public final class LazyParser{
 				throw new LazyException("Exponential part expected",n);
 			}
 			n++;
-			c=cbuf[n];
+			c=at(n);
 			while(!(c<CH_0 || c>CH_9)){
 				n++;
-				c=cbuf[n];
+				c=at(n);
 			}
 		}
 		return floatChar;
@@ -203,236 +470,374 @@ public final class LazyParser{
 	//
 	// It works by iterating over all characters in the source and switching
 	// based on token type to consume full tokens. It maintains a simple
-	// stack to both validate the structure and to be able to provide the
-	// abstract syntax tree in the form of linked LazyNodes after parsing.
+	// stack to validate the structure, while the emitter builds the
+	// abstract syntax tree in the form of linked LazyNodes.
 	//
 	// The source is ugly - but it's fast.... very fast
-	// There is still plenty of room for optimization, such as when a value
-	// is put on the stack, consumed and then pulled of the stack immediately
-	// again. While it is consistent and readable, it needlesly maintains the
-	// stackTop pointer and increments and decrements the stackTopPointer int
 	protected void tokenize() throws LazyException{
+		LazyEmitter.NodeEmitter nodes=new LazyEmitter.NodeEmitter(doc,projection,decodeNumbers);
+		out=nodes;
+		begin();
+		consumeTokens();
+		if(top!=0){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		root=nodes.root;
+	}
+
+	// Consume the whitespace before the root object or array and the
+	// opening character of it
+	private void begin() throws LazyException{
 		consumeWhiteSpace();
-		// We are going to manually push the first token onto the stack so
-		// future push operations can avoid doing an if empty check when
-		// setting the parent child relationship
-		char c=cbuf[n];
+		char c=at(n);
 		if(c==CH_BEGIN_CURLY){
-			stack[stackPointer++]=LazyNode.cObject(n);
+			out.startObject(n);
+			push(LazyNode.OBJECT);
 		}else if(c==CH_BEGIN_BRACKET){
-			stack[stackPointer++]=LazyNode.cArray(n);
+			out.startArray(n);
+			push(LazyNode.ARRAY);
 		}else{
 			throw new LazyException("Can not parse raw JSON value, must be either object or array",0);
 		}
-		root=stack[1];
-		stackTop=root;
+		depth=1;
 		n++;
-		boolean expectValue=false;
-		boolean firstValue=true;
-		LazyNode token=null;
-		for(;n<length;n++){
-			c=cbuf[n];
+	}
+
+	// Opt-in parallel version of tokenize for large arrays, see
+	// LazyParallelTokenizer for the details. If the source can not be split,
+	// or if any part of it fails to parse, we simply run the sequential
+	// tokenizer instead so both the result and any exception thrown are
+	// exactly the same as for tokenize.
+	protected void tokenize(final ForkJoinPool pool) throws LazyException{
+		if(cbuf!=null && length-n>=LazyParallelTokenizer.MIN_PARALLEL_SIZE){
+			LazyNode node=null;
+			try{
+				node=LazyParallelTokenizer.tokenize(doc,n,length,pool,LazyParallelTokenizer.MIN_CHUNK_SIZE);
+			}catch(RuntimeException e){
+				// Fall through to the sequential tokenizer
+			}
+			if(node!=null){
+				root=node;
+				return;
+			}
+		}
+		tokenize();
+	}
+
+	// Tokenize the range as a list of comma separated array values or object
+	// fields, depending on the given type, without the surrounding brackets.
+	// The values are attached to a new token of that type which is returned,
+	// or null if the range is not a complete non empty list of values. Used
+	// by the parallel and window tokenizers for each of their parts.
+	protected LazyNode tokenizeValues(final byte type) throws LazyException{
+		LazyNode list=new LazyNode(type,n,doc);
+		LazyEmitter.NodeEmitter nodes=new LazyEmitter.NodeEmitter(doc,null,decodeNumbers);
+		nodes.open(list);
+		out=nodes;
+		push(type);
+		depth=1;
+		consumeTokens();
+		if(top!=1 || expectValue || n!=length || list.child==null){
+			return null;
+		}
+		return list;
+	}
+
+	// The main loop of the tokenizer. Consumes tokens from the current
+	// position until the end of the source, or until the emitter pauses it,
+	// validating the structure and handing each token to the emitter. The
+	// state between tokens is kept in fields so the loop can be resumed.
+	private void consumeTokens() throws LazyException{
+		final LazyEmitter out=this.out;
+		boolean expectValue=this.expectValue;
+		boolean firstValue=this.firstValue;
+		byte type;
+		int start;
+		char c;
+		for(;n<length && !out.paused;n++){
+			c=at(n);
 			switch(c){
 				case CH_BEGIN_CURLY:
-					push(LazyNode.cObject(n));
+					if(top==0){
+						throw new LazyException("Unexpected data after end of JSON data",n);
+					}
+					if(depth>expandDepth){
+						start=n;
+						skipContainer();
+						out.deferred(LazyNode.OBJECT,start,n+1);
+						endValue();
+						firstValue=false;
+					}else{
+						out.startObject(n);
+						push(LazyNode.OBJECT);
+						depth++;
+						firstValue=true;
+					}
 					expectValue=false;
-					firstValue=true;
 					break;
 				case CH_END_CURLY:
-					// The end of an object, pop off the last value and field if any
-					token=pop();
-					if(token==null){
-						throw new LazyException("Unexpected end of object character",n);
-					}else if(token.type!=LazyNode.OBJECT){
+					// The end of an object, pop off the field it was the value for if any
+					if(top==0 || open[top-1]!=LazyNode.OBJECT){
 						throw new LazyException("Unexpected end of object character",n);
 					}
-					token.endIndex=n+1;
-					// If this object was the value for a field, pop off that field too
-					if(stackTop!=null && (stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD)){
-						drop();
-					}
+					top--;
+					depth--;
+					out.endObject(n);
+					endValue();
 					// Was there a trailing comma?
 					if(expectValue){
 						throw new LazyException("Unexpected comma without another value",n-1);
 					}
 					firstValue=false;
 					break;
-			case CH_QUOTE:
-				expectValue=false;
-				firstValue=false;
-				if(stackTop.type==LazyNode.ARRAY){
-					token=LazyNode.cStringValue(n+1);
-					stackTop.addChild(token);
-					if(consumeString()){
-						token.type=LazyNode.VALUE_ESTRING;
+				case CH_QUOTE:
+					if(top==0){
+						throw new LazyException("Unexpected data after end of JSON data",n);
 					}
-					token.endIndex=n;
-				}else if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-					token=LazyNode.cStringValue(n+1);
-					stackTop.addChild(token);
-					if(consumeString()){
-						token.type=LazyNode.VALUE_ESTRING;
+					expectValue=false;
+					firstValue=false;
+					start=n+1;
+					if(open[top-1]==LazyNode.OBJECT){
+						type=consumeString()?LazyNode.EFIELD:LazyNode.FIELD;
+						int end=n;
+						n++;
+						consumeWhiteSpace();
+						if(at(n)==CH_COLON){
+							tryToConsumeWhiteSpace();
+						}else{
+							throw new LazyException("Unexpected character! Was expecting field separator ':'",n);
+						}
+						if(out.field(start,end,type==LazyNode.EFIELD)){
+							push(type);
+							expectValue=true;
+						}else{
+							// The emitter is not interested in the value
+							skipValue();
+						}
+					}else{
+						type=consumeString()?LazyNode.VALUE_ESTRING:LazyNode.VALUE_STRING;
+						out.value(type,start,n);
+						endValue();
 					}
-					token.endIndex=n;
-					drop();
-				}else if(stackTop.type==LazyNode.OBJECT){
-					push(LazyNode.cField(n+1));
-					if(consumeString()){
-						stackTop.type=LazyNode.EFIELD;
+					break;
+				case CH_COMMA:
+					// This must be the end of a value and the start of another
+					if(top==0){
+						throw new LazyException("Unexpected data after end of JSON data",n);
 					}
-					stackTop.endIndex=n;
-					n++;
-					consumeWhiteSpace();
-					c=cbuf[n];
-					if(c==CH_COLON){
-						tryToConsumeWhiteSpace();
-					}else{
-						throw new LazyException("Unexpected character! Was expecting field separator ':'",n);
+					if(expectValue){
+						// Missing value after last comma
+						throw new LazyException("Unexpected comma",n);
 					}
 					expectValue=true;
-				}
-				break;
-			case CH_COMMA:
-				// This must be the end of a value and the start of another
-				if(expectValue){
-					// Missing value after last comma
-					throw new LazyException("Unexpected comma",n);
-				}
-				expectValue=true;
-				if(stackTop!=null && (stackTop.type==LazyNode.ARRAY) && (firstValue)){
-					throw new LazyException("Expected value before comma",n);
-				}
-				break;
-			case CH_BEGIN_BRACKET:
-				if(stackTop.type==LazyNode.OBJECT){
-					throw new LazyException("Missing field name for array",n);
-				}else if(stackTop.type==LazyNode.ARRAY){
-					if((!firstValue) && (!expectValue)){
-						throw new LazyException("Nested array without comma",n);
-					}
-				}
-				push(LazyNode.cArray(n));
-				expectValue=false;
-				firstValue=true;
-				break;
-			case CH_END_BRACKET:
-				token=pop();
-				if(token==null){
-						throw new LazyException("Unexpected end of array character",n);
-				}else if(token.type!=LazyNode.ARRAY){
-					if(token.endIndex==-1){
-						token.endIndex=n;
+					if(open[top-1]==LazyNode.ARRAY && firstValue){
+						throw new LazyException("Expected value before comma",n);
 					}
-					token=pop();
-					if(token==null || token.type!=LazyNode.ARRAY){
-						throw new LazyException("Unexpected end of array",n);
+					break;
+				case CH_BEGIN_BRACKET:
+					if(top==0){
+						throw new LazyException("Unexpected data after end of JSON data",n);
 					}
-				}
-				token.endIndex=n+1;
-				// If this array was the value for a field, pop off that field too
-				if(stackTop!=null && (stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD)){
-					drop();
-				}
-				// Was there a trailing comma?
-				if(expectValue){
-					throw new LazyException("Unexpected comma without another value",n-1);
-				}
-				firstValue=false;
-				break;
-			case CH_SPACE:
-			case CH_TAB:
-			case CH_LINEFEED:
-			case CH_CARRIAGE_RETURN:
-				// Ignore white space characters here
-				break;
-			default:
-				// This must be a new value
-				if(stackTop.type==LazyNode.ARRAY && !firstValue && !expectValue){
-					throw new LazyException("Unexpected value, missing comma?",n);
-				}
-				if(stackTop.type==LazyNode.OBJECT){
-					throw new LazyException("Unexpected value without field name",n);
-				}
-				firstValue=false;
-				expectValue=false;
-				if(c==CH_n){
-					// Must be null value
-					if(cbuf[++n]==CH_u && cbuf[++n]==CH_l && cbuf[++n]==CH_l){
-						token=LazyNode.cValueNull(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
+					if(open[top-1]==LazyNode.OBJECT){
+						throw new LazyException("Missing field name for array",n);
+					}else if(open[top-1]==LazyNode.ARRAY){
+						if((!firstValue) && (!expectValue)){
+							throw new LazyException("Nested array without comma",n);
 						}
-					}else{
-						throw new LazyException("Syntax error",n);
 					}
-				}else if(c==CH_t){
-					// Must be true value
-					if(cbuf[++n]==CH_r && cbuf[++n]==CH_u && cbuf[++n]==CH_e){
-						token=LazyNode.cValueTrue(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
+					if(depth>expandDepth){
+						start=n;
+						skipContainer();
+						out.deferred(LazyNode.ARRAY,start,n+1);
+						endValue();
+						firstValue=false;
 					}else{
-						throw new LazyException("Syntax error",n);
+						out.startArray(n);
+						push(LazyNode.ARRAY);
+						depth++;
+						firstValue=true;
+					}
+					expectValue=false;
+					break;
+				case CH_END_BRACKET:
+					if(top==0){
+						throw new LazyException("Unexpected end of array character",n);
+					}else if(open[top-1]!=LazyNode.ARRAY){
+						throw new LazyException("Unexpected end of array",n);
+					}
+					top--;
+					depth--;
+					out.endArray(n);
+					// If this array was the value for a field, pop off that field too
+					endValue();
+					// Was there a trailing comma?
+					if(expectValue){
+						throw new LazyException("Unexpected comma without another value",n-1);
+					}
+					firstValue=false;
+					break;
+				case CH_SPACE:
+				case CH_TAB:
+				case CH_LINEFEED:
+				case CH_CARRIAGE_RETURN:
+					// Ignore white space characters here
+					break;
+				default:
+					// This must be a new value
+					if(top==0){
+						throw new LazyException("Unexpected data after end of JSON data",n);
 					}
-				}else if(c==CH_f){
-					// Must be false value
-					if(cbuf[++n]==CH_a && cbuf[++n]==CH_l && cbuf[++n]==CH_s && cbuf[++n]==CH_e){
-						token=LazyNode.cValueFalse(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
+					type=open[top-1];
+					if(type==LazyNode.ARRAY && !firstValue && !expectValue){
+						throw new LazyException("Unexpected value, missing comma?",n);
+					}
+					if(type==LazyNode.OBJECT){
+						throw new LazyException("Unexpected value without field name",n);
+					}
+					firstValue=false;
+					expectValue=false;
+					start=n;
+					if(c==CH_n){
+						// Must be null value
+						if(at(++n)==CH_u && at(++n)==CH_l && at(++n)==CH_l){
+							out.value(LazyNode.VALUE_NULL,start,n+1);
+						}else{
+							throw new LazyException("Syntax error",n);
+						}
+					}else if(c==CH_t){
+						// Must be true value
+						if(at(++n)==CH_r && at(++n)==CH_u && at(++n)==CH_e){
+							out.value(LazyNode.VALUE_TRUE,start,n+1);
+						}else{
+							throw new LazyException("Syntax error",n);
 						}
+					}else if(c==CH_f){
+						// Must be false value
+						if(at(++n)==CH_a && at(++n)==CH_l && at(++n)==CH_s && at(++n)==CH_e){
+							out.value(LazyNode.VALUE_FALSE,start,n+1);
+						}else{
+							throw new LazyException("Syntax error",n);
+						}
+					}else if(c==CH_DASH || !(c<CH_0 || c>CH_9)){
+						// Must be a number
+						type=consumeNumber(c)?LazyNode.VALUE_FLOAT:LazyNode.VALUE_INTEGER;
+						out.value(type,start,n);
+						n--;
 					}else{
 						throw new LazyException("Syntax error",n);
 					}
-				}else if(c==CH_DASH || !(c<CH_0 || c>CH_9)){
-					// Must be a number
-					token=LazyNode.cNumberValue(n);
-					stackTop.addChild(token);
-					if(consumeNumber(c)){
-						token.type=LazyNode.VALUE_FLOAT;
-					}
-					token.endIndex=n;
-					n--;
-					if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-						// This was the end of the value for a field, pop that too
-						drop();
-					}
-				}else{
-					throw new LazyException("Syntax error",n);
-				}				
-			
-				break;
+					// If this was the value for a field, pop that too
+					endValue();
+					break;
 			}
 		}
-		if(size()!=0){
+		this.expectValue=expectValue;
+		this.firstValue=firstValue;
+	}
+
+	// Called after a complete value, which also completes the field it was
+	// the value for if any
+	private void endValue(){
+		if(top>0 && (open[top-1]==LazyNode.FIELD || open[top-1]==LazyNode.EFIELD)){
+			top--;
+		}
+	}
+
+	// Incremental version of tokenize for data that arrives in fragments, see
+	// LazyFeed. Each call tokenizes up to the given index, which must not
+	// fall inside a token, and the first call also starts the root. Returns
+	// the root once it has been closed, or null while it is still open.
+	protected LazyNode tokenizeTo(final int limit) throws LazyException{
+		length=limit;
+		if(out==null){
+			out=new LazyEmitter.NodeEmitter(doc,null,decodeNumbers);
+			begin();
+		}
+		consumeTokens();
+		if(top!=0){
+			return null;
+		}
+		return ((LazyEmitter.NodeEmitter)out).root;
+	}
+
+	// Continue tokenizing with tokenizeTo in a new buffer, which holds the
+	// data from the current position on starting at index 0. The tokens
+	// created so far keep the previous buffer in their document.
+	protected void moveTo(final ByteBuffer source){
+		bbuf=source;
+		n=0;
+		length=0;
+		bigEndian=source.order()==ByteOrder.BIG_ENDIAN;
+		doc=new LazyDocument(source);
+		((LazyEmitter.NodeEmitter)out).moveTo(doc);
+	}
+
+	// Index of the next character to tokenize
+	protected int getPosition(){
+		return n;
+	}
+
+	// Tape oriented version of tokenize, see LazyTape. Instead of linking
+	// LazyNode objects, tokens are appended to the parallel arrays of the
+	// tape in document order.
+	protected void tokenize(final LazyTape tape) throws LazyException{
+		out=new LazyEmitter.TapeEmitter(tape,doc);
+		begin();
+		consumeTokens();
+		if(top!=0){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+	}
+
+	// Pull oriented version of tokenize, see LazyReader. Consumes the source
+	// up to the end of the next token and records it in the reader instead of
+	// creating a LazyNode. Returns null once the root object or array has
+	// been closed and only whitespace remains.
+	protected LazyEvent pull(final LazyReader reader) throws LazyException{
+		if(out==null){
+			out=new LazyEmitter.ReaderEmitter(reader);
+			begin();
+			return reader.event;
+		}
+		if(((LazyEmitter.ReaderEmitter)out).endDeferred()){
+			return reader.event;
+		}
+		out.paused=false;
+		consumeTokens();
+		if(out.paused){
+			return reader.event;
+		}
+		if(top!=0){
 			throw new LazyException("Unexpected end of JSON data");
 		}
-		if(expectValue){
-			throw new LazyException("Unexpected trailing comma");
+		return reader.set(null,LazyNode.VALUE_NULL,n,n);
+	}
+
+	// Move past the contents of the object or array the reader just started,
+	// leaving it at the matching end event. Like deferred containers the
+	// contents are only checked enough to find their end.
+	protected void skip(final LazyReader reader) throws LazyException{
+		if(((LazyEmitter.ReaderEmitter)out).endDeferred()){
+			return;
 		}
-		setBuffer(root);
+		n=reader.start;
+		skipContainer();
+		byte type=open[--top];
+		depth--;
+		endValue();
+		expectValue=false;
+		firstValue=false;
+		reader.set(type==LazyNode.OBJECT?LazyEvent.END_OBJECT:LazyEvent.END_ARRAY,type,n,n+1);
+		n++;
 	}
 
-	private void setBuffer(LazyNode node){
-		node.cbuf=cbuf;
-		LazyNode pointer=node.child;
-		while(pointer!=null){
-			if(pointer.child!=null){
-				setBuffer(pointer);
-			}else{
-				pointer.cbuf=cbuf;
-			}
-			pointer=pointer.next;
+	// Number of objects and arrays currently open, including one the reader
+	// just started whose contents were deferred
+	protected int getDepth(){
+		if(out instanceof LazyEmitter.ReaderEmitter && ((LazyEmitter.ReaderEmitter)out).hasDeferred()){
+			return depth+1;
 		}
+		return depth;
 	}
-}
\ No newline at end of file
+}
+
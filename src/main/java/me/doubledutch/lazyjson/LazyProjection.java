@@ -0,0 +1,148 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A set of field paths used to limit which parts of a document are
+ * tokenized. Fields that are not part of the projection are skipped with a
+ * quick scan for the end of their value, and no tokens are created for them
+ * at all.
+ *
+ * Paths are given as field names separated by dots, such as "user.id". A
+ * path that ends at an object or array includes all of it. The projection
+ * for an array is applied to each of its values, so "items.id" selects the
+ * id field of every object in the items array.
+ *
+ * A projection is immutable and can be shared between threads.
+ */
+public final class LazyProjection{
+	// Names of the projected fields and the projection for each of their
+	// values, where null means the entire value is included
+	private String[] names=new String[0];
+	private LazyProjection[] children=new LazyProjection[0];
+
+	private LazyProjection(){}
+
+	/**
+	 * Create a new projection including the given paths.
+	 *
+	 * @param paths the paths to include, with field names separated by dots
+	 * @return a new projection
+	 */
+	public static LazyProjection of(String... paths){
+		LazyProjection projection=new LazyProjection();
+		for(String path:paths){
+			projection.add(path.split("\\."),0);
+		}
+		return projection;
+	}
+
+	private void add(String[] path,int offset){
+		int index=indexOf(path[offset]);
+		boolean last=offset==path.length-1;
+		if(index<0){
+			index=names.length;
+			names=Arrays.copyOf(names,index+1);
+			children=Arrays.copyOf(children,index+1);
+			names[index]=path[offset];
+			if(!last){
+				children[index]=new LazyProjection();
+			}
+		}else if(last){
+			// Including the entire value overrides any nested paths
+			children[index]=null;
+		}else if(children[index]==null){
+			// The entire value is already included
+			return;
+		}
+		if(!last){
+			children[index].add(path,offset+1);
+		}
+	}
+
+	/**
+	 * Returns the projection for the value of the field with the given index.
+	 *
+	 * @param index the index of the field as returned by indexOf
+	 * @return the projection or null if the entire value is included
+	 */
+	protected LazyProjection getChild(int index){
+		return children[index];
+	}
+
+	/**
+	 * Returns the index of the given field name.
+	 *
+	 * @param name the field name
+	 * @return the index of the field or -1 if it is not part of this projection
+	 */
+	protected int indexOf(String name){
+		for(int i=0;i<names.length;i++){
+			if(names[i].equals(name)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the field name found in the given range of
+	 * characters, without creating a string for it.
+	 *
+	 * @param cbuf the source
+	 * @param start the index of the first character of the name
+	 * @param end the index after the last character of the name
+	 * @return the index of the field or -1 if it is not part of this projection
+	 */
+	protected int indexOf(char[] cbuf,int start,int end){
+		int length=end-start;
+		for(int i=0;i<names.length;i++){
+			String name=names[i];
+			if(name.length()!=length){
+				continue;
+			}
+			int j=0;
+			while(j<length && name.charAt(j)==cbuf[start+j]){
+				j++;
+			}
+			if(j==length){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the field name found in the given range of UTF-8
+	 * data, only decoding it if the name contains characters outside of the
+	 * ascii range.
+	 *
+	 * @param bbuf the source
+	 * @param start the index of the first byte of the name
+	 * @param end the index after the last byte of the name
+	 * @return the index of the field or -1 if it is not part of this projection
+	 */
+	protected int indexOf(ByteBuffer bbuf,int start,int end){
+		int length=end-start;
+		for(int i=start;i<end;i++){
+			if(bbuf.get(i)<0){
+				return indexOf(LazyNode.decode(bbuf,start,end));
+			}
+		}
+		for(int i=0;i<names.length;i++){
+			String name=names[i];
+			if(name.length()!=length){
+				continue;
+			}
+			int j=0;
+			while(j<length && name.charAt(j)==bbuf.get(start+j)){
+				j++;
+			}
+			if(j==length){
+				return i;
+			}
+		}
+		return -1;
+	}
+}
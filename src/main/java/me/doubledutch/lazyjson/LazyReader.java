@@ -0,0 +1,294 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A forward only reader that returns the tokens of a JSON document one event
+ * at a time instead of building a tree.
+ *
+ * The reader uses the same tokenizer and validation as LazyObject and
+ * LazyArray, which only keeps a small stack of the objects, arrays and
+ * fields that are currently open. Each call to next consumes just enough of
+ * the source to report the next token and records its range in the source, so
+ * reading events allocates nothing and no LazyNode is ever created. Values
+ * are only decoded when one of the accessors is called for them.
+ *
+ * The following snippet sums up the values of all fields named count.
+ *
+ * <pre>
+ * LazyReader reader=new LazyReader(source);
+ * long sum=0;
+ * for(LazyEvent event=reader.next();event!=null;event=reader.next()){
+ *     if(event==LazyEvent.FIELD_NAME &amp;&amp; reader.isFieldName("count")){
+ *         reader.next();
+ *         sum+=reader.getLong();
+ *     }
+ * }
+ * </pre>
+ *
+ * Since the accessors share internal state, a reader must not be used by
+ * multiple threads at the same time.
+ */
+public final class LazyReader{
+	protected final LazyParser parser;
+
+	// The current event and the range of its token in the source
+	protected LazyEvent event=null;
+	protected byte type;
+	protected int start=-1;
+	protected int end=-1;
+
+	// Reusable token used to extract values using the LazyNode methods
+	private final LazyNode value=new LazyNode(LazyNode.VALUE_NULL,0);
+
+	/**
+	 * Create a new reader for the JSON representation in the given string.
+	 *
+	 * @param raw the input string
+	 */
+	public LazyReader(String raw){
+		parser=new LazyParser(raw);
+		value.doc=parser.doc;
+	}
+
+	/**
+	 * Create a new reader for the JSON representation in the given range of
+	 * characters. The array is used as is without copying, so it must not be
+	 * modified while this reader is in use. Indexes reported by the reader
+	 * are absolute indexes into the array.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first character of the input
+	 * @param length the number of characters in the input
+	 */
+	public LazyReader(char[] raw,int offset,int length){
+		parser=new LazyParser(raw,offset,length);
+		value.doc=parser.doc;
+	}
+
+	/**
+	 * Create a new reader for the JSON representation in the given range of
+	 * UTF-8 data. The bytes are tokenized as they are without decoding them
+	 * first, and the array is used without copying, so it must not be
+	 * modified while this reader is in use. Indexes reported by the reader
+	 * are absolute indexes into the array.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first byte of the input
+	 * @param length the number of bytes in the input
+	 */
+	public LazyReader(byte[] raw,int offset,int length){
+		parser=new LazyParser(ByteBuffer.wrap(raw),offset,length);
+		value.doc=parser.doc;
+	}
+
+	/**
+	 * Advances to the next token in the document.
+	 *
+	 * @return the event for the next token or null if the end of the document has been reached
+	 * @throws LazyException if the source is not valid JSON
+	 */
+	public LazyEvent next() throws LazyException{
+		try{
+			return parser.pull(this);
+		}catch(IndexOutOfBoundsException e){
+			// The tokenizer ran off the end of the source in the middle of a
+			// string, number or literal
+			throw new LazyException("Unexpected end of JSON data");
+		}
+	}
+
+	/**
+	 * Skips the contents of the object or array that was just started, so
+	 * the current event becomes its END_OBJECT or END_ARRAY. The skipped
+	 * contents are only checked enough to find the end of the container.
+	 * Does nothing if the current event is not START_OBJECT or START_ARRAY.
+	 *
+	 * @throws LazyException if the end of the object or array could not be found
+	 */
+	public void skipChildren() throws LazyException{
+		if(event==LazyEvent.START_OBJECT || event==LazyEvent.START_ARRAY){
+			parser.skip(this);
+		}
+	}
+
+	/**
+	 * Returns the current event.
+	 *
+	 * @return the event last returned by next
+	 */
+	public LazyEvent getEvent(){
+		return event;
+	}
+
+	/**
+	 * Returns the number of objects and arrays that are currently open. The
+	 * start and end events of the root object or array are both at depth 1.
+	 *
+	 * @return the nesting depth of the current token
+	 */
+	public int getDepth(){
+		int count=parser.getDepth();
+		if(event==LazyEvent.END_OBJECT || event==LazyEvent.END_ARRAY){
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the index of the first character of the current token in the
+	 * source. For strings and field names this is the character after the
+	 * opening quote.
+	 *
+	 * @return the start index of the current token
+	 */
+	public int getStartIndex(){
+		return start;
+	}
+
+	/**
+	 * Returns the index after the last character of the current token in the
+	 * source. For strings and field names this is the index of the closing
+	 * quote.
+	 *
+	 * @return the end index of the current token
+	 */
+	public int getEndIndex(){
+		return end;
+	}
+
+	/**
+	 * Returns true if the current token is a field with the given name. The
+	 * name is compared to the source without creating a string.
+	 *
+	 * @param name the name to compare with
+	 * @return true if the current event is FIELD_NAME and the name matches
+	 */
+	public boolean isFieldName(String name){
+		if(event!=LazyEvent.FIELD_NAME){
+			return false;
+		}
+		return LazyObject.keyMatch(name,select());
+	}
+
+	/**
+	 * Returns the name of the current field.
+	 *
+	 * @return the name of the field
+	 * @throws LazyException if the current event is not FIELD_NAME
+	 */
+	public String getFieldName() throws LazyException{
+		if(event!=LazyEvent.FIELD_NAME){
+			throw new LazyException("Not a field",start);
+		}
+		return select().getStringValue();
+	}
+
+	/**
+	 * Returns the current value as a string.
+	 *
+	 * @return the string value or null if the value is null
+	 * @throws LazyException if the current token is not a value
+	 */
+	public String getString() throws LazyException{
+		checkValue();
+		return select().getStringValue();
+	}
+
+	/**
+	 * Returns the current value as a character sequence. Values without
+	 * escape sequences are returned as a view of the source instead of a copy.
+	 *
+	 * @return the value or null if the value is null
+	 * @throws LazyException if the current token is not a value
+	 */
+	public CharSequence getCharSequence() throws LazyException{
+		checkValue();
+		return select().getCharSequenceValue();
+	}
+
+	/**
+	 * Returns the current value as an integer.
+	 *
+	 * @return the integer value
+	 * @throws LazyException if the value could not be parsed as an integer
+	 */
+	public int getInt() throws LazyException{
+		checkValue();
+		return select().getIntValue();
+	}
+
+	/**
+	 * Returns the current value as a long.
+	 *
+	 * @return the long value
+	 * @throws LazyException if the value could not be parsed as a long
+	 */
+	public long getLong() throws LazyException{
+		checkValue();
+		return select().getLongValue();
+	}
+
+	/**
+	 * Returns the current value as a double.
+	 *
+	 * @return the double value
+	 * @throws LazyException if the value could not be parsed as a double
+	 */
+	public double getDouble() throws LazyException{
+		if(event!=LazyEvent.VALUE_INTEGER && event!=LazyEvent.VALUE_FLOAT && event!=LazyEvent.VALUE_STRING){
+			throw new LazyException("Requested value is not a number",start);
+		}
+		return select().getDoubleValue();
+	}
+
+	/**
+	 * Returns the current value as a boolean.
+	 *
+	 * @return the boolean value
+	 * @throws LazyException if the value is not a boolean
+	 */
+	public boolean getBoolean() throws LazyException{
+		if(event==LazyEvent.VALUE_TRUE)return true;
+		if(event==LazyEvent.VALUE_FALSE)return false;
+		if(event==LazyEvent.VALUE_STRING){
+			String str=getString().toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+		}
+		throw new LazyException("Requested value is not a boolean",start);
+	}
+
+	/**
+	 * Returns true if the current value is null.
+	 *
+	 * @return true if the current event is VALUE_NULL
+	 */
+	public boolean isNull(){
+		return event==LazyEvent.VALUE_NULL;
+	}
+
+	// Record the current event, called by the parser
+	protected LazyEvent set(LazyEvent event,byte type,int start,int end){
+		this.event=event;
+		this.type=type;
+		this.start=start;
+		this.end=end;
+		return event;
+	}
+
+	// The value events are declared last in LazyEvent
+	private void checkValue() throws LazyException{
+		if(event==null || event.ordinal()<LazyEvent.VALUE_STRING.ordinal()){
+			throw new LazyException("Not a value",start);
+		}
+	}
+
+	// Point the reusable token to the current token
+	private LazyNode select(){
+		value.type=type;
+		value.startIndex=start;
+		value.endIndex=end;
+		return value;
+	}
+}
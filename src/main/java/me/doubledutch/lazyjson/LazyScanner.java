@@ -0,0 +1,204 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A minimal state machine that finds the boundaries of complete top level
+ * elements in a stream of JSON data without tokenizing them. It only tracks
+ * nesting depth and string state, which lets it resume at any point, so the
+ * input can be handed to it in arbitrary chunks.
+ *
+ * The scanner accepts either a sequence of whitespace separated objects and
+ * arrays, such as JSON lines or concatenated JSON, or a single top level
+ * array whose values are returned one by one. Elements are returned as
+ * LazyElements, so the values of such an array must be objects or arrays
+ * as well. Strings, numbers, booleans and nulls are rejected.
+ */
+final class LazyScanner{
+	// Framing states used between elements
+	private static final int BEGIN=0;
+	private static final int SEQUENCE=1;
+	private static final int ARRAY_FIRST=2;
+	private static final int ARRAY_NEXT=3;
+	private static final int ARRAY_AFTER=4;
+	private static final int DONE=5;
+
+	private final boolean splitArray;
+	private int state=BEGIN;
+
+	// State while inside an element
+	private int depth=0;
+	private boolean inString=false;
+	private boolean escaped=false;
+
+	// Index of the first character of the current element in the buffer
+	// last given to scan. Callers that move data around in their buffer must
+	// adjust this and offset accordingly.
+	protected int start=-1;
+	// Number of characters discarded by the caller before the start of the
+	// current buffer, used to report positions in exceptions.
+	protected int offset=0;
+	// Index after the last structural character of the current element
+	// outside of a string. Every token before it is complete, so a tokenizer
+	// can safely consume the element up to here before the rest has arrived.
+	protected int boundary=-1;
+
+	/**
+	 * @param splitArray if true and the data starts with an array, the values
+	 *                   of that array are returned instead of the array itself
+	 */
+	protected LazyScanner(boolean splitArray){
+		this.splitArray=splitArray;
+	}
+
+	/**
+	 * Returns true if the scanner is currently inside an element.
+	 *
+	 * @return true if the start of an element has been seen but not its end
+	 */
+	protected boolean inElement(){
+		return depth>0;
+	}
+
+	/**
+	 * Scans the given range of characters.
+	 *
+	 * @param buf the buffer to scan
+	 * @param pos the index to continue scanning at
+	 * @param limit the index after the last available character
+	 * @return the index after the end of the next complete element or -1 if the limit was reached first
+	 * @throws LazyException if the data can not be split into elements
+	 */
+	protected int scan(char[] buf,int pos,int limit) throws LazyException{
+		for(int i=pos;i<limit;i++){
+			if(accept(buf[i],i)){
+				return i+1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Scans the given range of UTF-8 data. Since every byte of a multi-byte
+	 * sequence has its high bit set, they can never be mistaken for any of
+	 * the structural characters we are looking for.
+	 *
+	 * @param buf the buffer to scan
+	 * @param pos the index to continue scanning at
+	 * @param limit the index after the last available byte
+	 * @return the index after the end of the next complete element or -1 if the limit was reached first
+	 * @throws LazyException if the data can not be split into elements
+	 */
+	protected int scan(ByteBuffer buf,int pos,int limit) throws LazyException{
+		for(int i=pos;i<limit;i++){
+			if(accept((char)(buf.get(i)&0xFF),i)){
+				return i+1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Verifies that the data ended in a valid state.
+	 *
+	 * @throws LazyException if the data ended inside an element or an array
+	 */
+	protected void finish() throws LazyException{
+		if(depth>0 || state==ARRAY_FIRST || state==ARRAY_NEXT || state==ARRAY_AFTER){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+	}
+
+	private boolean accept(char c,int i) throws LazyException{
+		if(depth>0){
+			if(inString){
+				if(escaped){
+					escaped=false;
+				}else if(c=='\\'){
+					escaped=true;
+				}else if(c=='"'){
+					inString=false;
+				}
+				return false;
+			}
+			switch(c){
+				case '"':
+					inString=true;
+					break;
+				case '{':
+				case '[':
+					depth++;
+					boundary=i+1;
+					break;
+				case ',':
+				case ':':
+					boundary=i+1;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					boundary=i+1;
+					if(depth==0){
+						if(state!=SEQUENCE){
+							state=ARRAY_AFTER;
+						}
+						return true;
+					}
+					break;
+			}
+			return false;
+		}
+		if(c==' ' || c=='\n' || c=='\r' || c=='\t'){
+			return false;
+		}
+		switch(state){
+			case BEGIN:
+				if(splitArray && c=='['){
+					state=ARRAY_FIRST;
+					return false;
+				}
+				state=SEQUENCE;
+				startElement(c,i);
+				return false;
+			case SEQUENCE:
+				startElement(c,i);
+				return false;
+			case ARRAY_FIRST:
+				if(c==']'){
+					state=DONE;
+					return false;
+				}
+				startElement(c,i);
+				return false;
+			case ARRAY_NEXT:
+				if(c==']'){
+					throw new LazyException("Unexpected comma without another value",offset+i);
+				}
+				startElement(c,i);
+				return false;
+			case ARRAY_AFTER:
+				if(c==','){
+					state=ARRAY_NEXT;
+				}else if(c==']'){
+					state=DONE;
+				}else{
+					throw new LazyException("Unexpected character, missing comma?",offset+i);
+				}
+				return false;
+			default:
+				throw new LazyException("Unexpected data after end of array",offset+i);
+		}
+	}
+
+	private void startElement(char c,int i) throws LazyException{
+		if(c!='{' && c!='['){
+			if(state!=SEQUENCE){
+				throw new LazyException("Values of a split array must be objects or arrays",offset+i);
+			}
+			throw new LazyException("Can not parse raw JSON value, must be either object or array",offset+i);
+		}
+		depth=1;
+		start=i;
+		boundary=i+1;
+	}
+}
@@ -0,0 +1,180 @@
+package me.doubledutch.lazyjson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * The destination of a serialized element. Ranges of the source are handed
+ * to the sink as they are, so unmodified parts of a document are written
+ * with a single bulk copy whenever the source and destination use the same
+ * representation.
+ */
+abstract class LazySink{
+	/**
+	 * Writes a single ascii character.
+	 *
+	 * @param c the character to write
+	 * @throws IOException if the destination could not be written to
+	 */
+	protected abstract void write(char c) throws IOException;
+
+	/**
+	 * Writes a string of ascii characters.
+	 *
+	 * @param str the characters to write
+	 * @throws IOException if the destination could not be written to
+	 */
+	protected abstract void write(String str) throws IOException;
+
+	/**
+	 * Writes a range of characters.
+	 *
+	 * @param source the characters to write from
+	 * @param offset the index of the first character
+	 * @param length the number of characters
+	 * @throws IOException if the destination could not be written to
+	 */
+	protected abstract void write(char[] source,int offset,int length) throws IOException;
+
+	/**
+	 * Writes a range of UTF-8 encoded data.
+	 *
+	 * @param source the buffer to write from
+	 * @param offset the absolute index of the first byte
+	 * @param length the number of bytes
+	 * @throws IOException if the destination could not be written to
+	 */
+	protected abstract void write(ByteBuffer source,int offset,int length) throws IOException;
+
+	/**
+	 * Writes out anything still buffered by the sink.
+	 *
+	 * @throws IOException if the destination could not be written to
+	 */
+	protected void finish() throws IOException{
+
+	}
+
+	/**
+	 * A sink writing characters to an Appendable. StringBuilders and Writers
+	 * are given whole ranges of characters at once.
+	 */
+	static final class CharSink extends LazySink{
+		private final Appendable out;
+
+		protected CharSink(Appendable out){
+			this.out=out;
+		}
+
+		protected void write(char c) throws IOException{
+			out.append(c);
+		}
+
+		protected void write(String str) throws IOException{
+			out.append(str);
+		}
+
+		protected void write(char[] source,int offset,int length) throws IOException{
+			if(out instanceof StringBuilder){
+				((StringBuilder)out).append(source,offset,length);
+			}else if(out instanceof Writer){
+				((Writer)out).write(source,offset,length);
+			}else{
+				out.append(new LazyCharSequence(source,offset,offset+length));
+			}
+		}
+
+		protected void write(ByteBuffer source,int offset,int length) throws IOException{
+			out.append(LazyNode.decode(source,offset,offset+length));
+		}
+	}
+
+	/**
+	 * A sink writing UTF-8 encoded data to an OutputStream. Data parsed from
+	 * UTF-8 is copied as it is, characters are encoded into a small buffer
+	 * that is written out whenever it fills up.
+	 */
+	static final class ByteSink extends LazySink{
+		private static final int BUFFER_SIZE=8192;
+
+		private final OutputStream out;
+		private final byte[] buf=new byte[BUFFER_SIZE];
+		private int pos=0;
+
+		protected ByteSink(OutputStream out){
+			this.out=out;
+		}
+
+		protected void write(char c) throws IOException{
+			if(pos==BUFFER_SIZE){
+				finish();
+			}
+			buf[pos++]=(byte)c;
+		}
+
+		protected void write(String str) throws IOException{
+			int length=str.length();
+			for(int i=0;i<length;i++){
+				write(str.charAt(i));
+			}
+		}
+
+		protected void write(char[] source,int offset,int length) throws IOException{
+			int end=offset+length;
+			for(int i=offset;i<end;i++){
+				// Room for the longest encoding of a character
+				if(pos+4>BUFFER_SIZE){
+					finish();
+				}
+				char c=source[i];
+				if(c<0x80){
+					buf[pos++]=(byte)c;
+				}else if(c<0x800){
+					buf[pos++]=(byte)(0xC0|(c>>6));
+					buf[pos++]=(byte)(0x80|(c&0x3F));
+				}else if(Character.isHighSurrogate(c) && i+1<end && Character.isLowSurrogate(source[i+1])){
+					int cp=Character.toCodePoint(c,source[++i]);
+					buf[pos++]=(byte)(0xF0|(cp>>18));
+					buf[pos++]=(byte)(0x80|((cp>>12)&0x3F));
+					buf[pos++]=(byte)(0x80|((cp>>6)&0x3F));
+					buf[pos++]=(byte)(0x80|(cp&0x3F));
+				}else if(Character.isSurrogate(c)){
+					// Unpaired surrogates are replaced the same way as by
+					// String.getBytes
+					buf[pos++]=(byte)'?';
+				}else{
+					buf[pos++]=(byte)(0xE0|(c>>12));
+					buf[pos++]=(byte)(0x80|((c>>6)&0x3F));
+					buf[pos++]=(byte)(0x80|(c&0x3F));
+				}
+			}
+		}
+
+		protected void write(ByteBuffer source,int offset,int length) throws IOException{
+			finish();
+			if(source.hasArray()){
+				out.write(source.array(),source.arrayOffset()+offset,length);
+				return;
+			}
+			// Work on a duplicate so we never touch the position of a buffer
+			// that might be shared between threads
+			ByteBuffer dup=source.duplicate();
+			dup.position(offset);
+			while(length>0){
+				int size=Math.min(length,BUFFER_SIZE);
+				dup.get(buf,0,size);
+				out.write(buf,0,size);
+				length-=size;
+			}
+		}
+
+		protected void finish() throws IOException{
+			if(pos>0){
+				out.write(buf,0,pos);
+				pos=0;
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package me.doubledutch.lazyjson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Splits UTF-8 encoded JSON data into separate records without tokenizing
+ * them. Only nesting depth and string state are tracked, so no tokens or
+ * strings are created, and records can be written straight to a channel.
+ *
+ * The data can either be a top level array whose values are the records,
+ * or a sequence of whitespace separated objects and arrays, such as JSON
+ * lines or concatenated JSON. The records themselves are not validated
+ * beyond matching their brackets and quotes.
+ *
+ * The following snippet writes each record of a batch to a channel.
+ *
+ * <pre>
+ * LazySplitter splitter=new LazySplitter(data);
+ * while(splitter.next()){
+ *     splitter.writeTo(channel);
+ * }
+ * </pre>
+ */
+public final class LazySplitter{
+	private final ByteBuffer data;
+	// Duplicate of the data used to write records without touching the
+	// position and limit of the original buffer
+	private final ByteBuffer view;
+	private final LazyScanner scanner;
+	private final int limit;
+	private int pos;
+
+	// Range of the current record
+	private int start=-1;
+	private int end=-1;
+
+	/**
+	 * Create a new splitter for the data between the position and the limit
+	 * of the given buffer. If the data starts with an array, the values of
+	 * that array are returned as records.
+	 *
+	 * @param data the source data
+	 */
+	public LazySplitter(ByteBuffer data){
+		this(data,true);
+	}
+
+	/**
+	 * Create a new splitter for the data between the position and the limit
+	 * of the given buffer.
+	 *
+	 * @param data the source data
+	 * @param splitArray if true and the data starts with an array, the values of that array are returned as records instead of the array itself
+	 */
+	public LazySplitter(ByteBuffer data,boolean splitArray){
+		this.data=data;
+		view=data.duplicate();
+		scanner=new LazyScanner(splitArray);
+		pos=data.position();
+		limit=data.limit();
+	}
+
+	/**
+	 * Create a new splitter for the given data. If the data starts with an
+	 * array, the values of that array are returned as records.
+	 *
+	 * @param data the source data
+	 */
+	public LazySplitter(byte[] data){
+		this(ByteBuffer.wrap(data),true);
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return true if a record was found, false if the end of the data was reached
+	 * @throws LazyException if the data can not be split into records
+	 */
+	public boolean next() throws LazyException{
+		int index=scanner.scan(data,pos,limit);
+		if(index==-1){
+			pos=limit;
+			start=-1;
+			end=-1;
+			scanner.finish();
+			return false;
+		}
+		start=scanner.start;
+		end=index;
+		pos=index;
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first byte of the current record in the
+	 * buffer.
+	 *
+	 * @return the index of the current record
+	 */
+	public int getOffset(){
+		return start;
+	}
+
+	/**
+	 * Returns the number of bytes in the current record.
+	 *
+	 * @return the length of the current record
+	 */
+	public int getLength(){
+		return end-start;
+	}
+
+	/**
+	 * Writes the bytes of the current record to the given channel.
+	 *
+	 * @param channel the channel to write to
+	 * @return the number of bytes written
+	 * @throws IOException if the channel could not be written to
+	 * @throws LazyException if there is no current record
+	 */
+	public int writeTo(WritableByteChannel channel) throws IOException,LazyException{
+		if(start==-1){
+			throw new LazyException("No current record");
+		}
+		view.limit(end);
+		view.position(start);
+		while(view.hasRemaining()){
+			channel.write(view);
+		}
+		return end-start;
+	}
+
+	/**
+	 * Parses the current record.
+	 *
+	 * @return either a LazyObject or LazyArray for the current record
+	 * @throws LazyException if there is no current record or it could not be parsed
+	 */
+	public LazyElement getElement() throws LazyException{
+		if(start==-1){
+			throw new LazyException("No current record");
+		}
+		LazyParser parser=new LazyParser(data,start,end-start);
+		parser.tokenize();
+		if(parser.root.type==LazyNode.OBJECT){
+			return new LazyObject(parser.root);
+		}
+		return new LazyArray(parser.root);
+	}
+}
@@ -0,0 +1,178 @@
+package me.doubledutch.lazyjson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads a stream of JSON data and returns each complete top level element as
+ * soon as it has been read, without buffering the entire stream first.
+ *
+ * If the stream starts with an array, each value in that array is returned
+ * as a separate element. Otherwise the stream is read as a sequence of
+ * whitespace separated objects and arrays, such as JSON lines or
+ * concatenated JSON. Either way every element must be an object or an
+ * array, so a top level array of strings, numbers, booleans or nulls such as
+ * [1,"a",true] can not be split. Reading such a value throws a
+ * LazyException, and the array has to be parsed as a whole as a LazyArray
+ * instead.
+ *
+ * The stream is read in chunks into a single reusable buffer, which only
+ * grows if a single element is larger than the buffer. Each returned element
+ * gets its own copy of its source data.
+ */
+public final class LazyStream implements Closeable{
+	private static final int DEFAULT_CHUNK_SIZE=8192;
+
+	private final Reader reader;
+	private final InputStream input;
+
+	// Only one of these is used, depending on the type of source
+	private char[] cbuf;
+	private ByteBuffer bbuf;
+
+	// Next index to scan and index after the last valid data in the buffer
+	private int pos=0;
+	private int limit=0;
+
+	private final LazyScanner scanner=new LazyScanner(true);
+
+	/**
+	 * Create a new stream reading characters from the given reader.
+	 *
+	 * @param reader the source of the JSON data
+	 */
+	public LazyStream(Reader reader){
+		this(reader,DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a new stream reading characters from the given reader.
+	 *
+	 * @param reader the source of the JSON data
+	 * @param chunkSize the initial size of the read buffer
+	 */
+	public LazyStream(Reader reader,int chunkSize){
+		this.reader=reader;
+		this.input=null;
+		cbuf=new char[chunkSize];
+	}
+
+	/**
+	 * Create a new stream reading UTF-8 encoded data from the given input
+	 * stream. The data is never decoded up front, each element is tokenized
+	 * directly from its bytes.
+	 *
+	 * @param input the source of the JSON data
+	 */
+	public LazyStream(InputStream input){
+		this(input,DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a new stream reading UTF-8 encoded data from the given input
+	 * stream.
+	 *
+	 * @param input the source of the JSON data
+	 * @param chunkSize the initial size of the read buffer
+	 */
+	public LazyStream(InputStream input,int chunkSize){
+		this.reader=null;
+		this.input=input;
+		bbuf=ByteBuffer.allocate(chunkSize);
+	}
+
+	/**
+	 * Reads the next element from the stream.
+	 *
+	 * @return the next element or null if the end of the stream was reached
+	 * @throws IOException if the underlying stream could not be read
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement next() throws IOException,LazyException{
+		for(;;){
+			if(pos<limit){
+				int end;
+				if(cbuf!=null){
+					end=scanner.scan(cbuf,pos,limit);
+				}else{
+					end=scanner.scan(bbuf,pos,limit);
+				}
+				if(end>-1){
+					pos=end;
+					return createElement(scanner.start,end);
+				}
+				pos=limit;
+			}
+			if(!fill()){
+				scanner.finish();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Closes the underlying reader or input stream.
+	 *
+	 * @throws IOException if the underlying stream could not be closed
+	 */
+	public void close() throws IOException{
+		if(reader!=null){
+			reader.close();
+		}else{
+			input.close();
+		}
+	}
+
+	private LazyElement createElement(int start,int end) throws LazyException{
+		LazyParser parser;
+		if(cbuf!=null){
+			parser=new LazyParser(Arrays.copyOfRange(cbuf,start,end),0,end-start);
+		}else{
+			parser=new LazyParser(ByteBuffer.wrap(Arrays.copyOfRange(bbuf.array(),start,end)));
+		}
+		parser.tokenize();
+		if(parser.root.type==LazyNode.OBJECT){
+			return new LazyObject(parser.root);
+		}
+		return new LazyArray(parser.root);
+	}
+
+	// Reads more data into the buffer, first moving any partially read
+	// element to the front and growing the buffer if that element fills it.
+	private boolean fill() throws IOException{
+		int keep=scanner.inElement()?scanner.start:limit;
+		int capacity=cbuf!=null?cbuf.length:bbuf.capacity();
+		if(keep>0){
+			if(cbuf!=null){
+				System.arraycopy(cbuf,keep,cbuf,0,limit-keep);
+			}else{
+				System.arraycopy(bbuf.array(),keep,bbuf.array(),0,limit-keep);
+			}
+			limit-=keep;
+			pos-=keep;
+			scanner.start-=keep;
+			scanner.offset+=keep;
+		}else if(limit==capacity){
+			if(cbuf!=null){
+				cbuf=Arrays.copyOf(cbuf,capacity*2);
+			}else{
+				bbuf=ByteBuffer.wrap(Arrays.copyOf(bbuf.array(),capacity*2));
+			}
+		}
+		int read;
+		if(cbuf!=null){
+			read=reader.read(cbuf,limit,cbuf.length-limit);
+		}else{
+			read=input.read(bbuf.array(),limit,bbuf.capacity()-limit);
+		}
+		if(read==-1){
+			return false;
+		}
+		limit+=read;
+		return true;
+	}
+}
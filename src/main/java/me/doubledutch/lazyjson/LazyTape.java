@@ -0,0 +1,475 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A read only index over JSON data stored as a tape of tokens instead of a
+ * tree of LazyNode objects.
+ *
+ * The tokens are stored in document order in a set of parallel arrays
+ * holding the type, start index, end index and next sibling of each token,
+ * which takes about 13 bytes per token rather than a separate object with
+ * its own header and references. Parsing only allocates these arrays, and
+ * the garbage collector has nothing to trace inside them.
+ *
+ * Values are addressed using integer cursors, which are simply indexes into
+ * the tape. The root object or array is always at cursor 0. The fields of an
+ * object are tokens of their own, with the value of each field at the cursor
+ * immediately following it.
+ *
+ * A tape can be reused for any number of documents by calling parse. It
+ * keeps its parser, source buffer and token arrays between documents, so
+ * once they have grown to fit the documents being parsed, parsing, looking
+ * up fields and reading integer or boolean values do not allocate anything.
+ *
+ * Since the accessors share internal state, a tape must not be used by
+ * multiple threads at the same time.
+ */
+public final class LazyTape{
+	private static final int DEFAULT_CAPACITY=16;
+
+	protected char[] cbuf;
+	// Set instead of cbuf when the document was parsed from UTF-8 data
+	protected ByteBuffer bbuf;
+	// Buffer used to hold the characters of string sources between parses
+	private char[] source;
+	private LazyParser parser;
+
+	// The tape itself
+	protected byte[] type;
+	protected int[] start;
+	protected int[] end;
+	// Index of the next sibling or -1 if this is the last child
+	protected int[] next;
+	protected int size=0;
+
+	// Stack of open tokens and their last child, only used while parsing
+	private int[] open=new int[32];
+	private int[] last=new int[32];
+	private int depth=0;
+
+	// Reusable token used to extract values using the LazyNode methods
+	private final LazyNode value=new LazyNode(LazyNode.VALUE_NULL,0);
+
+	/**
+	 * Create a new empty tape, ready to parse documents into.
+	 */
+	public LazyTape(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a new tape based on the JSON representation in the given string.
+	 *
+	 * @param raw the input string
+	 * @throws LazyException if the string could not be parsed as a JSON object or array
+	 */
+	public LazyTape(String raw) throws LazyException{
+		// Typical JSON data has a token for every 6-10 characters
+		this(Math.max(DEFAULT_CAPACITY,raw.length()/8));
+		parse(raw);
+	}
+
+	private LazyTape(int capacity){
+		type=new byte[capacity];
+		start=new int[capacity];
+		end=new int[capacity];
+		next=new int[capacity];
+	}
+
+	/**
+	 * Replaces the contents of this tape with the JSON representation in the
+	 * given string. The characters are copied into a buffer that is kept and
+	 * reused by later calls. Any cursors into the previous document are
+	 * invalidated.
+	 *
+	 * @param raw the input string
+	 * @throws LazyException if the string could not be parsed as a JSON object or array
+	 */
+	public void parse(String raw) throws LazyException{
+		int length=raw.length();
+		if(source==null || source.length<length+1){
+			source=new char[length+(length>>1)+1];
+		}
+		raw.getChars(0,length,source,0);
+		// The tokenizer may look one character past the end when the data
+		// is truncated. Make sure it never sees a stale character from a
+		// previous document there.
+		source[length]=0;
+		parse(source,0,length);
+	}
+
+	/**
+	 * Replaces the contents of this tape with the JSON representation in the
+	 * given range of characters. The array is used as is without copying, so
+	 * it must not be modified while this tape is in use. Any cursors into the
+	 * previous document are invalidated.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first character of the input
+	 * @param length the number of characters in the input
+	 * @throws LazyException if the input could not be parsed as a JSON object or array
+	 */
+	public void parse(char[] raw,int offset,int length) throws LazyException{
+		if(parser==null){
+			parser=new LazyParser(raw,offset,length);
+		}else{
+			parser.reset(raw,offset,length);
+		}
+		cbuf=raw;
+		bbuf=null;
+		tokenize();
+	}
+
+	/**
+	 * Replaces the contents of this tape with the JSON representation in the
+	 * given range of UTF-8 data. The array is used as is without copying or
+	 * decoding, so it must not be modified while this tape is in use. Any
+	 * cursors into the previous document are invalidated.
+	 *
+	 * @param raw the array holding the input
+	 * @param offset the index of the first byte of the input
+	 * @param length the number of bytes in the input
+	 * @throws LazyException if the input could not be parsed as a JSON object or array
+	 */
+	public void parse(byte[] raw,int offset,int length) throws LazyException{
+		// Keep wrapping the same array in the same buffer, so the parser
+		// keeps its document as well
+		if(bbuf==null || bbuf.array()!=raw){
+			bbuf=ByteBuffer.wrap(raw);
+		}
+		if(parser==null){
+			parser=new LazyParser(bbuf,offset,length);
+		}else{
+			parser.reset(bbuf,offset,length);
+		}
+		cbuf=null;
+		tokenize();
+	}
+
+	private void tokenize() throws LazyException{
+		value.doc=parser.doc;
+		size=0;
+		depth=0;
+		try{
+			parser.tokenize(this);
+		}catch(RuntimeException e){
+			// Never leave a partial document behind
+			size=0;
+			throw e;
+		}
+	}
+
+	// Append a token to the tape and make it the last child of the token on
+	// top of the stack
+	protected int addChild(byte tokenType,int startIndex) throws LazyException{
+		if(depth==0 && size>0){
+			throw new LazyException("Unexpected data after end of JSON data",startIndex);
+		}
+		if(size==type.length){
+			int capacity=size+(size>>1);
+			type=Arrays.copyOf(type,capacity);
+			start=Arrays.copyOf(start,capacity);
+			end=Arrays.copyOf(end,capacity);
+			next=Arrays.copyOf(next,capacity);
+		}
+		int index=size++;
+		type[index]=tokenType;
+		start[index]=startIndex;
+		end[index]=-1;
+		next[index]=-1;
+		if(depth>0){
+			int previous=last[depth-1];
+			if(previous>-1){
+				next[previous]=index;
+			}
+			last[depth-1]=index;
+		}
+		return index;
+	}
+
+	// Append a token and push it onto the stack
+	protected int push(byte tokenType,int startIndex) throws LazyException{
+		int index=addChild(tokenType,startIndex);
+		if(depth==open.length){
+			open=Arrays.copyOf(open,depth*2);
+			last=Arrays.copyOf(last,depth*2);
+		}
+		open[depth]=index;
+		last[depth]=-1;
+		depth++;
+		return index;
+	}
+
+	// Pop a token off the stack and return its index or -1 if it was empty
+	protected int pop(){
+		if(depth==0){
+			return -1;
+		}
+		return open[--depth];
+	}
+
+	// Returns the type of the token on top of the stack or -1 if it is empty
+	protected byte topType(){
+		if(depth==0){
+			return -1;
+		}
+		return type[open[depth-1]];
+	}
+
+	/**
+	 * Returns the number of tokens on the tape.
+	 *
+	 * @return the number of tokens
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the type of the value at the given cursor.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return the type of the value
+	 * @throws LazyException if the cursor points to a field
+	 */
+	public LazyType getType(int cursor) throws LazyException{
+		switch(type[cursor]){
+			case LazyNode.OBJECT: return LazyType.OBJECT;
+			case LazyNode.ARRAY: return LazyType.ARRAY;
+			case LazyNode.VALUE_TRUE: return LazyType.BOOLEAN;
+			case LazyNode.VALUE_FALSE: return LazyType.BOOLEAN;
+			case LazyNode.VALUE_NULL: return LazyType.NULL;
+			case LazyNode.VALUE_STRING: return LazyType.STRING;
+			case LazyNode.VALUE_ESTRING: return LazyType.STRING;
+			case LazyNode.VALUE_INTEGER: return LazyType.INTEGER;
+			case LazyNode.VALUE_FLOAT: return LazyType.FLOAT;
+		}
+		throw new LazyException("Not a value",start[cursor]);
+	}
+
+	/**
+	 * Returns the cursor of the first child of an object or array. For an
+	 * object this is the first field, for an array the first value.
+	 *
+	 * @param cursor the cursor of an object or array
+	 * @return the cursor of the first child or -1 if it is empty
+	 */
+	public int getFirst(int cursor){
+		int child=cursor+1;
+		// Tokens are stored in document order, so the token following this
+		// one is a child if it starts inside of it
+		if(child<size && start[child]<end[cursor]){
+			return child;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the cursor of the next sibling of a field or value.
+	 *
+	 * @param cursor the cursor of a field or value
+	 * @return the cursor of the next sibling or -1 if this was the last one
+	 */
+	public int getNext(int cursor){
+		return next[cursor];
+	}
+
+	/**
+	 * Returns the number of fields in an object or values in an array.
+	 *
+	 * @param cursor the cursor of an object or array
+	 * @return the number of children
+	 */
+	public int length(int cursor){
+		int count=0;
+		for(int child=getFirst(cursor);child>-1;child=next[child]){
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the cursor of the value for the given field of an object.
+	 *
+	 * @param cursor the cursor of an object
+	 * @param key the name of the field
+	 * @return the cursor of the value or -1 if there is no such field
+	 * @throws LazyException if the cursor does not point to an object
+	 */
+	public int get(int cursor,String key) throws LazyException{
+		if(type[cursor]!=LazyNode.OBJECT){
+			throw new LazyException("Not an object",start[cursor]);
+		}
+		for(int field=getFirst(cursor);field>-1;field=next[field]){
+			if(keyMatch(key,field)){
+				return field+1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the cursor of the value at the given index of an array.
+	 *
+	 * @param cursor the cursor of an array
+	 * @param index the index of the value
+	 * @return the cursor of the value or -1 if the index is out of bounds
+	 * @throws LazyException if the cursor does not point to an array
+	 */
+	public int get(int cursor,int index) throws LazyException{
+		if(type[cursor]!=LazyNode.ARRAY){
+			throw new LazyException("Not an array",start[cursor]);
+		}
+		int child=getFirst(cursor);
+		for(int i=0;i<index && child>-1;i++){
+			child=next[child];
+		}
+		return child;
+	}
+
+	/**
+	 * Returns the name of the field at the given cursor.
+	 *
+	 * @param cursor the cursor of a field
+	 * @return the name of the field
+	 * @throws LazyException if the cursor does not point to a field
+	 */
+	public String getFieldName(int cursor) throws LazyException{
+		if(type[cursor]!=LazyNode.FIELD && type[cursor]!=LazyNode.EFIELD){
+			throw new LazyException("Not a field",start[cursor]);
+		}
+		return select(cursor).getStringValue();
+	}
+
+	/**
+	 * Returns the string value at the given cursor.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return the string value or null if the value is null
+	 * @throws LazyException if the value is an object or array
+	 */
+	public String getString(int cursor) throws LazyException{
+		if(type[cursor]==LazyNode.OBJECT || type[cursor]==LazyNode.ARRAY){
+			throw new LazyException("Requested value is not a string",start[cursor]);
+		}
+		return select(cursor).getStringValue();
+	}
+
+	/**
+	 * Returns the integer value at the given cursor.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return the integer value
+	 * @throws LazyException if the value could not be parsed as an integer
+	 */
+	public int getInt(int cursor) throws LazyException{
+		return select(cursor).getIntValue();
+	}
+
+	/**
+	 * Returns the long value at the given cursor.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return the long value
+	 * @throws LazyException if the value could not be parsed as a long
+	 */
+	public long getLong(int cursor) throws LazyException{
+		return select(cursor).getLongValue();
+	}
+
+	/**
+	 * Returns the double value at the given cursor.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return the double value
+	 * @throws LazyException if the value could not be parsed as a double
+	 */
+	public double getDouble(int cursor) throws LazyException{
+		byte t=type[cursor];
+		if(t!=LazyNode.VALUE_INTEGER && t!=LazyNode.VALUE_FLOAT && t!=LazyNode.VALUE_STRING && t!=LazyNode.VALUE_ESTRING){
+			throw new LazyException("Requested value is not a number",start[cursor]);
+		}
+		return select(cursor).getDoubleValue();
+	}
+
+	/**
+	 * Returns the boolean value at the given cursor.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return the boolean value
+	 * @throws LazyException if the value is not a boolean
+	 */
+	public boolean getBoolean(int cursor) throws LazyException{
+		byte t=type[cursor];
+		if(t==LazyNode.VALUE_TRUE)return true;
+		if(t==LazyNode.VALUE_FALSE)return false;
+		if(t==LazyNode.VALUE_STRING || t==LazyNode.VALUE_ESTRING){
+			String str=getString(cursor).toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+		}
+		throw new LazyException("Requested value is not a boolean",start[cursor]);
+	}
+
+	/**
+	 * Returns true if the value at the given cursor is null.
+	 *
+	 * @param cursor the cursor of a value
+	 * @return true if the value is null
+	 */
+	public boolean isNull(int cursor){
+		return type[cursor]==LazyNode.VALUE_NULL;
+	}
+
+	/**
+	 * Returns the raw JSON source of the object or array at the given cursor.
+	 *
+	 * @param cursor the cursor of an object or array
+	 * @return the JSON source
+	 */
+	public String toString(int cursor){
+		if(bbuf!=null){
+			return LazyNode.decode(bbuf,start[cursor],end[cursor]);
+		}
+		return new String(cbuf,start[cursor],end[cursor]-start[cursor]);
+	}
+
+	/**
+	 * Returns the raw JSON source of the root object or array.
+	 *
+	 * @return the JSON source
+	 */
+	public String toString(){
+		return toString(0);
+	}
+
+	// Point the reusable token to the given cursor
+	private LazyNode select(int cursor){
+		value.type=type[cursor];
+		value.startIndex=start[cursor];
+		value.endIndex=end[cursor];
+		return value;
+	}
+
+	private boolean keyMatch(String key,int field){
+		if(type[field]==LazyNode.EFIELD){
+			return key.equals(select(field).getStringValue());
+		}
+		if(bbuf!=null){
+			return LazyObject.keyMatch(key,select(field));
+		}
+		int length=key.length();
+		int offset=start[field];
+		if(end[field]-offset!=length){
+			return false;
+		}
+		for(int i=0;i<length;i++){
+			if(key.charAt(i)!=cbuf[offset+i]){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,187 @@
+package me.doubledutch.lazyjson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tokenizes a file that is too large to be mapped in one piece. A single
+ * mapping, like every index position of a token, is limited to 2GB.
+ *
+ * The file is mapped in windows that each start right after a comma
+ * separating the values or fields of the root object or array. Each window
+ * is scanned for the last such comma, and everything before it is tokenized
+ * by LazyParser as a document of its own and linked into the root, much like
+ * the parts of LazyParallelTokenizer. The next window is then mapped from
+ * the byte after the comma, or from the start of a value that did not fit
+ * in the rest of a window. No value is ever split between two windows, but
+ * a single value of the root can not be larger than a window.
+ *
+ * The root itself can not cover the whole file, so it is marked dirty and
+ * written out value by value, each of which is still copied straight from
+ * its window.
+ */
+final class LazyWindowTokenizer{
+	private LazyWindowTokenizer(){}
+
+	/**
+	 * Tokenizes the UTF-8 encoded JSON data in the given file.
+	 *
+	 * @param channel the file to read
+	 * @param size the size of the file
+	 * @param windowSize the maximum number of bytes to map at a time
+	 * @return the root object or array token
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the file could not be parsed, or a value of the root is larger than a window
+	 */
+	protected static LazyNode tokenize(FileChannel channel,long size,int windowSize) throws IOException,LazyException{
+		// The tree spans the documents of all windows, so changes made to
+		// their values can not be seen on the document of the root. It is
+		// marked as modified up front to keep its hash from being cached.
+		LazyDocument doc=new LazyDocument(ByteBuffer.allocate(0));
+		doc.modified=true;
+		LazyNode root=null;
+		long position=0;
+		while(position<size){
+			int length=(int)Math.min(size-position,windowSize);
+			// The mapping stays valid after the channel has been closed
+			ByteBuffer window=channel.map(FileChannel.MapMode.READ_ONLY,position,length);
+			int start=0;
+			if(root==null){
+				start=skipWhiteSpace(window,0,length);
+				byte c=start<length?window.get(start):0;
+				if(c=='{'){
+					root=LazyNode.cObject(0,doc);
+				}else if(c=='['){
+					root=LazyNode.cArray(0,doc);
+				}else{
+					throw new LazyException("Can not parse raw JSON value, must be either object or array",0);
+				}
+				root.endIndex=0;
+				root.dirty=true;
+				start++;
+			}
+			int split=findSplit(window,start,length);
+			if(split<0){
+				if(position+length==size){
+					throw new LazyException("Unexpected end of JSON data");
+				}
+				// Skip any whitespace and map the next window from the start
+				// of the value, unless it already starts the window
+				int next=skipWhiteSpace(window,start,length);
+				if(next==0){
+					throw new LazyException("Value at byte "+position+" is too large to be mapped");
+				}
+				position+=next;
+				continue;
+			}
+			boolean last=window.get(split)!=',';
+			// The root may be empty, but there are no empty parts in between
+			if(!last || root.child!=null || skipWhiteSpace(window,start,split)<split){
+				LazyNode list=tokenizePart(window,start,split,root.type,position);
+				if(root.child==null){
+					root.child=list.child;
+				}else{
+					root.lastChild.next=list.child;
+				}
+				root.lastChild=list.lastChild;
+			}
+			if(last){
+				if(window.get(split)!=(root.type==LazyNode.OBJECT?'}':']')){
+					throw new LazyException("Unexpected end of "+(root.type==LazyNode.OBJECT?"object":"array")+" at byte "+(position+split));
+				}
+				checkTrailing(channel,size,windowSize,window,position,split+1,length);
+				return root;
+			}
+			position+=split+1;
+		}
+		throw new LazyException("Unexpected end of JSON data");
+	}
+
+	// Tokenizes the values or fields in the given range of a window as a
+	// document of their own. Errors are reported with their position in the
+	// file, which may not fit in the int position of an exception.
+	private static LazyNode tokenizePart(ByteBuffer window,int start,int end,byte type,long position) throws LazyException{
+		LazyNode list;
+		try{
+			list=new LazyParser(new LazyDocument(window),start,end-start).tokenizeValues(type);
+		}catch(LazyException e){
+			long at=e.getPosition()>-1?position+e.getPosition():position+start;
+			throw new LazyException(e.getMessage()+" at byte "+at);
+		}
+		if(list==null){
+			throw new LazyException("Value expected at byte "+(position+end));
+		}
+		return list;
+	}
+
+	// Returns the index of the last comma separating the values of the root
+	// in the given range, or the index of the character closing the root if
+	// it comes first, or -1 if there is neither. The range must start outside
+	// of any string or nested value.
+	private static int findSplit(ByteBuffer window,int start,int end){
+		int split=-1;
+		int depth=0;
+		for(int i=start;i<end;i++){
+			switch(window.get(i)){
+				case '"':
+					// The closing quote may lie beyond the window
+					for(i++;i<end;i++){
+						byte c=window.get(i);
+						if(c=='\\'){
+							i++;
+						}else if(c=='"'){
+							break;
+						}
+					}
+					break;
+				case '{':
+				case '[':
+					depth++;
+					break;
+				case '}':
+				case ']':
+					if(depth==0){
+						return i;
+					}
+					depth--;
+					break;
+				case ',':
+					if(depth==0){
+						split=i;
+					}
+					break;
+			}
+		}
+		return split;
+	}
+
+	// Verifies that only whitespace follows the root, both in the rest of
+	// the current window and in the rest of the file
+	private static void checkTrailing(FileChannel channel,long size,int windowSize,ByteBuffer window,long position,int start,int end) throws IOException,LazyException{
+		while(true){
+			int index=skipWhiteSpace(window,start,end);
+			if(index<end){
+				throw new LazyException("Unexpected data after end of JSON data at byte "+(position+index));
+			}
+			position+=end;
+			if(position>=size){
+				return;
+			}
+			end=(int)Math.min(size-position,windowSize);
+			window=channel.map(FileChannel.MapMode.READ_ONLY,position,end);
+			start=0;
+		}
+	}
+
+	private static int skipWhiteSpace(ByteBuffer window,int start,int end){
+		while(start<end){
+			byte c=window.get(start);
+			if(c!=' ' && c!='\n' && c!='\r' && c!='\t'){
+				break;
+			}
+			start++;
+		}
+		return start;
+	}
+}
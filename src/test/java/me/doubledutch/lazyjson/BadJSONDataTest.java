@@ -234,4 +234,16 @@ public class BadJSONDataTest{
             e.toString();
         }
     }
-}
\ No newline at end of file
+
+    @Test(expected=LazyException.class)
+    public void testUnclosedObjectInArray() throws LazyException{
+        String str="[{]";
+        LazyArray arr=new LazyArray(str);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testDataAfterRoot() throws LazyException{
+        String str="{}{}";
+        LazyObject obj=new LazyObject(str);
+    }
+}
@@ -0,0 +1,149 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+public class ByteSourceTest{
+    private static byte[] utf8(String str){
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testObjectValues() throws LazyException{
+        String str="{\"foo\":\"bar\",\"baz\":42,\"neg\":-378,\"pi\":3.1415,\"t\":true,\"f\":false,\"n\":null,\"big\":12147483647}";
+        LazyObject obj=new LazyObject(utf8(str));
+        assertEquals("bar",obj.getString("foo"));
+        assertEquals(42,obj.getInt("baz"));
+        assertEquals(-378,obj.getLong("neg"));
+        assertEquals(3.1415,obj.getDouble("pi"),0);
+        assertTrue(obj.getBoolean("t"));
+        assertFalse(obj.getBoolean("f"));
+        assertTrue(obj.isNull("n"));
+        assertEquals(12147483647l,obj.getLong("big"));
+        assertEquals(str,obj.toString());
+    }
+
+    @Test
+    public void testMultiByteCharacters() throws LazyException{
+        String str="{\"bl\u00e5b\u00e6r\":\"r\u00f8dgr\u00f8d med fl\u00f8de \u20ac \ud83d\ude00\",\"k\":[\"\u00e6\u00f8\u00e5\",\"a\\n\u00e6\\u00e5\"]}";
+        LazyObject obj=new LazyObject(utf8(str));
+        assertTrue(obj.has("bl\u00e5b\u00e6r"));
+        assertFalse(obj.has("bl\u00e5b\u00e6"));
+        assertFalse(obj.has("k2"));
+        assertEquals("r\u00f8dgr\u00f8d med fl\u00f8de \u20ac \ud83d\ude00",obj.getString("bl\u00e5b\u00e6r"));
+        LazyArray arr=obj.getJSONArray("k");
+        assertEquals("\u00e6\u00f8\u00e5",arr.getString(0));
+        assertEquals("a\n\u00e6\u00e5",arr.getString(1));
+        assertEquals(str,obj.toString());
+    }
+
+    @Test
+    public void testArraySplitting() throws LazyException{
+        String str="[{\"foo\":1},{\"foo\":\"\u00e6\"},{\"foo\":3}]";
+        LazyArray array=new LazyArray(utf8(str));
+        assertEquals(3,array.length());
+        assertEquals("{\"foo\":\"\u00e6\"}",array.getJSONObject(1).toString());
+        assertEquals(3,array.getJSONObject(2).getInt("foo"));
+    }
+
+    @Test
+    public void testBufferRange() throws LazyException{
+        byte[] data=utf8("xx[1,2,3]yy");
+        ByteBuffer buf=ByteBuffer.wrap(data,2,7);
+        LazyArray array=new LazyArray(buf);
+        assertEquals(3,array.length());
+        assertEquals(3,array.getInt(2));
+        assertEquals("[1,2,3]",array.toString());
+        assertEquals(2,buf.position());
+        assertEquals(9,buf.limit());
+    }
+
+    @Test
+    public void testDirectBuffer() throws LazyException{
+        byte[] data=utf8("{\"foo\":\"\u00e6bc\"}");
+        ByteBuffer buf=ByteBuffer.allocateDirect(data.length);
+        buf.put(data);
+        buf.flip();
+        LazyObject obj=new LazyObject(buf);
+        assertEquals("\u00e6bc",obj.getString("foo"));
+        assertEquals("{\"foo\":\"\u00e6bc\"}",obj.toString());
+    }
+
+    @Test
+    public void testModify() throws LazyException{
+        LazyObject obj=new LazyObject(utf8("{\"foo\":\"bar\",\"baz\":42}"));
+        obj.put("foo","\u00e6");
+        obj.put("new",9);
+        assertEquals("\u00e6",obj.getString("foo"));
+        assertEquals(9,obj.getInt("new"));
+        assertEquals("{\"foo\":\"\u00e6\",\"baz\":42,\"new\":9}",obj.toString());
+    }
+
+    @Test
+    public void testParse() throws LazyException{
+        assertEquals(LazyType.ARRAY,LazyElement.parse(utf8("  [9]")).getType());
+        assertEquals(LazyType.OBJECT,LazyElement.parse(utf8("\n{}")).getType());
+    }
+
+    @Test
+    public void testLongStrings() throws LazyException{
+        // Place quotes and escapes at every offset within an eight byte word
+        for(int pad=0;pad<17;pad++){
+            StringBuilder buf=new StringBuilder();
+            for(int i=0;i<pad;i++)buf.append((char)('a'+i));
+            String prefix=buf.toString();
+            String str="{\"k\":\""+prefix+"\",\"e\":\""+prefix+"\\\"\u00e6\\\\"+prefix+"\"}";
+            for(ByteOrder order:new ByteOrder[]{ByteOrder.BIG_ENDIAN,ByteOrder.LITTLE_ENDIAN}){
+                LazyObject obj=new LazyObject(ByteBuffer.wrap(utf8(str)).order(order));
+                assertEquals(prefix,obj.getString("k"));
+                assertEquals(prefix+"\"\u00e6\\"+prefix,obj.getString("e"));
+            }
+        }
+    }
+
+    @Test
+    public void testIndentation() throws LazyException{
+        String str="{\n                    \"foo\"   :     \n\t\t\t\t\t\t\t\t\t\t[1,                         2]\n                }";
+        LazyObject obj=new LazyObject(utf8(str));
+        assertEquals(2,obj.getJSONArray("foo").getInt(1));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadEscapeInLongString() throws LazyException{
+        new LazyArray(utf8("[\"abcdefghijklmnop\\xabcdefghijklmnop\"]"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadValueType() throws LazyException{
+        LazyObject obj=new LazyObject(utf8("{\"foo\":\"bar\"}"));
+        obj.getInt("foo");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadEscape() throws LazyException{
+        new LazyArray(utf8("[\"\\x00\"]"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingComma() throws LazyException{
+        new LazyArray(utf8("[1 true]"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testWrongRoot() throws LazyException{
+        new LazyArray(utf8("{}"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnclosedObjectInArray() throws LazyException{
+        new LazyArray(utf8("[{\"a\":1]"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testDataAfterRoot() throws LazyException{
+        new LazyArray(utf8("[1] [2]"));
+    }
+}
@@ -0,0 +1,80 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.CharBuffer;
+
+public class CharSourceTest{
+    @Test
+    public void testPackedBuffer() throws LazyException{
+        String[] docs={"{\"id\":1,\"name\":\"first\"}","[1,2,{\"x\":\"y\"}]","{\"id\":3,\"nested\":{\"a\":[true]}}"};
+        StringBuilder buf=new StringBuilder();
+        int[] offsets=new int[docs.length];
+        for(int i=0;i<docs.length;i++){
+            offsets[i]=buf.length();
+            buf.append(docs[i]);
+        }
+        char[] pool=buf.toString().toCharArray();
+        LazyObject first=new LazyObject(pool,offsets[0],docs[0].length());
+        LazyArray second=new LazyArray(pool,offsets[1],docs[1].length());
+        LazyObject third=new LazyObject(pool,offsets[2],docs[2].length());
+        assertEquals("first",first.getString("name"));
+        assertEquals(docs[0],first.toString());
+        assertEquals("y",second.getJSONObject(2).getString("x"));
+        assertEquals(docs[1],second.toString());
+        assertEquals("{\"a\":[true]}",third.getJSONObject("nested").toString());
+        assertTrue(third.getJSONObject("nested").getJSONArray("a").getBoolean(0));
+        // Indexes are absolute offsets into the shared array
+        assertEquals(offsets[2],third.root.startIndex);
+        assertEquals(offsets[2]+docs[2].length(),third.root.endIndex);
+        assertSame(pool,third.root.doc.cbuf);
+    }
+
+    @Test
+    public void testModifiedSlice() throws LazyException{
+        char[] pool="xx{\"a\":1}[2]".toCharArray();
+        LazyObject obj=new LazyObject(pool,2,7);
+        obj.put("b","two");
+        assertEquals("two",obj.getString("b"));
+        assertEquals("xx{\"a\":1}[2]",new String(pool));
+        assertEquals(2,new LazyArray(pool,9,3).getInt(0));
+    }
+
+    @Test
+    public void testCharBuffer() throws LazyException{
+        char[] data="..[\"a\",\"b\"]..".toCharArray();
+        CharBuffer buf=CharBuffer.wrap(data,2,9).slice();
+        LazyArray array=new LazyArray(buf);
+        assertEquals("b",array.getString(1));
+        assertSame(data,array.root.doc.cbuf);
+        assertEquals(2,array.root.startIndex);
+        assertEquals(0,buf.position());
+        assertEquals(9,buf.limit());
+
+        CharBuffer readOnly=CharBuffer.wrap("{\"k\":\"v\"}");
+        LazyObject obj=new LazyObject(readOnly);
+        assertEquals("v",obj.getString("k"));
+        assertEquals(0,readOnly.position());
+    }
+
+    @Test
+    public void testStringBuilder() throws LazyException{
+        StringBuilder buf=new StringBuilder("{\"list\":[");
+        for(int i=0;i<10;i++){
+            if(i>0)buf.append(",");
+            buf.append(i);
+        }
+        buf.append("]}");
+        LazyObject obj=new LazyObject(buf);
+        assertEquals(9,obj.getJSONArray("list").getInt(9));
+        assertEquals(buf.toString(),obj.toString());
+        LazyArray array=new LazyArray(new LazyCharSequence("[[1]]".toCharArray(),0,5));
+        assertEquals(1,array.getJSONArray(0).getInt(0));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncatedSlice() throws LazyException{
+        char[] pool="{\"a\":[1,2]}".toCharArray();
+        new LazyObject(pool,0,8);
+    }
+}
@@ -0,0 +1,90 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class CompactionTest{
+    @Test
+    public void testCompact() throws LazyException{
+        LazyObject obj=new LazyObject("{\"id\":7,\"state\":{\"count\":0,\"tags\":[\"a\"]}}");
+        LazyObject state=obj.getJSONObject("state");
+        for(int i=1;i<=1000;i++){
+            state.put("count",i);
+            state.put("name","session-"+i);
+        }
+        state.getJSONArray("tags").put("b");
+        String before=obj.toString();
+        assertTrue(obj.root.doc.dirtyLength>10000);
+
+        state.compact();
+        assertEquals(before,obj.toString());
+        assertEquals(1000,state.getInt("count"));
+        assertEquals("session-1000",obj.getJSONObject("state").getString("name"));
+        LazyDocument doc=obj.root.doc;
+        assertTrue(doc.dirtyLength<40);
+        assertSame(doc,state.root.doc);
+        assertSame(doc,obj.getJSONObject("state").getJSONArray("tags").root.child.next.doc);
+
+        // The document keeps working normally after compaction
+        state.put("extra",true);
+        obj.put("id",8);
+        assertEquals(new LazyObject("{\"id\":8,\"state\":{\"count\":1000,\"tags\":[\"a\",\"b\"],\"name\":\"session-1000\",\"extra\":true}}"),obj);
+    }
+
+    @Test
+    public void testCompactUTF8() throws LazyException{
+        LazyArray arr=new LazyArray("[\"\u00e6\u00f8\u00e5\",1]".getBytes(StandardCharsets.UTF_8));
+        for(int i=0;i<100;i++){
+            arr.remove(1);
+            arr.put("v\u00e9"+i);
+        }
+        arr.compact();
+        assertEquals("[\"\u00e6\u00f8\u00e5\",\"v\u00e999\"]",arr.toString());
+        assertEquals("v\u00e999",arr.getString(1));
+    }
+
+    @Test
+    public void testRemovedValuesStayValid() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":{\"b\":1}}");
+        obj.getJSONObject("a").put("c","kept");
+        LazyObject removed=obj.getJSONObject("a");
+        obj.remove("a");
+        obj.put("d","new");
+        obj.compact();
+        assertEquals("kept",removed.getString("c"));
+        assertEquals("{\"b\":1,\"c\":\"kept\"}",removed.toString());
+        assertEquals("{\"d\":\"new\"}",obj.toString());
+    }
+
+    @Test
+    public void testCompactUnmodified() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":[1,2,3]}");
+        obj.compact();
+        assertEquals("{\"a\":[1,2,3]}",obj.toString());
+    }
+
+    @Test
+    public void testAutomaticCompaction() throws LazyException{
+        LazyObject obj=new LazyObject("{\"user\":\"alice\",\"visits\":0}");
+        obj.setCompactionRatio(0.5);
+        StringBuilder value=new StringBuilder();
+        for(int i=0;i<100;i++){
+            value.append('x');
+        }
+        for(int i=0;i<10000;i++){
+            obj.put("visits",i);
+            obj.put("last",value.toString()+i);
+        }
+        assertTrue(obj.root.doc.dirtyLength<4096);
+        assertEquals(9999,obj.getInt("visits"));
+        assertEquals(value.toString()+9999,obj.getString("last"));
+        assertEquals("alice",obj.getString("user"));
+
+        obj.setCompactionRatio(0);
+        for(int i=0;i<100;i++){
+            obj.put("visits",i);
+        }
+        assertEquals(99,obj.getInt("visits"));
+    }
+}
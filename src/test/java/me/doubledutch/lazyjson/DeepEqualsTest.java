@@ -105,4 +105,94 @@ public class DeepEqualsTest{
 		assertEquals(o1.hashCode(),o2.hashCode());
 		assertNotEquals(o1.hashCode(),o3.hashCode());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testSourceKindEquality() throws LazyException{
+		String str="{\"name\":\"Caf\u00e9\",\"list\":[1,2.5,true,null]}";
+		LazyObject o1=new LazyObject(str);
+		LazyObject o2=new LazyObject(str.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+		LazyObject o3=new LazyObject("{\"list\":[1,2.5,true,null],\"name\":\"Caf\\u00e9\"}");
+		assertTrue(o1.equals(o2));
+		assertTrue(o2.equals(o1));
+		assertTrue(o1.equals(o3));
+		assertTrue(o2.equals(o3));
+
+		assertEquals(o1.hashCode(),o2.hashCode());
+		assertEquals(o1.hashCode(),o3.hashCode());
+	}
+
+	@Test
+	public void testWideObjectEquality() throws LazyException{
+		StringBuilder b1=new StringBuilder("{");
+		StringBuilder b2=new StringBuilder("{");
+		for(int i=0;i<40;i++){
+			if(i>0){
+				b1.append(",");
+				b2.append(",");
+			}
+			b1.append("\"f").append(i).append("\":").append(i);
+			b2.append("\"f").append(39-i).append("\":").append(39-i);
+		}
+		LazyObject o1=new LazyObject(b1.append("}").toString());
+		LazyObject o2=new LazyObject(b2.append("}").toString());
+		assertTrue(o1.equals(o2));
+		assertEquals(o1.hashCode(),o2.hashCode());
+		o2.put("f7",8);
+		assertFalse(o1.equals(o2));
+	}
+
+	@Test
+	public void testModifiedEquality() throws LazyException{
+		LazyObject o1=new LazyObject("{\"foo\":13,\"bar\":[1,2]}");
+		LazyObject o2=new LazyObject("{\"foo\":13,\"bar\":[1,2]}");
+		int hash=o1.hashCode();
+		assertEquals(hash,o1.hashCode());
+		o1.put("foo",14);
+		assertNotEquals(hash,o1.hashCode());
+		assertFalse(o1.equals(o2));
+		o1.put("foo",13);
+		assertEquals(hash,o1.hashCode());
+		assertTrue(o1.equals(o2));
+
+		LazyArray a1=o2.getJSONArray("bar");
+		int arrayHash=a1.hashCode();
+		o2.getJSONArray("bar").put(3);
+		assertNotEquals(arrayHash,a1.hashCode());
+		assertFalse(o1.equals(o2));
+	}
+
+	@Test
+	public void testSharedSubtreeHash() throws LazyException{
+		LazyObject inner=new LazyObject("{\"foo\":1}");
+		LazyObject outer=new LazyObject("{}");
+		outer.put("inner",inner);
+		int hash=outer.hashCode();
+		inner.put("foo",2);
+		assertNotEquals(hash,outer.hashCode());
+		assertEquals(new LazyObject("{\"inner\":{\"foo\":2}}"),outer);
+	}
+
+	@Test
+	public void testLargeIntegerEquality() throws LazyException{
+		LazyArray a1=new LazyArray("[123456789012345678901234567890,-9223372036854775808]");
+		LazyArray a2=new LazyArray("[ 123456789012345678901234567890, -9223372036854775808 ]");
+		LazyArray a3=new LazyArray("[123456789012345678901234567891,-9223372036854775808]");
+		assertTrue(a1.equals(a2));
+		assertFalse(a1.equals(a3));
+		assertEquals(a1.hashCode(),a2.hashCode());
+	}
+
+	@Test
+	public void testSignedZeroEquality() throws LazyException{
+		LazyArray a1=new LazyArray("[0.0]");
+		LazyArray a2=new LazyArray("[-0.0]");
+		assertFalse(a1.equals(a2));
+		a1.hashCode();
+		a2.hashCode();
+		assertFalse(a1.equals(a2));
+		LazyArray a3=new LazyArray("[0.00]");
+		assertTrue(a1.equals(a3));
+		assertEquals(a1.hashCode(),a3.hashCode());
+		assertTrue(new LazyArray("[-0.0]").equals(new LazyArray("[-0e0]")));
+	}
+}
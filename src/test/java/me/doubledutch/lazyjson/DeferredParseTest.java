@@ -0,0 +1,135 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class DeferredParseTest{
+    private static final String DOC="{\"id\":42,\"type\":\"event\",\"body\":{\"text\":\"a}]\\\"[{\",\"list\":[1,[2,{\"x\":3}],{}]},\"tags\":[\"a\",\"b\"],\"empty\":{}}";
+
+    @Test
+    public void testTopLevel() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,0);
+        assertTrue(obj.root.child.next.next.child.deferred);
+        assertEquals(42,obj.getInt("id"));
+        assertEquals("event",obj.getString("type"));
+        assertEquals(DOC,obj.toString());
+        LazyObject body=obj.getJSONObject("body");
+        assertFalse(body.root.deferred);
+        assertEquals("a}]\"[{",body.getString("text"));
+        LazyArray list=body.getJSONArray("list");
+        assertEquals(3,list.length());
+        assertEquals(3,list.getJSONArray(1).getJSONObject(1).getInt("x"));
+        assertEquals(2,obj.getJSONArray("tags").length());
+        assertEquals(0,obj.getJSONObject("empty").length());
+    }
+
+    @Test
+    public void testDepths() throws LazyException{
+        LazyObject full=new LazyObject(DOC);
+        for(int depth=0;depth<4;depth++){
+            LazyObject obj=new LazyObject(DOC,depth);
+            assertEquals(full.toString(),obj.toString());
+            assertEquals(3,obj.getJSONObject("body").getJSONArray("list").getJSONArray(1).getJSONObject(1).getInt("x"));
+            assertEquals(full.root.toString(0),new LazyObject(DOC,depth).root.toString(0));
+        }
+        LazyObject obj=new LazyObject(DOC,1);
+        LazyNode list=obj.root.child.next.next.child.child.next.child;
+        assertEquals(LazyNode.ARRAY,list.type);
+        assertTrue(list.deferred);
+    }
+
+    @Test
+    public void testModify() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,0);
+        obj.put("id",7);
+        obj.getJSONObject("body").put("text","b");
+        assertEquals("b",new LazyObject(obj.toString()).getJSONObject("body").getString("text"));
+        assertEquals(3,new LazyObject(obj.toString()).getJSONObject("body").getJSONArray("list").length());
+    }
+
+    @Test
+    public void testArray() throws LazyException{
+        LazyArray array=new LazyArray("[[1,2],{\"a\":[3]},4]",0);
+        assertEquals(3,array.length());
+        assertEquals(2,array.getJSONArray(0).getInt(1));
+        assertEquals(3,array.getJSONObject(1).getJSONArray("a").getInt(0));
+        assertEquals(4,array.getInt(2));
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        LazyParser parser=new LazyParser(ByteBuffer.wrap(DOC.getBytes(StandardCharsets.UTF_8)));
+        parser.expandDepth=0;
+        parser.tokenize();
+        LazyObject obj=new LazyObject(parser.root);
+        assertEquals("a}]\"[{",obj.getJSONObject("body").getString("text"));
+    }
+
+    @Test
+    public void testTape() throws LazyException{
+        LazyTape full=new LazyTape(DOC);
+        for(int depth=0;depth<4;depth++){
+            LazyTape tape=new LazyTape();
+            LazyParser parser=new LazyParser(DOC);
+            parser.expandDepth=depth;
+            parser.tokenize(tape);
+            assertEquals(full.size,tape.size);
+            for(int i=0;i<full.size;i++){
+                assertEquals(full.type[i],tape.type[i]);
+                assertEquals(full.start[i],tape.start[i]);
+                assertEquals(full.end[i],tape.end[i]);
+                assertEquals(full.next[i],tape.next[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testReader() throws LazyException{
+        LazyReader reader=new LazyReader(DOC);
+        reader.parser.expandDepth=0;
+        StringBuilder buf=new StringBuilder();
+        for(LazyEvent event=reader.next();event!=null;event=reader.next()){
+            buf.append(event.name()).append(reader.getDepth()).append(" ");
+        }
+        assertEquals("START_OBJECT1 FIELD_NAME1 VALUE_INTEGER1 FIELD_NAME1 VALUE_STRING1"
+            +" FIELD_NAME1 START_OBJECT2 END_OBJECT2 FIELD_NAME1 START_ARRAY2 END_ARRAY2"
+            +" FIELD_NAME1 START_OBJECT2 END_OBJECT2 END_OBJECT1 ",buf.toString());
+        reader=new LazyReader(DOC);
+        reader.parser.expandDepth=0;
+        for(int i=0;i<6;i++){
+            reader.next();
+        }
+        assertEquals(LazyEvent.FIELD_NAME,reader.getEvent());
+        assertEquals("body",reader.getFieldName());
+        assertEquals(LazyEvent.START_OBJECT,reader.next());
+        assertEquals(DOC.indexOf("{\"text"),reader.getStartIndex());
+        reader.skipChildren();
+        assertEquals(LazyEvent.END_OBJECT,reader.getEvent());
+        assertEquals(DOC.indexOf(",\"tags")-1,reader.getStartIndex());
+        assertEquals(2,reader.getDepth());
+        assertEquals(LazyEvent.FIELD_NAME,reader.next());
+        assertEquals("tags",reader.getFieldName());
+    }
+
+    @Test
+    public void testInvalidDeferred() throws LazyException{
+        LazyObject obj=new LazyObject("{\"id\":1,\"body\":{\"foo\" 1}}",0);
+        assertEquals(1,obj.getInt("id"));
+        try{
+            obj.getJSONObject("body");
+            fail();
+        }catch(LazyException e){}
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnterminated() throws LazyException{
+        new LazyObject("{\"id\":1,\"body\":{\"foo\":\"}\"}",0);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMismatched() throws LazyException{
+        new LazyObject("{\"body\":{\"foo\":1]}",0).getJSONObject("body");
+    }
+}
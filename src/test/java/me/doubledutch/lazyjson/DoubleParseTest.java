@@ -0,0 +1,122 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class DoubleParseTest{
+    private static final String[] HARD={
+        "0","-0","0.0","-0.0","1","-1","0.1","0.3","3.1415","1e23","8.41e21","9007199254740993",
+        "9007199254740992","9007199254740991","2.2250738585072011e-308","2.2250738585072012e-308",
+        "4.9e-324","2.4703282292062328e-324","1.7976931348623157e308","1.7976931348623158e308",
+        "1.7976931348623159e308","1e309","1e-400","123456789012345678","1234567890123456789",
+        "12345678901234567890","0.000000000000000000000000000001","7.038531e-26","9.5e-323",
+        "1.00000000000000011102230246251565404236316680908203125","1.00000000000000011102230246251565404236316680908203124",
+        "5e-324","1E10","1e+10","-1.5E-3","100000000000000000000000","0.1e1","179769313486231580793728971405303415079934132710037826936173778980444968292764750946649017977587207096330286416692887910946555547851940402630657488671505820681908902000708383676273854845817711531764475730270069855571366959622842914819860834936475292719074168444365510704342711559699508093042880177904174497791",
+        "2.225073858507201136057409796709131975934819546351645648023426109724822222021076945516529523908135087914149158913039621106870086438694594645527657207407820621743379988141063267329253552286881372149012981122451451889849057222307285255133155755015914397476397983411801999323962548289017107081850690630666655994938275772572015763062615864497802206963963011546813637285760624466716612590087080700212302286767221458183282963236431806287136125373938744016",
+        "1448997445238699","3.2e-323","4.4501477170144023e-308","4.4501477170144027e-308","1.0e-99999"
+    };
+
+    // Returns true if the value was parsed without falling back
+    private static boolean check(String str){
+        long expected=Double.doubleToRawLongBits(Double.parseDouble(str));
+        double fast=LazyDoubleParser.parse(str.toCharArray(),0,str.length());
+        if(fast==fast){
+            assertEquals(str,expected,Double.doubleToRawLongBits(fast));
+        }
+        byte[] data=str.getBytes(StandardCharsets.UTF_8);
+        double fastBytes=LazyDoubleParser.parse(ByteBuffer.wrap(data),0,data.length);
+        assertEquals(str,Double.doubleToRawLongBits(fast),Double.doubleToRawLongBits(fastBytes));
+        return fast==fast;
+    }
+
+    @Test
+    public void testHardCases(){
+        for(String str:HARD){
+            check(str);
+            if(!str.startsWith("-")){
+                check("-"+str);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomDoubles(){
+        Random random=new Random(42);
+        int fast=0;
+        for(int i=0;i<200000;i++){
+            double value=Double.longBitsToDouble(random.nextLong());
+            if(Double.isNaN(value) || Double.isInfinite(value)){
+                continue;
+            }
+            if(check(Double.toString(value))){
+                fast++;
+            }
+            check(String.format("%.15e",value));
+        }
+        // Only subnormals and a few rounding boundaries should fall back
+        assertTrue(fast>180000);
+    }
+
+    @Test
+    public void testRandomDecimals(){
+        Random random=new Random(7);
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<200000;i++){
+            buf.setLength(0);
+            int digits=1+random.nextInt(19);
+            for(int j=0;j<digits;j++){
+                buf.append((char)('0'+random.nextInt(10)));
+            }
+            if(random.nextBoolean()){
+                buf.insert(1+random.nextInt(digits),'.');
+                if(buf.charAt(buf.length()-1)=='.'){
+                    buf.append('5');
+                }
+            }
+            buf.append('e').append(random.nextInt(700)-350);
+            check(buf.toString());
+        }
+    }
+
+    @Test
+    public void testFastPath(){
+        String[] values={"3.1415","-2.5e-3","1e300","123456.789","0.1","6.02214076e23"};
+        for(String str:values){
+            double value=LazyDoubleParser.parse(str.toCharArray(),0,str.length());
+            assertFalse(str,Double.isNaN(value));
+            assertEquals(Double.parseDouble(str),value,0);
+        }
+    }
+
+    @Test
+    public void testFallback(){
+        String[] values={"","-","1.","1e",".5","+1","1.5f","NaN","Infinity"," 1","0x10","1e-400","1e400","12345678901234567890"};
+        for(String str:values){
+            assertTrue(str,Double.isNaN(LazyDoubleParser.parse(str.toCharArray(),0,str.length())));
+        }
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        String str="{\"a\":0.1,\"b\":-1.7976931348623157e308,\"c\":42,\"d\":\"2.5\",\"e\":\"NaN\",\"f\":4.9e-324,\"g\":[1e23,-0.0]}";
+        LazyObject obj=new LazyObject(str);
+        assertEquals(0.1,obj.getDouble("a"),0);
+        assertEquals(-Double.MAX_VALUE,obj.getDouble("b"),0);
+        assertEquals(42.0,obj.getDouble("c"),0);
+        assertEquals(2.5,obj.getDouble("d"),0);
+        assertTrue(Double.isNaN(obj.getDouble("e")));
+        assertEquals(Double.MIN_VALUE,obj.getDouble("f"),0);
+        assertEquals(1e23,obj.getJSONArray("g").getDouble(0),0);
+        assertEquals(Double.doubleToRawLongBits(-0.0),Double.doubleToRawLongBits(obj.getJSONArray("g").getDouble(1)));
+        assertEquals(0.5,obj.optDouble("x",0.5),0);
+        obj.put("a",2.75);
+        assertEquals(2.75,obj.getDouble("a"),0);
+
+        LazyObject bytes=new LazyObject(str.getBytes(StandardCharsets.UTF_8));
+        assertEquals(0.1,bytes.getDouble("a"),0);
+        assertEquals(1e23,bytes.getJSONArray("g").getDouble(0),0);
+    }
+}
@@ -0,0 +1,77 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class EagerNumberTest{
+    private static final String DATA="{\"i\":42,\"n\":-7,\"l\":9007199254740993,\"min\":-9223372036854775808,"
+        +"\"id\":12345678901234567890,\"d\":0.1,\"z\":-0.0,\"e\":1e-400,\"s\":\"12\",\"a\":[1,2.5,-3]}";
+
+    private static void checkValues(LazyObject eager) throws LazyException{
+        LazyObject lazy=new LazyObject(DATA);
+        String[] keys={"i","n","l","min","d","z","s"};
+        for(String key:keys){
+            assertEquals(key,Double.doubleToRawLongBits(lazy.getDouble(key)),Double.doubleToRawLongBits(eager.getDouble(key)));
+            assertEquals(key,lazy.getLong(key),eager.getLong(key));
+        }
+        assertEquals(42,eager.getInt("i"));
+        assertEquals(-7,eager.getInt("n"));
+        assertEquals(9007199254740993L,eager.getLong("l"));
+        assertEquals(Long.MIN_VALUE,eager.getLong("min"));
+        assertEquals(Long.MIN_VALUE,eager.get("min"));
+        assertEquals(new BigInteger("12345678901234567890"),eager.getBigInteger("id"));
+        assertEquals(0.0,eager.getDouble("e"),0);
+        assertEquals(0,eager.getInt("d"));
+        assertEquals(42.0,eager.getDouble("i"),0);
+        LazyArray array=eager.getJSONArray("a");
+        assertEquals(1,array.getInt(0));
+        assertEquals(2.5,array.getDouble(1),0);
+        assertEquals(-3L,array.get(2));
+        try{
+            eager.getLong("id");
+            fail("Overflow was not reported");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("out of range"));
+        }
+    }
+
+    @Test
+    public void testCharSource() throws LazyException{
+        checkValues(new LazyObject(DATA,true));
+        checkValues(new LazyObject(DATA,false));
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        checkValues(new LazyObject(ByteBuffer.wrap(DATA.getBytes(StandardCharsets.UTF_8)),true));
+    }
+
+    @Test
+    public void testCharArraySource() throws LazyException{
+        char[] data=("  "+DATA).toCharArray();
+        checkValues(new LazyObject(data,2,data.length-2,true));
+    }
+
+    @Test
+    public void testDecodedTokens() throws LazyException{
+        LazyArray array=new LazyArray("[123,4.5,\"6\",1e400]",true);
+        assertEquals(123,array.root.child.number);
+        assertEquals(Double.doubleToRawLongBits(4.5),array.root.child.next.number);
+        assertEquals(LazyIntegerParser.INVALID,array.root.child.next.next.number);
+        LazyArray lazy=new LazyArray("[123]");
+        assertEquals(LazyIntegerParser.INVALID,lazy.root.child.number);
+        assertTrue(Double.isInfinite(array.getDouble(3)));
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject(DATA,true);
+        obj.put("i",99);
+        obj.put("d",2.25);
+        assertEquals(99,obj.getInt("i"));
+        assertEquals(2.25,obj.getDouble("d"),0);
+    }
+}
@@ -0,0 +1,120 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class FieldIndexTest{
+    private static String wide(int count){
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<count;i++){
+            if(i>0)buf.append(",");
+            buf.append("\"field").append(i).append("\":").append(i);
+        }
+        buf.append(",\"esc\\taped\":\"e\",\"\\u00e6\\u00f8\":\"u\",\"\u00e6\u00f8\u00e5\":\"utf\"}");
+        return buf.toString();
+    }
+
+    private static void checkWide(LazyObject obj,int count) throws LazyException{
+        for(int i=count-1;i>=0;i--){
+            assertEquals(i,obj.getInt("field"+i));
+        }
+        assertNotNull(obj.root.doc.findIndex(obj.root));
+        assertEquals("e",obj.getString("esc\taped"));
+        assertEquals("u",obj.getString("\u00e6\u00f8"));
+        assertEquals("utf",obj.getString("\u00e6\u00f8\u00e5"));
+        assertFalse(obj.has("field"+count));
+        assertFalse(obj.has("missing"));
+        assertEquals(0,obj.optInt("missing",0));
+        try{
+            obj.getInt("missing");
+            fail("Missing field was not reported");
+        }catch(LazyException e){}
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        checkWide(new LazyObject(wide(200)),200);
+        checkWide(new LazyObject(wide(200).getBytes(StandardCharsets.UTF_8)),200);
+    }
+
+    @Test
+    public void testSmallObject() throws LazyException{
+        LazyObject obj=new LazyObject(wide(4));
+        assertEquals(3,obj.getInt("field3"));
+        assertFalse(obj.has("missing"));
+        assertNull(obj.root.doc.findIndex(obj.root));
+    }
+
+    @Test
+    public void testFieldHash() throws LazyException{
+        String[] keys={"","a","field12","esc\taped","\u00e6\u00f8","\u00e6\u00f8\u00e5","\u20ac\ud83d\ude00"};
+        for(String key:keys){
+            LazyObject obj=new LazyObject("{}");
+            obj.put(key,1);
+            assertEquals(key.hashCode(),obj.root.child.getStringHash());
+            String json=new LazyObject("{}").put(key,1).toString();
+            assertEquals(key.hashCode(),new LazyObject(json).root.child.getStringHash());
+            assertEquals(key.hashCode(),new LazyObject(json.getBytes(StandardCharsets.UTF_8)).root.child.getStringHash());
+        }
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject(wide(100));
+        assertEquals(99,obj.getInt("field99"));
+        assertNotNull(obj.root.doc.findIndex(obj.root));
+        // Enough new fields to force the index to be rebuilt
+        for(int i=100;i<300;i++){
+            obj.put("field"+i,i);
+        }
+        obj.put("field5","five");
+        for(int i=0;i<300;i++){
+            if(i!=5){
+                assertEquals(i,obj.getInt("field"+i));
+            }
+        }
+        assertEquals("five",obj.getString("field5"));
+        for(int i=0;i<300;i+=3){
+            obj.remove("field"+i);
+        }
+        for(int i=0;i<300;i++){
+            assertEquals(i%3!=0,obj.has("field"+i));
+        }
+        obj.remove("field299");
+        obj.put("last",1);
+        assertEquals(1,obj.getInt("last"));
+        LazyObject copy=new LazyObject(obj.toString());
+        assertEquals(1,copy.getInt("last"));
+        assertFalse(copy.has("field299"));
+        assertEquals(298,copy.getInt("field298"));
+    }
+
+    @Test
+    public void testDuplicateNames() throws LazyException{
+        String str=wide(50);
+        str=str.substring(0,str.length()-1)+",\"field7\":\"second\"}";
+        LazyObject obj=new LazyObject(str);
+        assertEquals(49,obj.getInt("field49"));
+        assertNotNull(obj.root.doc.findIndex(obj.root));
+        assertEquals(7,obj.getInt("field7"));
+        obj.remove("field7");
+        assertEquals("second",obj.getString("field7"));
+        obj.remove("field7");
+        assertFalse(obj.has("field7"));
+    }
+
+    @Test
+    public void testSharedIndex() throws LazyException{
+        LazyObject outer=new LazyObject("{\"o\":"+wide(100)+"}");
+        LazyObject w1=outer.getJSONObject("o");
+        LazyObject w2=outer.getJSONObject("o");
+        assertEquals(99,w1.getInt("field99"));
+        assertNotNull(outer.root.doc.findIndex(w2.root));
+        w2.remove("field50");
+        assertFalse(w1.has("field50"));
+        w1.put("added",1);
+        assertEquals(1,w2.getInt("added"));
+        assertNull(outer.root.doc.findIndex(outer.root));
+    }
+}
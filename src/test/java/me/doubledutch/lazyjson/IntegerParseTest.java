@@ -0,0 +1,129 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class IntegerParseTest{
+    private static long parseChars(String str){
+        return LazyIntegerParser.parse(str.toCharArray(),0,str.length());
+    }
+
+    private static long parseBytes(String str,ByteOrder order){
+        // Pad the buffer so words can be read past the end of the number
+        byte[] data=(" "+str+"        ").getBytes(StandardCharsets.UTF_8);
+        return LazyIntegerParser.parse(ByteBuffer.wrap(data).order(order),1,1+str.length());
+    }
+
+    private static void check(String str,long expected){
+        assertEquals(str,expected,parseChars(str));
+        assertEquals(str,expected,parseBytes(str,ByteOrder.BIG_ENDIAN));
+        assertEquals(str,expected,parseBytes(str,ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Test
+    public void testRandomValues(){
+        Random random=new Random(1);
+        for(int i=0;i<100000;i++){
+            long value=random.nextLong()>>random.nextInt(64);
+            if(value!=Long.MIN_VALUE){
+                check(Long.toString(value),value);
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeCases(){
+        check("0",0);
+        check("-0",0);
+        check("12345678",12345678);
+        check("-87654321",-87654321);
+        check("1234567890123456",1234567890123456L);
+        check("9223372036854775807",Long.MAX_VALUE);
+        check("-9223372036854775807",-Long.MAX_VALUE);
+        check("000000000000000000000000042",42);
+    }
+
+    @Test
+    public void testInvalid(){
+        String[] values={"","-","+1","1.5","1e5","9223372036854775808","-9223372036854775809",
+            "12345678901234567890","1234567a","a2345678","1234\u01315678","1234567\u0130","12345678 ","--1"};
+        for(String str:values){
+            check(str,LazyIntegerParser.INVALID);
+        }
+    }
+
+    @Test
+    public void testLongValues() throws LazyException{
+        LazyObject obj=new LazyObject("{\"max\":9223372036854775807,\"min\":-9223372036854775808,\"id\":12345678901234567890,\"s\":\"0042\"}");
+        assertEquals(Long.MAX_VALUE,obj.getLong("max"));
+        assertEquals(Long.MIN_VALUE,obj.getLong("min"));
+        assertEquals(42,obj.getLong("s"));
+        assertEquals(new BigInteger("12345678901234567890"),obj.getBigInteger("id"));
+        assertEquals(Long.MAX_VALUE,obj.get("max"));
+        try{
+            obj.getLong("id");
+            fail("Overflow was not reported");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("out of range"));
+        }
+        // get keeps returning a Long, so values that do not fit are reported
+        // rather than returned as another type
+        try{
+            obj.get("id");
+            fail("Overflow was not reported");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("out of range"));
+        }
+    }
+
+    @Test
+    public void testIntValues() throws LazyException{
+        LazyArray array=new LazyArray("[2147483647,-2147483648,2147483648,\"12\",\"x1\",1.5]");
+        assertEquals(Integer.MAX_VALUE,array.getInt(0));
+        assertEquals(Integer.MIN_VALUE,array.getInt(1));
+        assertEquals(2147483648L,array.getLong(2));
+        assertEquals(12,array.getInt(3));
+        assertEquals(1,array.getInt(5));
+        try{
+            array.getInt(2);
+            fail("Overflow was not reported");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("out of range"));
+        }
+        try{
+            array.getInt(4);
+            fail("Invalid integer was not reported");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("not a valid integer"));
+        }
+    }
+
+    @Test
+    public void testDirtyValues() throws LazyException{
+        LazyObject obj=new LazyObject("{}");
+        obj.put("a",123456789012345L);
+        obj.put("b",-7);
+        obj.put("c","99999999999999999999");
+        assertEquals(123456789012345L,obj.getLong("a"));
+        assertEquals(-7,obj.getInt("b"));
+        assertEquals(new BigInteger("99999999999999999999"),obj.getBigInteger("c"));
+    }
+
+    @Test
+    public void testBigDecimal() throws LazyException{
+        byte[] data="{\"a\":1.10,\"b\":-3,\"c\":1e-3,\"d\":null}".getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=new LazyObject(data);
+        assertEquals(new BigDecimal("1.10"),obj.getBigDecimal("a"));
+        assertEquals(new BigDecimal("-3"),obj.getBigDecimal("b"));
+        assertEquals(new BigDecimal("0.001"),obj.getBigDecimal("c"));
+        assertEquals(BigInteger.ONE,obj.getBigInteger("a"));
+        assertEquals(BigDecimal.TEN,obj.optBigDecimal("d",BigDecimal.TEN));
+        assertNull(obj.optBigInteger("x",null));
+    }
+}
@@ -1,6 +1,9 @@
 package me.doubledutch.lazyjson;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
 import org.junit.*;
 import static org.junit.Assert.*;
 import java.util.List;
@@ -314,4 +317,110 @@ public class LazyArrayTest{
         assertNotNull(obj2);
         assertEquals(obj.getString("[]"),"{}");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOpenMappedFile() throws Exception{
+        String str="[{\"foo\":1},{\"foo\":\"\u00e6\u00f8\u00e5\"},{\"foo\":3}]";
+        File file=File.createTempFile("lazyjson",".json");
+        file.deleteOnExit();
+        FileOutputStream out=new FileOutputStream(file);
+        out.write(str.getBytes(StandardCharsets.UTF_8));
+        out.close();
+        LazyArray array=LazyArray.open(file.toPath());
+        assertEquals(3,array.length());
+        assertEquals("{\"foo\":\"\u00e6\u00f8\u00e5\"}",array.getJSONObject(1).toString());
+        assertEquals(3,array.getJSONObject(2).getInt("foo"));
+    }
+
+    private static File createFile(String str) throws Exception{
+        File file=File.createTempFile("lazyjson",".json");
+        file.deleteOnExit();
+        FileOutputStream out=new FileOutputStream(file);
+        out.write(str.getBytes(StandardCharsets.UTF_8));
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void testOpenMappedWindows() throws Exception{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<200;i++){
+            if(i>0)buf.append(",");
+            buf.append("{\"id\":").append(i).append(",\"s\":\"a,b]\\\"{\u00e6\u00f8\u00e5\"}");
+        }
+        buf.append("]");
+        String str=buf.toString();
+        // Small windows force every value to start in a new one
+        LazyArray array=LazyArray.open(createFile(str).toPath(),64);
+        assertEquals(200,array.length());
+        assertEquals(123,array.getJSONObject(123).getInt("id"));
+        assertEquals("a,b]\"{\u00e6\u00f8\u00e5",array.getJSONObject(199).getString("s"));
+        assertEquals(str,array.toString());
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        array.writeTo(out);
+        assertEquals(str,new String(out.toByteArray(),StandardCharsets.UTF_8));
+        assertTrue(array.equals(new LazyArray(str)));
+        assertEquals(new LazyArray(str).hashCode(),array.hashCode());
+        array.put("last");
+        assertEquals("last",array.getString(200));
+        array.getJSONObject(0).put("id",-1);
+        assertEquals(-1,new LazyArray(array.toString()).getJSONObject(0).getInt("id"));
+    }
+
+    @Test
+    public void testOpenMappedObjectWindows() throws Exception{
+        StringBuilder buf=new StringBuilder("{ ");
+        StringBuilder compact=new StringBuilder("{");
+        for(int i=0;i<100;i++){
+            if(i>0){
+                buf.append(" ,\n");
+                compact.append(",");
+            }
+            String field="\"field"+i+"\"";
+            String value="["+i+",{\"x\":null}]";
+            buf.append(field).append(" : ").append(value);
+            compact.append(field).append(":").append(value);
+        }
+        buf.append(" }\n");
+        compact.append("}");
+        String str=buf.toString();
+        LazyObject obj=LazyObject.open(createFile(str).toPath(),50);
+        assertEquals(42,obj.getJSONArray("field42").getInt(0));
+        assertTrue(obj.equals(new LazyObject(str)));
+        // The root is written out field by field without the whitespace
+        assertEquals(compact.toString(),obj.toString());
+    }
+
+    @Test
+    public void testOpenMappedWindowsEmpty() throws Exception{
+        LazyArray array=LazyArray.open(createFile("  [          ]          ").toPath(),4);
+        assertEquals(0,array.length());
+        assertEquals("[]",array.toString());
+    }
+
+    @Test
+    public void testOpenMappedWindowsErrors() throws Exception{
+        String[] bad={
+            "[1,[2,3,4,5,6,7,8,9,10]]",
+            "[1,2,3,4,5,6] x",
+            "[1,2,3,4,5,6}",
+            "[1,2,3,,4,5]",
+            "[1,2,3,4,5,6",
+            "[1,2,3,4,5,6,]",
+            "{\"a\":1,\"b\":}",
+            "1"
+        };
+        for(String str:bad){
+            try{
+                LazyArray.open(createFile(str).toPath(),8);
+                fail("No exception for "+str);
+            }catch(LazyException e){}
+        }
+        try{
+            LazyArray.open(createFile("[1,2,3,4,5,6,7,8,9,x]").toPath(),8);
+            fail("No exception for invalid value");
+        }catch(LazyException e){
+            assertTrue(e.getMessage(),e.getMessage().contains("at byte 19"));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LazyCharSequenceTest{
+    @Test
+    public void testObjectValues() throws LazyException{
+        LazyObject obj=new LazyObject("{\"foo\":\"bar\",\"esc\":\"a\\nb\",\"num\":42,\"n\":null}");
+        CharSequence seq=obj.getCharSequence("foo");
+        assertTrue(seq instanceof LazyCharSequence);
+        assertEquals(3,seq.length());
+        assertEquals('a',seq.charAt(1));
+        assertEquals("bar",seq.toString());
+        assertEquals("bar".hashCode(),seq.hashCode());
+        assertTrue(((LazyCharSequence)seq).contentEquals("bar"));
+        assertFalse(((LazyCharSequence)seq).contentEquals("baz"));
+        assertEquals("a\nb",obj.getCharSequence("esc"));
+        assertEquals("42",obj.getCharSequence("num").toString());
+        assertNull(obj.getCharSequence("n"));
+    }
+
+    @Test
+    public void testArrayValues() throws LazyException{
+        LazyArray array=new LazyArray("[\"foo\",\"\",\"x\\\"y\",-1.5]");
+        assertEquals("foo",array.getCharSequence(0).toString());
+        assertEquals(0,array.getCharSequence(1).length());
+        assertEquals(0,array.getCharSequence(1).hashCode());
+        assertEquals("x\"y",array.getCharSequence(2));
+        assertEquals("-1.5",array.getCharSequence(3).toString());
+    }
+
+    @Test
+    public void testEquality() throws LazyException{
+        LazyArray array=new LazyArray("[\"abc\",\"abc\",\"abd\"]");
+        CharSequence a=array.getCharSequence(0);
+        CharSequence b=array.getCharSequence(1);
+        assertEquals(a,b);
+        assertEquals(a.hashCode(),b.hashCode());
+        assertNotEquals(a,array.getCharSequence(2));
+        assertNotEquals(a,"abc");
+    }
+
+    @Test
+    public void testSubSequence() throws LazyException{
+        LazyObject obj=new LazyObject("{\"foo\":\"hello world\"}");
+        CharSequence seq=obj.getCharSequence("foo").subSequence(6,11);
+        assertEquals("world",seq.toString());
+        assertEquals("world".hashCode(),seq.hashCode());
+        StringBuilder buf=new StringBuilder("<");
+        ((LazyCharSequence)seq).appendTo(buf);
+        assertEquals("<world",buf.toString());
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject("{\"foo\":\"bar\"}");
+        obj.put("foo","baz");
+        CharSequence seq=obj.getCharSequence("foo");
+        assertTrue(seq instanceof LazyCharSequence);
+        assertEquals("baz",seq.toString());
+        assertEquals("{\"foo\":\"baz\"}",obj.toCharSequence());
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        LazyParser parser=new LazyParser(ByteBuffer.wrap("{\"foo\":\"b\u00e6r\"}".getBytes(StandardCharsets.UTF_8)));
+        parser.tokenize();
+        LazyObject obj=new LazyObject(parser.root);
+        assertEquals("b\u00e6r",obj.getCharSequence("foo"));
+    }
+
+    @Test
+    public void testToCharSequence() throws LazyException{
+        LazyObject obj=new LazyObject("{\"foo\":[1,2]}");
+        CharSequence seq=obj.toCharSequence();
+        assertTrue(seq instanceof LazyCharSequence);
+        assertEquals("{\"foo\":[1,2]}",seq.toString());
+        assertEquals("[1,2]",obj.getJSONArray("foo").toCharSequence().toString());
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testCharAtBounds() throws LazyException{
+        new LazyArray("[\"abc\"]").getCharSequence(0).charAt(3);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testSubSequenceBounds() throws LazyException{
+        new LazyArray("[\"abc\"]").getCharSequence(0).subSequence(2,4);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingKey() throws LazyException{
+        new LazyObject("{\"foo\":\"bar\"}").getCharSequence("bar");
+    }
+}
@@ -0,0 +1,169 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LazyFeedTest{
+    // Feeds the data in fragments of the given size, collecting elements as
+    // soon as they are available
+    private static List<LazyElement> feed(LazyFeed feed,String str,int fragment) throws LazyException{
+        byte[] data=str.getBytes(StandardCharsets.UTF_8);
+        List<LazyElement> list=new ArrayList<LazyElement>();
+        for(int i=0;i<data.length;i+=fragment){
+            ByteBuffer buf=ByteBuffer.wrap(data,i,Math.min(fragment,data.length-i));
+            feed.feed(buf);
+            assertFalse(buf.hasRemaining());
+            for(LazyElement element=feed.next();element!=null;element=feed.next()){
+                list.add(element);
+            }
+        }
+        feed.endOfInput();
+        assertNull(feed.next());
+        assertTrue(feed.isDone());
+        return list;
+    }
+
+    @Test
+    public void testArrayElements() throws LazyException{
+        String str=" [{\"foo\":1},{\"foo\":\"b\\\"]}a\\\\r\"} , [1,{\"x\":[]}] ,{\"foo\":\"\u00e6\u00f8\u00e5\"}]\n";
+        for(int fragment=1;fragment<20;fragment++){
+            List<LazyElement> list=feed(new LazyFeed(),str,fragment);
+            assertEquals(4,list.size());
+            assertEquals("{\"foo\":1}",list.get(0).toString());
+            assertEquals("b\"]}a\\r",((LazyObject)list.get(1)).getString("foo"));
+            assertEquals(2,((LazyArray)list.get(2)).length());
+            assertEquals("\u00e6\u00f8\u00e5",((LazyObject)list.get(3)).getString("foo"));
+        }
+    }
+
+    @Test
+    public void testJSONLines() throws LazyException{
+        String str="{\"id\":1}\n{\"id\":2}\r\n\n[3]{\"id\":4}";
+        for(int fragment=1;fragment<10;fragment++){
+            List<LazyElement> list=feed(new LazyFeed(),str,fragment);
+            assertEquals(4,list.size());
+            assertEquals(1,((LazyObject)list.get(0)).getInt("id"));
+            assertEquals(3,((LazyArray)list.get(2)).getInt(0));
+            assertEquals(4,((LazyObject)list.get(3)).getInt("id"));
+        }
+    }
+
+    @Test
+    public void testWholeArray() throws LazyException{
+        List<LazyElement> list=feed(new LazyFeed(false),"[1,2,3]",2);
+        assertEquals(1,list.size());
+        assertEquals(3,((LazyArray)list.get(0)).length());
+    }
+
+    @Test
+    public void testIncremental() throws LazyException{
+        LazyFeed feed=new LazyFeed();
+        feed.feed(ByteBuffer.wrap("{\"a\":1}{\"b\":".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1,((LazyObject)feed.next()).getInt("a"));
+        assertNull(feed.next());
+        feed.feed(ByteBuffer.wrap(new byte[0]));
+        assertNull(feed.next());
+        feed.feed(ByteBuffer.wrap("2}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2,((LazyObject)feed.next()).getInt("b"));
+        assertFalse(feed.isDone());
+        feed.endOfInput();
+        assertTrue(feed.isDone());
+    }
+
+    @Test
+    public void testLargeElement() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<10000;i++){
+            if(i>0)buf.append(",");
+            buf.append("{\"value\":").append(i).append("}");
+        }
+        buf.append("]");
+        List<LazyElement> list=feed(new LazyFeed(false),buf.toString(),1000);
+        assertEquals(9999,((LazyArray)list.get(0)).getJSONObject(9999).getInt("value"));
+        list=feed(new LazyFeed(),buf.toString(),1000);
+        assertEquals(10000,list.size());
+        assertEquals(5000,((LazyObject)list.get(5000)).getInt("value"));
+    }
+
+    @Test
+    public void testElementsAcrossChunks() throws LazyException{
+        StringBuilder buf=new StringBuilder("[ ");
+        StringBuilder text=new StringBuilder();
+        for(int i=0;i<20000;i++){
+            text.append((char)('a'+i%26));
+        }
+        for(int i=0;i<300;i++){
+            if(i>0)buf.append(" ,\n ");
+            buf.append("{ \"id\" : ").append(i).append(" , \"f\":-").append(i).append(".5e1");
+            buf.append(", \"s\":\"\\\"\u00e6\\u00f8\",\"l\":[true,false,null,[ ]]");
+            if(i%100==7){
+                buf.append(",\"long\":\"").append(text).append("\"");
+            }
+            buf.append("}");
+        }
+        buf.append(" ]");
+        String str=buf.toString();
+        LazyArray expected=new LazyArray(str);
+        int[] fragments={1,7,1000,9000,100000};
+        for(int fragment:fragments){
+            // As one element, tokenized bit by bit as the fragments arrive
+            List<LazyElement> list=feed(new LazyFeed(false),str,fragment);
+            assertEquals(1,list.size());
+            LazyArray array=(LazyArray)list.get(0);
+            assertTrue(array.equals(expected));
+            assertEquals(expected.hashCode(),array.hashCode());
+            assertTrue(new LazyArray(array.toString()).equals(expected));
+            assertEquals(text.toString(),array.getJSONObject(207).getString("long"));
+            assertEquals("\"\u00e6\u00f8",array.getJSONObject(299).getString("s"));
+            array.getJSONObject(150).put("id","changed");
+            assertEquals("changed",new LazyArray(array.toString()).getJSONObject(150).getString("id"));
+            // As separate elements that share the chunks they arrived in
+            list=feed(new LazyFeed(),str,fragment);
+            assertEquals(300,list.size());
+            for(int i=0;i<300;i++){
+                LazyObject obj=(LazyObject)list.get(i);
+                assertTrue(obj.equals(expected.getJSONObject(i)));
+                assertEquals(-i*10-5,obj.getDouble("f"),0);
+            }
+            assertEquals(text.toString(),((LazyObject)list.get(107)).getString("long"));
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncated() throws LazyException{
+        LazyFeed feed=new LazyFeed();
+        feed.feed(ByteBuffer.wrap("[{\"a\":1},{\"b\"".getBytes(StandardCharsets.UTF_8)));
+        feed.endOfInput();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidElement() throws LazyException{
+        LazyFeed feed=new LazyFeed();
+        feed.feed(ByteBuffer.wrap("{\"a\" 1}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testScalarValues() throws LazyException{
+        try{
+            feed(new LazyFeed(),"[1,\"a\",true]",3);
+            fail("Scalar value was not rejected");
+        }catch(LazyException e){
+            assertEquals("Values of a split array must be objects or arrays",e.getMessage());
+        }
+        // The same array is read as a whole when it is not split
+        List<LazyElement> list=feed(new LazyFeed(false),"[1,\"a\",true]",3);
+        assertEquals(1,list.size());
+        assertEquals("a",((LazyArray)list.get(0)).getString(1));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testFeedAfterEnd() throws LazyException{
+        LazyFeed feed=new LazyFeed();
+        feed.endOfInput();
+        feed.feed(ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,100 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+public class LazyFieldCursorTest{
+    private static final String DATA="{\"s\":\"str\",\"i\":42,\"big\":12345678901234567890,\"d\":2.5,\"t\":true,\"f\":\"false\","
+        +"\"n\":null,\"o\":{\"x\":1},\"a\":[1,2],\"e\\tsc\":\"a\\nb\"}";
+
+    private static void checkFields(LazyObject obj) throws LazyException{
+        LazyFieldCursor cursor=obj.fieldCursor();
+        assertTrue(cursor.next());
+        assertEquals("s",cursor.getKey().toString());
+        assertTrue(cursor.isKey("s"));
+        assertTrue(cursor.isKey(LazyKey.of("s")));
+        assertFalse(cursor.isKey("i"));
+        assertEquals(LazyType.STRING,cursor.getType());
+        assertEquals("str",cursor.getString());
+        assertEquals("str",cursor.getCharSequence().toString());
+        assertTrue(cursor.next());
+        assertEquals("i",cursor.getKeyString());
+        assertEquals(LazyType.INTEGER,cursor.getType());
+        assertEquals(42,cursor.getInt());
+        assertEquals(42L,cursor.get());
+        assertTrue(cursor.next());
+        assertEquals(new BigInteger("12345678901234567890"),cursor.getBigInteger());
+        assertTrue(cursor.next());
+        assertEquals(LazyType.FLOAT,cursor.getType());
+        assertEquals(2.5,cursor.getDouble(),0);
+        assertTrue(cursor.next());
+        assertTrue(cursor.getBoolean());
+        assertTrue(cursor.next());
+        assertFalse(cursor.getBoolean());
+        assertTrue(cursor.next());
+        assertTrue(cursor.isNull());
+        assertEquals(LazyObject.NULL,cursor.get());
+        assertTrue(cursor.next());
+        assertEquals(1,cursor.getJSONObject().getInt("x"));
+        assertTrue(cursor.next());
+        assertEquals(2,cursor.getJSONArray().getInt(1));
+        assertEquals(LazyType.ARRAY,cursor.getType());
+        try{
+            cursor.getJSONObject();
+            fail("Wrong type was not reported");
+        }catch(LazyException e){}
+        assertTrue(cursor.next());
+        assertEquals("e\tsc",cursor.getKey().toString());
+        assertTrue(cursor.isKey("e\tsc"));
+        assertEquals("a\nb",cursor.getString());
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+        try{
+            cursor.getKey();
+            fail("Missing field was not reported");
+        }catch(LazyException e){}
+    }
+
+    @Test
+    public void testCharSource() throws LazyException{
+        checkFields(new LazyObject(DATA));
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        checkFields(new LazyObject(DATA.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testKeyView() throws LazyException{
+        String str="{\"first\":1,\"second\":2}";
+        LazyFieldCursor cursor=new LazyObject(str).fieldCursor();
+        cursor.next();
+        assertTrue(cursor.getKey() instanceof LazyCharSequence);
+        assertEquals("first".hashCode(),cursor.getKey().hashCode());
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2}");
+        obj.put("a","one");
+        obj.put("c",3);
+        LazyFieldCursor cursor=obj.fieldCursor();
+        StringBuilder buf=new StringBuilder();
+        while(cursor.next()){
+            buf.append(cursor.getKey()).append("=").append(cursor.get()).append(";");
+            if(cursor.isKey("b")){
+                obj.put("d",true);
+            }
+        }
+        assertEquals("a=one;b=2;c=3;d=true;",buf.toString());
+    }
+
+    @Test
+    public void testEmpty() throws LazyException{
+        assertFalse(new LazyObject("{}").fieldCursor().next());
+        assertFalse(new LazyObject().fieldCursor().next());
+    }
+}
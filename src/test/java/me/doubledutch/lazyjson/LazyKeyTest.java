@@ -0,0 +1,245 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+public class LazyKeyTest{
+    private static final String DATA="{\"s\":\"str\",\"i\":42,\"l\":12147483647,\"d\":2.5,\"t\":true,\"n\":null,"
+        +"\"o\":{\"x\":1},\"a\":[1,2],\"e\\\"sc\":\"esc\",\"\u00e6\u00f8\u00e5\":\"utf\"}";
+
+    private static final LazyKey S=LazyKey.of("s");
+    private static final LazyKey I=LazyKey.of("i");
+    private static final LazyKey L=LazyKey.of("l");
+    private static final LazyKey D=LazyKey.of("d");
+    private static final LazyKey T=LazyKey.of("t");
+    private static final LazyKey N=LazyKey.of("n");
+    private static final LazyKey O=LazyKey.of("o");
+    private static final LazyKey A=LazyKey.of("a");
+    private static final LazyKey ESC=LazyKey.of("e\"sc");
+    private static final LazyKey UTF=LazyKey.of("\u00e6\u00f8\u00e5");
+    private static final LazyKey MISSING=LazyKey.of("missing");
+
+    private static void checkValues(LazyObject obj) throws LazyException{
+        assertEquals("str",obj.getString(S));
+        assertEquals("str",obj.getCharSequence(S).toString());
+        assertEquals("str",obj.optString(S));
+        assertEquals(LazyType.STRING,obj.getType(S));
+        assertEquals(42,obj.getInt(I));
+        assertEquals(42,obj.optInt(I));
+        assertEquals(42L,obj.get(I));
+        assertEquals(12147483647L,obj.getLong(L));
+        assertEquals(12147483647L,obj.optLong(L,0));
+        assertEquals(new BigInteger("12147483647"),obj.getBigInteger(L));
+        assertEquals(2.5,obj.getDouble(D),0);
+        assertEquals(2.5,obj.optDouble(D),0);
+        assertEquals(new BigDecimal("2.5"),obj.getBigDecimal(D));
+        assertTrue(obj.getBoolean(T));
+        assertTrue(obj.optBoolean(T));
+        assertTrue(obj.isNull(N));
+        assertEquals(LazyObject.NULL,obj.opt(N));
+        assertEquals(1,obj.getJSONObject(O).getInt("x"));
+        assertEquals(1,obj.optJSONObject(O).getInt("x"));
+        assertEquals(2,obj.getJSONArray(A).length());
+        assertEquals(2,obj.optJSONArray(A).getInt(1));
+        assertEquals("esc",obj.getString(ESC));
+        assertEquals("utf",obj.getString(UTF));
+        assertTrue(obj.has(UTF));
+        assertFalse(obj.has(MISSING));
+        assertNull(obj.opt(MISSING));
+        assertEquals("x",obj.optString(MISSING,"x"));
+        assertEquals(7,obj.optInt(MISSING,7));
+        assertEquals(7L,obj.optLong(MISSING,7L));
+        assertEquals(0.5,obj.optDouble(MISSING,0.5),0);
+        assertTrue(obj.optBoolean(MISSING,true));
+        assertNull(obj.optJSONObject(MISSING));
+        assertNull(obj.optBigInteger(MISSING,null));
+        assertNull(obj.optBigDecimal(MISSING,null));
+        try{
+            obj.getInt(MISSING);
+            fail("Missing field was not reported");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("'missing'"));
+        }
+    }
+
+    @Test
+    public void testCharSource() throws LazyException{
+        checkValues(new LazyObject(DATA));
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        checkValues(new LazyObject(DATA.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject("{}");
+        obj.put("\u00e6\u00f8\u00e5","utf");
+        obj.put("s","str");
+        assertEquals("utf",obj.getString(UTF));
+        assertEquals("str",obj.getString(S));
+        assertFalse(obj.has(I));
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        StringBuilder buf=new StringBuilder("{");
+        LazyKey[] keys=new LazyKey[100];
+        for(int i=0;i<100;i++){
+            if(i>0)buf.append(",");
+            buf.append("\"key").append(i).append("\":").append(i);
+            keys[i]=LazyKey.of("key"+i);
+        }
+        buf.append("}");
+        LazyObject obj=new LazyObject(buf.toString().getBytes(StandardCharsets.UTF_8));
+        for(int i=99;i>=0;i--){
+            assertEquals(i,obj.getInt(keys[i]));
+        }
+        assertNotNull(obj.root.doc.findIndex(obj.root));
+        assertFalse(obj.has(MISSING));
+    }
+
+    private static String shaped(int count,int shift){
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<count;i++){
+            if(i>0)buf.append(",");
+            int n=(i+shift)%count;
+            buf.append("\"key").append(n).append("\":").append(n);
+        }
+        buf.append("}");
+        return buf.toString();
+    }
+
+    @Test
+    public void testPrediction() throws LazyException{
+        LazyKey[] keys=new LazyKey[100];
+        for(int i=0;i<100;i++){
+            keys[i]=LazyKey.of("key"+i);
+        }
+        // The first document teaches the keys where their fields are
+        LazyObject first=new LazyObject(shaped(100,0));
+        for(int i=0;i<100;i++){
+            assertEquals(i,first.getInt(keys[i]));
+            assertEquals(i,keys[i].ordinal);
+        }
+        // Documents of the same shape find each field at its position
+        for(int doc=0;doc<10;doc++){
+            LazyObject obj=new LazyObject(shaped(100,0));
+            for(int i=99;i>=0;i-=7){
+                assertEquals(i,obj.getInt(keys[i]));
+            }
+            for(int i=0;i<100;i++){
+                assertEquals(i,obj.getInt(keys[i]));
+                assertEquals(i,keys[i].ordinal);
+            }
+        }
+        // A different shape is still read correctly and the keys adapt
+        LazyObject shifted=new LazyObject(shaped(100,3));
+        for(int i=0;i<100;i++){
+            assertEquals(i,shifted.getInt(keys[i]));
+        }
+        assertEquals(97,keys[0].ordinal);
+        LazyObject next=new LazyObject(shaped(100,3));
+        for(int i=0;i<100;i++){
+            assertEquals(i,next.getInt(keys[i]));
+        }
+        assertEquals(97,keys[0].ordinal);
+        assertFalse(next.has(MISSING));
+    }
+
+    @Test
+    public void testMismatchedShapes() throws LazyException{
+        LazyKey[] keys=new LazyKey[2000];
+        for(int i=0;i<2000;i++){
+            keys[i]=LazyKey.of("key"+i);
+        }
+        // Every document is shifted differently, so most remembered positions
+        // are wrong and the lookups fall back to the index
+        int[] shifts={0,1,1999,500,0,0,1234};
+        for(int shift:shifts){
+            LazyObject obj=new LazyObject(shaped(2000,shift));
+            for(int i=0;i<2000;i++){
+                int n=(i*7)%2000;
+                assertEquals(n,obj.getInt(keys[n]));
+                assertEquals(obj.getInt("key"+n),obj.getInt(keys[n]));
+            }
+            for(int i=0;i<2000;i++){
+                assertEquals((i-shift+2000)%2000,keys[i].ordinal);
+            }
+            // Wrong positions left by another document never find another field
+            obj.remove("key"+shift);
+            assertFalse(obj.has(keys[shift]));
+            obj.put("key"+shift,-1);
+            assertEquals(-1,obj.getInt(keys[shift]));
+            assertEquals((shift+1)%2000,obj.getInt(keys[(shift+1)%2000]));
+        }
+    }
+
+    @Test
+    public void testPredictionAfterChanges() throws LazyException{
+        LazyKey b=LazyKey.of("b");
+        LazyKey c=LazyKey.of("c");
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2,\"c\":3}");
+        assertEquals(3,obj.getInt(c));
+        assertEquals(2,obj.getInt(b));
+        obj.remove("a");
+        assertEquals(3,obj.getInt(c));
+        assertEquals(2,obj.getInt(b));
+        obj.remove("b");
+        assertFalse(obj.has(b));
+        obj.put("b",4);
+        assertEquals(4,obj.getInt(b));
+        assertEquals(3,obj.getInt(c));
+        assertEquals(0,c.ordinal);
+        LazyObject other=new LazyObject("{\"x\":0,\"c\":5}");
+        assertEquals(5,other.getInt(c));
+        assertEquals(1,c.ordinal);
+    }
+
+    @Test
+    public void testSharedObject() throws LazyException{
+        LazyKey b=LazyKey.of("b");
+        LazyObject outer=new LazyObject("{\"o\":{\"a\":1,\"b\":5}}");
+        LazyObject w1=outer.getJSONObject("o");
+        LazyObject w2=outer.getJSONObject("o");
+        assertEquals(5,w2.getInt(b));
+        w1.remove("b");
+        assertNull(w2.opt(b));
+        assertFalse(w2.has(b));
+        w1.put("b",6);
+        assertEquals(6,w2.getInt(b));
+    }
+
+    @Test
+    public void testDuplicateNames() throws LazyException{
+        LazyKey a=LazyKey.of("a");
+        assertEquals(1,new LazyObject("{\"b\":0,\"a\":1}").getInt(a));
+        LazyObject obj=new LazyObject("{\"a\":2,\"a\":3}");
+        assertEquals(obj.getInt("a"),obj.getInt(a));
+        assertEquals(2,obj.getInt(a));
+        // The same holds past the point where wide objects are indexed
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<40;i++){
+            buf.append("\"key").append(i).append("\":").append(i).append(",");
+        }
+        String wide=buf.toString();
+        LazyKey last=LazyKey.of("last");
+        assertEquals(1,new LazyObject(wide+"\"x\":0,\"last\":1}").getInt(last));
+        LazyObject dup=new LazyObject(wide+"\"last\":2,\"last\":3}");
+        assertEquals(2,dup.getInt(last));
+        assertEquals(dup.getInt("last"),dup.getInt(last));
+    }
+
+    @Test
+    public void testKey(){
+        assertEquals(LazyKey.of("abc"),LazyKey.of("abc"));
+        assertEquals("abc".hashCode(),LazyKey.of("abc").hashCode());
+        assertNotEquals(LazyKey.of("abc"),LazyKey.of("abd"));
+        assertEquals("abc",LazyKey.of("abc").toString());
+        assertEquals(3,LazyKey.of("\u00e6\u00f8\u00e5").length());
+    }
+}
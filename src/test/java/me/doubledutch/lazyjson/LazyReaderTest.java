@@ -0,0 +1,178 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class LazyReaderTest{
+    private static String events(LazyReader reader) throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(LazyEvent event=reader.next();event!=null;event=reader.next()){
+            if(buf.length()>0)buf.append(" ");
+            buf.append(event.name());
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void testEvents() throws LazyException{
+        LazyReader reader=new LazyReader(" {\"a\":[1,-2.5,\"x\"],\"b\":{},\"c\":true,\"d\":false,\"e\":null,\"f\":[]} ");
+        assertEquals("START_OBJECT FIELD_NAME START_ARRAY VALUE_INTEGER VALUE_FLOAT VALUE_STRING END_ARRAY"
+            +" FIELD_NAME START_OBJECT END_OBJECT FIELD_NAME VALUE_TRUE FIELD_NAME VALUE_FALSE"
+            +" FIELD_NAME VALUE_NULL FIELD_NAME START_ARRAY END_ARRAY END_OBJECT",events(reader));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        String str="{\"foo\":\"bar\",\"baz\":42,\"neg\":-378,\"pi\":3.1415,\"t\":true,\"n\":null,\"e\\tsc\":\"a\\nb\",\"big\":12147483647}";
+        LazyReader reader=new LazyReader(str);
+        assertEquals(LazyEvent.START_OBJECT,reader.next());
+        assertEquals(LazyEvent.FIELD_NAME,reader.next());
+        assertTrue(reader.isFieldName("foo"));
+        assertFalse(reader.isFieldName("fo"));
+        assertEquals("foo",reader.getFieldName());
+        assertEquals(LazyEvent.VALUE_STRING,reader.next());
+        assertEquals("bar",reader.getString());
+        assertEquals("bar",reader.getCharSequence().toString());
+        assertEquals("bar",str.substring(reader.getStartIndex(),reader.getEndIndex()));
+        assertFalse(reader.isFieldName("bar"));
+        reader.next();
+        reader.next();
+        assertEquals(42,reader.getInt());
+        assertEquals(42.0,reader.getDouble(),0);
+        reader.next();
+        reader.next();
+        assertEquals(-378,reader.getLong());
+        reader.next();
+        reader.next();
+        assertEquals(3.1415,reader.getDouble(),0);
+        reader.next();
+        reader.next();
+        assertTrue(reader.getBoolean());
+        assertEquals("true",reader.getString());
+        reader.next();
+        reader.next();
+        assertTrue(reader.isNull());
+        assertNull(reader.getString());
+        reader.next();
+        assertTrue(reader.isFieldName("e\tsc"));
+        reader.next();
+        assertEquals("a\nb",reader.getString());
+        reader.next();
+        reader.next();
+        assertEquals(12147483647L,reader.getLong());
+        assertEquals(LazyEvent.END_OBJECT,reader.next());
+        assertEquals(LazyEvent.END_OBJECT,reader.getEvent());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testFieldScan() throws LazyException{
+        LazyReader reader=new LazyReader("[{\"count\":1,\"x\":{\"count\":100}},{\"y\":[],\"count\":2}]");
+        long sum=0;
+        for(LazyEvent event=reader.next();event!=null;event=reader.next()){
+            if(event==LazyEvent.FIELD_NAME && reader.isFieldName("count")){
+                reader.next();
+                sum+=reader.getLong();
+            }
+        }
+        assertEquals(103,sum);
+    }
+
+    @Test
+    public void testSkipChildren() throws LazyException{
+        LazyReader reader=new LazyReader("{\"skip\":{\"a\":[1,{\"b\":\"}]\"}]},\"keep\":7}");
+        reader.next();
+        reader.next();
+        assertEquals(LazyEvent.START_OBJECT,reader.next());
+        assertEquals(2,reader.getDepth());
+        reader.skipChildren();
+        assertEquals(LazyEvent.END_OBJECT,reader.getEvent());
+        assertEquals(2,reader.getDepth());
+        assertEquals(LazyEvent.FIELD_NAME,reader.next());
+        assertTrue(reader.isFieldName("keep"));
+        reader.next();
+        assertEquals(7,reader.getInt());
+        assertEquals(1,reader.getDepth());
+        assertEquals(LazyEvent.END_OBJECT,reader.next());
+        assertEquals(1,reader.getDepth());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testCharRange() throws LazyException{
+        char[] raw="xx[true,\"ab\"]xx".toCharArray();
+        LazyReader reader=new LazyReader(raw,2,11);
+        assertEquals("START_ARRAY VALUE_TRUE VALUE_STRING END_ARRAY",events(reader));
+        reader=new LazyReader(raw,2,11);
+        reader.next();
+        reader.next();
+        reader.next();
+        assertEquals(9,reader.getStartIndex());
+        assertEquals(11,reader.getEndIndex());
+    }
+
+    @Test
+    public void testDeepNesting() throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<1000;i++)buf.append("[");
+        for(int i=0;i<1000;i++)buf.append("]");
+        LazyReader reader=new LazyReader(buf.toString());
+        int count=0;
+        while(reader.next()!=null){
+            count++;
+        }
+        assertEquals(2000,count);
+    }
+
+    @Test
+    public void testInvalid(){
+        String[] values={"","  ","42","[1 true]","{\"foo\":[1,2}","[1,2] 3","[1,2,]","{\"a\":1,}","[,1]",
+            "{\"a\" 1}","{1:2}","[nul]","[-]","[01]","[\"abc","[1","{\"a\":","[\"\\x\"]","{\"a\":]"};
+        for(String str:values){
+            try{
+                LazyReader reader=new LazyReader(str);
+                while(reader.next()!=null);
+                fail(str);
+            }catch(LazyException e){}
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testWrongType() throws LazyException{
+        LazyReader reader=new LazyReader("{\"foo\":\"bar\"}");
+        reader.next();
+        reader.next();
+        reader.getString();
+    }
+
+    @Test
+    public void testUtf8Source() throws LazyException{
+        byte[] data="{\"bl\u00e5\":[\"r\u00f8d\",7],\"n\":{\"x\":1}}".getBytes(StandardCharsets.UTF_8);
+        LazyReader reader=new LazyReader(data,0,data.length);
+        assertEquals(LazyEvent.START_OBJECT,reader.next());
+        assertEquals(LazyEvent.FIELD_NAME,reader.next());
+        assertTrue(reader.isFieldName("bl\u00e5"));
+        assertFalse(reader.isFieldName("bl"));
+        assertEquals(LazyEvent.START_ARRAY,reader.next());
+        assertEquals(2,reader.getDepth());
+        assertEquals(LazyEvent.VALUE_STRING,reader.next());
+        assertEquals("r\u00f8d",reader.getString());
+        assertEquals(LazyEvent.VALUE_INTEGER,reader.next());
+        assertEquals(7,reader.getInt());
+        assertEquals(LazyEvent.END_ARRAY,reader.next());
+        assertEquals(LazyEvent.FIELD_NAME,reader.next());
+        assertEquals(LazyEvent.START_OBJECT,reader.next());
+        reader.skipChildren();
+        assertEquals(LazyEvent.END_OBJECT,reader.getEvent());
+        assertEquals(LazyEvent.END_OBJECT,reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncatedUtf8() throws LazyException{
+        byte[] data="[\"abc".getBytes(StandardCharsets.UTF_8);
+        events(new LazyReader(data,0,data.length));
+    }
+}
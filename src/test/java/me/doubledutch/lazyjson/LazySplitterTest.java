@@ -0,0 +1,91 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class LazySplitterTest{
+    private static byte[] utf8(String str){
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String record(LazySplitter splitter,byte[] data){
+        return new String(data,splitter.getOffset(),splitter.getLength(),StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testJSONLines() throws LazyException{
+        byte[] data=utf8("{\"id\":1,\"s\":\"}{\\\"\"}\n{\"id\":\"\u00e6\"}\r\n\n[3,{}]{\"id\":4}\n");
+        LazySplitter splitter=new LazySplitter(ByteBuffer.wrap(data),false);
+        assertTrue(splitter.next());
+        assertEquals("{\"id\":1,\"s\":\"}{\\\"\"}",record(splitter,data));
+        assertTrue(splitter.next());
+        assertEquals("{\"id\":\"\u00e6\"}",record(splitter,data));
+        assertTrue(splitter.next());
+        assertEquals("[3,{}]",record(splitter,data));
+        assertTrue(splitter.next());
+        assertEquals(4,((LazyObject)splitter.getElement()).getInt("id"));
+        assertFalse(splitter.next());
+        assertFalse(splitter.next());
+    }
+
+    @Test
+    public void testArray() throws LazyException{
+        byte[] data=utf8(" [ {\"foo\":1} , {\"foo\":[2]},[]]");
+        LazySplitter splitter=new LazySplitter(data);
+        int count=0;
+        while(splitter.next()){
+            count++;
+            assertEquals(LazyType.ARRAY==splitter.getElement().getType(),count==3);
+        }
+        assertEquals(3,count);
+    }
+
+    @Test
+    public void testBufferRange() throws LazyException{
+        ByteBuffer buf=ByteBuffer.wrap(utf8("xx{\"a\":1}{}yy"),2,9);
+        LazySplitter splitter=new LazySplitter(buf);
+        assertTrue(splitter.next());
+        assertEquals(2,splitter.getOffset());
+        assertEquals(7,splitter.getLength());
+        assertTrue(splitter.next());
+        assertEquals(9,splitter.getOffset());
+        assertFalse(splitter.next());
+        assertEquals(2,buf.position());
+    }
+
+    @Test
+    public void testWriteTo() throws Exception{
+        LazySplitter splitter=new LazySplitter(utf8("[{\"foo\":\"\u00f8\"},{\"bar\":2}]"));
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        WritableByteChannel channel=Channels.newChannel(out);
+        int total=0;
+        while(splitter.next()){
+            total+=splitter.writeTo(channel);
+            out.write('\n');
+        }
+        assertEquals("{\"foo\":\"\u00f8\"}\n{\"bar\":2}\n",new String(out.toByteArray(),StandardCharsets.UTF_8));
+        assertEquals(out.size()-2,total);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testNoRecord() throws Exception{
+        new LazySplitter(utf8("{}")).getElement();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncated() throws LazyException{
+        LazySplitter splitter=new LazySplitter(utf8("{\"a\":1}{\"a\":"));
+        assertTrue(splitter.next());
+        splitter.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testRawValue() throws LazyException{
+        new LazySplitter(utf8("[1,2]")).next();
+    }
+}
@@ -0,0 +1,120 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+public class LazyStreamTest{
+    private static LazyStream stream(String str,boolean bytes,int chunkSize){
+        if(bytes){
+            return new LazyStream(new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8)),chunkSize);
+        }
+        return new LazyStream(new StringReader(str),chunkSize);
+    }
+
+    @Test
+    public void testArrayElements() throws Exception{
+        String str=" [{\"foo\":1},{\"foo\":\"b\\\"]}a\\\\r\"} , [1,{\"x\":[]}] ,{\"foo\":\"\u00e6\u00f8\u00e5\"}]\n";
+        for(int chunk=1;chunk<20;chunk++){
+            for(int i=0;i<2;i++){
+                LazyStream in=stream(str,i==0,chunk);
+                LazyElement e1=in.next();
+                assertEquals("{\"foo\":1}",e1.toString());
+                LazyObject e2=(LazyObject)in.next();
+                assertEquals("b\"]}a\\r",e2.getString("foo"));
+                LazyArray e3=(LazyArray)in.next();
+                assertEquals(2,e3.length());
+                LazyObject e4=(LazyObject)in.next();
+                assertEquals("\u00e6\u00f8\u00e5",e4.getString("foo"));
+                assertNull(in.next());
+                assertNull(in.next());
+            }
+        }
+    }
+
+    @Test
+    public void testJSONLines() throws Exception{
+        String str="{\"id\":1}\n{\"id\":2}\r\n\n[3]{\"id\":4}";
+        for(int chunk=1;chunk<10;chunk++){
+            LazyStream in=stream(str,chunk%2==0,chunk);
+            assertEquals(1,((LazyObject)in.next()).getInt("id"));
+            assertEquals(2,((LazyObject)in.next()).getInt("id"));
+            assertEquals(3,((LazyArray)in.next()).getInt(0));
+            assertEquals(4,((LazyObject)in.next()).getInt("id"));
+            assertNull(in.next());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception{
+        assertNull(stream("",false,4).next());
+        assertNull(stream("  \n",true,4).next());
+        assertNull(stream(" [ ] ",false,4).next());
+    }
+
+    @Test
+    public void testLargeElement() throws Exception{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<1000;i++){
+            if(i>0)buf.append(",");
+            buf.append(i);
+        }
+        buf.append("]");
+        LazyStream in=stream("["+buf+","+buf+"]",true,16);
+        assertEquals(1000,((LazyArray)in.next()).length());
+        assertEquals(999,((LazyArray)in.next()).getInt(999));
+        assertNull(in.next());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testRawValue() throws Exception{
+        LazyStream in=stream("[{},1]",false,4);
+        assertNotNull(in.next());
+        in.next();
+    }
+
+    @Test
+    public void testScalarValues() throws Exception{
+        String[] values={"1","-2.5","\"a\"","true","false","null"};
+        for(String value:values){
+            for(int i=0;i<2;i++){
+                LazyStream in=stream("[{\"a\":[1,\"a\",true]},"+value+"]",i==0,4);
+                assertEquals(3,((LazyObject)in.next()).getJSONArray("a").length());
+                try{
+                    in.next();
+                    fail("Scalar value "+value+" was not rejected");
+                }catch(LazyException e){
+                    assertEquals("Values of a split array must be objects or arrays",e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingComma() throws Exception{
+        LazyStream in=stream("[{} {}]",false,4);
+        assertNotNull(in.next());
+        in.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncatedElement() throws Exception{
+        LazyStream in=stream("{\"foo\":1}{\"foo\"",false,4);
+        assertNotNull(in.next());
+        in.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncatedArray() throws Exception{
+        LazyStream in=stream("[{},",true,4);
+        assertNotNull(in.next());
+        in.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidElement() throws Exception{
+        stream("{\"foo\":]",false,4).next();
+    }
+}
@@ -0,0 +1,140 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class LazyTapeTest{
+    @Test
+    public void testObjectValues() throws LazyException{
+        LazyTape tape=new LazyTape("{\"foo\":\"bar\",\"baz\":42,\"neg\":-378,\"pi\":3.1415,\"t\":true,\"f\":false,\"n\":null,\"e\\tsc\":\"a\\nb\",\"big\":12147483647}");
+        assertEquals(LazyType.OBJECT,tape.getType(0));
+        assertEquals(9,tape.length(0));
+        assertEquals("bar",tape.getString(tape.get(0,"foo")));
+        assertEquals(42,tape.getInt(tape.get(0,"baz")));
+        assertEquals(-378,tape.getLong(tape.get(0,"neg")));
+        assertEquals(3.1415,tape.getDouble(tape.get(0,"pi")),0);
+        assertEquals(LazyType.FLOAT,tape.getType(tape.get(0,"pi")));
+        assertTrue(tape.getBoolean(tape.get(0,"t")));
+        assertFalse(tape.getBoolean(tape.get(0,"f")));
+        assertTrue(tape.isNull(tape.get(0,"n")));
+        assertEquals("a\nb",tape.getString(tape.get(0,"e\tsc")));
+        assertEquals(12147483647l,tape.getLong(tape.get(0,"big")));
+        assertEquals(-1,tape.get(0,"missing"));
+    }
+
+    @Test
+    public void testNesting() throws LazyException{
+        String str="[{},[],{\"a\":[1,[2,3],{\"b\":{}}],\"c\":[]},4]";
+        LazyTape tape=new LazyTape(str);
+        assertEquals(str,tape.toString());
+        assertEquals(4,tape.length(0));
+        int first=tape.get(0,0);
+        assertEquals(LazyType.OBJECT,tape.getType(first));
+        assertEquals(-1,tape.getFirst(first));
+        assertEquals(0,tape.length(tape.get(0,1)));
+        int obj=tape.get(0,2);
+        int a=tape.get(obj,"a");
+        assertEquals(3,tape.length(a));
+        assertEquals(3,tape.getInt(tape.get(tape.get(a,1),1)));
+        assertEquals("{}",tape.toString(tape.get(tape.get(a,2),"b")));
+        assertEquals(0,tape.length(tape.get(obj,"c")));
+        assertEquals(4,tape.getInt(tape.get(0,3)));
+        assertEquals(-1,tape.get(0,4));
+    }
+
+    @Test
+    public void testIteration() throws LazyException{
+        LazyTape tape=new LazyTape("{\"x\":1,\"y\":{\"z\":2},\"w\":3}");
+        StringBuilder buf=new StringBuilder();
+        for(int field=tape.getFirst(0);field>-1;field=tape.getNext(field)){
+            buf.append(tape.getFieldName(field));
+        }
+        assertEquals("xyw",buf.toString());
+        assertEquals(9,tape.size());
+    }
+
+    @Test
+    public void testGrowth() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<100;i++){
+            if(i>0)buf.append(",");
+            buf.append("[").append(i).append("]");
+        }
+        buf.append("]");
+        LazyTape tape=new LazyTape(buf.toString());
+        assertEquals(201,tape.size());
+        assertEquals(100,tape.length(0));
+        assertEquals(99,tape.getInt(tape.get(tape.get(0,99),0)));
+    }
+
+    @Test
+    public void testDeepNesting() throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<100;i++)buf.append("[");
+        for(int i=0;i<100;i++)buf.append("]");
+        LazyTape tape=new LazyTape(buf.toString());
+        assertEquals(100,tape.size());
+    }
+
+    @Test
+    public void testReuse() throws LazyException{
+        LazyTape tape=new LazyTape();
+        assertEquals(0,tape.size());
+        tape.parse("{\"id\":123456,\"list\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20]}");
+        assertEquals(20,tape.length(tape.get(0,"list")));
+        tape.parse("{\"id\":7}");
+        assertEquals(7,tape.getInt(tape.get(0,"id")));
+        assertEquals(-1,tape.get(0,"list"));
+        assertEquals(3,tape.size());
+        try{
+            tape.parse("{\"id\":1");
+            fail();
+        }catch(LazyException e){}
+        assertEquals(0,tape.size());
+        char[] raw="xx[true]xx".toCharArray();
+        tape.parse(raw,2,6);
+        assertTrue(tape.getBoolean(tape.get(0,0)));
+        assertEquals("[true]",tape.toString());
+        tape.parse("[false]");
+        assertFalse(tape.getBoolean(tape.get(0,0)));
+    }
+
+    @Test
+    public void testUtf8Source() throws LazyException{
+        byte[] data="xx{\"bl\u00e5\":[\"r\u00f8d\",42,true],\"a\\u0062\":null}".getBytes(StandardCharsets.UTF_8);
+        LazyTape tape=new LazyTape();
+        tape.parse(data,2,data.length-2);
+        int arr=tape.get(0,"bl\u00e5");
+        assertEquals(3,tape.length(arr));
+        assertEquals("r\u00f8d",tape.getString(tape.get(arr,0)));
+        assertEquals(42,tape.getInt(tape.get(arr,1)));
+        assertTrue(tape.getBoolean(tape.get(arr,2)));
+        assertTrue(tape.isNull(tape.get(0,"ab")));
+        assertEquals(-1,tape.get(0,"bl"));
+        assertEquals("[\"r\u00f8d\",42,true]",tape.toString(arr));
+        tape.parse("[1]");
+        assertEquals(1,tape.getInt(tape.get(0,0)));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingComma() throws LazyException{
+        new LazyTape("[1 true]");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnclosed() throws LazyException{
+        new LazyTape("{\"foo\":[1,2}");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingData() throws LazyException{
+        new LazyTape("[1,2] 3");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testWrongType() throws LazyException{
+        LazyTape tape=new LazyTape("{\"foo\":\"bar\"}");
+        tape.getInt(tape.get(0,"foo"));
+    }
+}
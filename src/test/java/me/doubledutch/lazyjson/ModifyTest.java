@@ -325,4 +325,29 @@ public class ModifyTest{
         obj1.put("test",obj2.getJSONObject("baz"));
         assertEquals(obj1.getJSONObject("test").getInt("foo"),9);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void sharedDocumentTest() throws LazyException{
+        String str="{\"foo\":[1,{\"bar\":2}],\"baz\":{\"foo\":9}}";
+        LazyObject obj=new LazyObject(str);
+        LazyObject baz=obj.getJSONObject("baz");
+        baz.put("test","Hello");
+        obj.getJSONArray("foo").getJSONObject(1).put("bar",3);
+        assertSame(obj.root.doc,baz.root.doc);
+        assertSame(obj.root.doc,obj.getJSONArray("foo").root.doc);
+        assertEquals("{\"foo\":[1,{\"bar\":3}],\"baz\":{\"foo\":9,\"test\":\"Hello\"}}",obj.toString());
+    }
+
+    @Test
+    public void deepNestingTest() throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<100000;i++){
+            buf.append('[');
+        }
+        for(int i=0;i<100000;i++){
+            buf.append(']');
+        }
+        LazyArray array=new LazyArray(buf.toString());
+        assertEquals(1,array.length());
+    }
+}
@@ -0,0 +1,78 @@
+package me.doubledutch.lazyjson;
+
+import java.util.Random;
+
+/**
+ * Compares decoding numbers on first access with decoding them while
+ * tokenizing, on a document of metric samples where every value is a
+ * number. Each mode is timed for parsing alone and for parsing followed by
+ * reading every number one, two and three times.
+ *
+ * Run it with ./gradlew numberBenchmark. It is not part of the unit tests.
+ */
+public class NumberDecodeBenchmark{
+    private static final int SAMPLES=20000;
+    private static final int WARMUP=30;
+    private static final int ROUNDS=50;
+    private static final String[] FIELDS={"ts","lat","lon","alt","value","count"};
+
+    private static volatile double sink;
+
+    public static void main(String[] args) throws LazyException{
+        String data=createData();
+        System.out.println("Document: "+SAMPLES+" samples, "+data.length()+" characters");
+        System.out.println("reads   lazy ms  eager ms");
+        for(int reads=0;reads<=3;reads++){
+            run(data,false,reads,WARMUP);
+            run(data,true,reads,WARMUP);
+            double lazy=run(data,false,reads,ROUNDS);
+            double eager=run(data,true,reads,ROUNDS);
+            System.out.println(String.format("%5d %9.2f %9.2f",reads,lazy,eager));
+        }
+    }
+
+    // Returns the average time in milliseconds for one parse followed by the
+    // given number of reads of every number in the document
+    private static double run(String data,boolean decodeNumbers,int reads,int rounds) throws LazyException{
+        double sum=0;
+        long start=System.nanoTime();
+        for(int i=0;i<rounds;i++){
+            LazyArray samples=new LazyArray(data,decodeNumbers);
+            for(int r=0;r<reads;r++){
+                int length=samples.length();
+                for(int j=0;j<length;j++){
+                    LazyObject sample=samples.getJSONObject(j);
+                    sum+=sample.getLong("ts");
+                    sum+=sample.getDouble("lat");
+                    sum+=sample.getDouble("lon");
+                    sum+=sample.getDouble("alt");
+                    sum+=sample.getDouble("value");
+                    sum+=sample.getInt("count");
+                }
+            }
+        }
+        long time=System.nanoTime()-start;
+        sink=sum;
+        return time/1000000.0/rounds;
+    }
+
+    private static String createData(){
+        Random random=new Random(42);
+        StringBuilder buf=new StringBuilder("[");
+        long ts=1500000000000L;
+        for(int i=0;i<SAMPLES;i++){
+            if(i>0){
+                buf.append(',');
+            }
+            buf.append("{\"").append(FIELDS[0]).append("\":").append(ts+i*1000);
+            buf.append(",\"").append(FIELDS[1]).append("\":").append(random.nextDouble()*180-90);
+            buf.append(",\"").append(FIELDS[2]).append("\":").append(random.nextDouble()*360-180);
+            buf.append(",\"").append(FIELDS[3]).append("\":").append(random.nextInt(100000)/10.0);
+            buf.append(",\"").append(FIELDS[4]).append("\":").append(random.nextGaussian());
+            buf.append(",\"").append(FIELDS[5]).append("\":").append(random.nextInt(1000));
+            buf.append('}');
+        }
+        buf.append(']');
+        return buf.toString();
+    }
+}
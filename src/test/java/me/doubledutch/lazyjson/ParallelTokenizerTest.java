@@ -0,0 +1,124 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelTokenizerTest{
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool(){
+        pool=new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownPool(){
+        pool.shutdown();
+    }
+
+    private static String createArray(int count){
+        StringBuilder buf=new StringBuilder(" [\n");
+        for(int i=0;i<count;i++){
+            if(i>0)buf.append(" ,");
+            switch(i%5){
+                case 0:buf.append("{\"id\":").append(i).append(",\"s\":\"a,b]\\\\\",\"t\":[1,2.5,{\"x\":null}]}");break;
+                case 1:buf.append("\"quote \\\" comma , bracket [ {\"");break;
+                case 2:buf.append("[").append(i).append(",[],{},true,false]");break;
+                case 3:buf.append(-i);break;
+                default:buf.append("\"\\\\\\\\\"");
+            }
+        }
+        buf.append("]\n");
+        return buf.toString();
+    }
+
+    private static void assertSameTree(LazyNode expected,LazyNode actual){
+        assertEquals(expected.type,actual.type);
+        assertEquals(expected.startIndex,actual.startIndex);
+        assertEquals(expected.endIndex,actual.endIndex);
+        assertSame(expected.doc.cbuf==null,actual.doc.cbuf==null);
+        LazyNode e=expected.child;
+        LazyNode a=actual.child;
+        while(e!=null){
+            assertNotNull(a);
+            assertSameTree(e,a);
+            e=e.next;
+            a=a.next;
+        }
+        assertNull(a);
+    }
+
+    @Test
+    public void testSameTree() throws LazyException{
+        String str=createArray(500);
+        LazyParser parser=new LazyParser(str);
+        parser.tokenize();
+        char[] cbuf=str.toCharArray();
+        for(int chunk=16;chunk<512;chunk+=7){
+            LazyNode root=LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,chunk);
+            assertNotNull(root);
+            assertSameTree(parser.root,root);
+        }
+    }
+
+    @Test
+    public void testNotSplittable() throws LazyException{
+        char[] cbuf="[[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20]]".toCharArray();
+        assertNull(LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,4));
+        cbuf="{\"foo\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20]}".toCharArray();
+        assertNull(LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,4));
+    }
+
+    @Test
+    public void testInvalidParts() throws LazyException{
+        char[] cbuf="[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,,16,17,18,19,20]".toCharArray();
+        assertNull(LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,4));
+        cbuf="[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,]".toCharArray();
+        assertNull(LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,4));
+        cbuf="[1,2,3,4,5,6,7,8,9,10,\"11,12,13,14,15,16,17,18,19,20]".toCharArray();
+        assertNull(LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,4));
+    }
+
+    @Test
+    public void testLargeArray() throws LazyException{
+        String str=createArray(100000);
+        assertTrue(str.length()>LazyParallelTokenizer.MIN_PARALLEL_SIZE);
+        char[] cbuf=str.toCharArray();
+        assertNotNull(LazyParallelTokenizer.tokenize(new LazyDocument(cbuf),0,cbuf.length,pool,LazyParallelTokenizer.MIN_CHUNK_SIZE));
+        LazyArray sequential=new LazyArray(str);
+        LazyArray parallel=new LazyArray(str,pool);
+        assertSameTree(sequential.root,parallel.root);
+        assertEquals(100000,parallel.length());
+        assertEquals(99995,parallel.getJSONObject(99995).getInt("id"));
+        assertEquals("a,b]\\",parallel.getJSONObject(5).getString("s"));
+        assertEquals("quote \" comma , bracket [ {",parallel.getString(99996));
+        assertEquals(-99998,parallel.getInt(99998));
+    }
+
+    @Test
+    public void testLargeInvalidArray() throws LazyException{
+        String str=createArray(100000);
+        str=str.substring(0,str.length()/2)+"x"+str.substring(str.length()/2);
+        String expected=null;
+        try{
+            new LazyArray(str);
+        }catch(LazyException e){
+            expected=e.toString();
+        }
+        assertNotNull(expected);
+        try{
+            new LazyArray(str,pool);
+            fail();
+        }catch(LazyException e){
+            assertEquals(expected,e.toString());
+        }
+    }
+
+    @Test
+    public void testSmallArray() throws LazyException{
+        LazyArray array=new LazyArray("[1,2,3]",pool);
+        assertEquals(3,array.length());
+        assertEquals("[1,2,3]",array.toString());
+    }
+}
@@ -0,0 +1,83 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ProjectionTest{
+    private static final String DOC="{\"ts\":1234,\"user\":{\"id\":7,\"name\":\"x\\\"}\",\"tags\":[1,2]},\"skip\":{\"a\":[{\"b\":\"]\"}]},"
+        +"\"event\":{\"type\":\"click\",\"target\":null},\"num\":-1.5e3,\"b\":true,\"items\":[{\"id\":1,\"x\":2},{\"x\":3,\"id\":4}],\"last\":\"z\"}";
+
+    @Test
+    public void testPaths() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,LazyProjection.of("user.id","event.type","ts"));
+        assertEquals(1234,obj.getInt("ts"));
+        assertEquals(7,obj.getJSONObject("user").getInt("id"));
+        assertFalse(obj.getJSONObject("user").has("name"));
+        assertFalse(obj.getJSONObject("user").has("tags"));
+        assertEquals("click",obj.getJSONObject("event").getString("type"));
+        assertFalse(obj.getJSONObject("event").has("target"));
+        assertFalse(obj.has("skip"));
+        assertFalse(obj.has("num"));
+        assertFalse(obj.has("last"));
+        assertEquals(3,obj.length());
+        assertEquals("{\"ts\":1234,\"user\":{\"id\":7},\"event\":{\"type\":\"click\"}}",obj.toString());
+    }
+
+    @Test
+    public void testWholeValue() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,LazyProjection.of("user.id","user","last"));
+        assertEquals("x\"}",obj.getJSONObject("user").getString("name"));
+        assertEquals(2,obj.getJSONObject("user").getJSONArray("tags").length());
+        assertEquals("z",obj.getString("last"));
+        assertEquals(2,obj.length());
+        assertEquals("{\"user\":{\"id\":7,\"name\":\"x\\\"}\",\"tags\":[1,2]},\"last\":\"z\"}",obj.toString());
+    }
+
+    @Test
+    public void testArrays() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,LazyProjection.of("items.id"));
+        LazyArray items=obj.getJSONArray("items");
+        assertEquals(2,items.length());
+        assertEquals(1,items.getJSONObject(0).getInt("id"));
+        assertEquals(4,items.getJSONObject(1).getInt("id"));
+        assertFalse(items.getJSONObject(1).has("x"));
+        LazyArray array=new LazyArray("[{\"a\":1,\"b\":2},{\"b\":3}]",LazyProjection.of("b"));
+        assertEquals(1,array.getJSONObject(0).length());
+        assertEquals(3,array.getJSONObject(1).getInt("b"));
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        String str="{\"\u00e6\":1,\"b\":\"\u00f8\",\"c\\n\":2,\"d\":3}";
+        LazyParser parser=new LazyParser(ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8)));
+        parser.setProjection(LazyProjection.of("\u00e6","c\n"));
+        parser.tokenize();
+        LazyObject obj=new LazyObject(parser.root);
+        assertEquals(1,obj.getInt("\u00e6"));
+        assertEquals(2,obj.getInt("c\n"));
+        assertEquals(2,obj.length());
+    }
+
+    @Test
+    public void testEmptyProjection() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,LazyProjection.of());
+        assertEquals(0,obj.length());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingValue() throws LazyException{
+        new LazyObject("{\"a\":,\"b\":1}",LazyProjection.of("b"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingComma() throws LazyException{
+        new LazyObject("{\"a\":1,\"b\":1,}",LazyProjection.of("a"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnterminated() throws LazyException{
+        new LazyObject("{\"a\":1,\"b\":[1,2}",LazyProjection.of("a"));
+    }
+}
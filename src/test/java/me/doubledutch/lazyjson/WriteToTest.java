@@ -0,0 +1,83 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class WriteToTest{
+    private static final String SOURCE="{\"name\":\"Bj\u00f8rn \ud83d\ude00\",\"tags\":[\"a\\\"b\",1,2.5e3,true,false,null],\"nested\":{\"x\":[{},[]]}}";
+
+    private static String write(LazyElement element) throws IOException{
+        StringWriter writer=new StringWriter();
+        element.writeTo(writer);
+        StringBuilder builder=new StringBuilder();
+        element.writeTo(builder);
+        StringBuffer buffer=new StringBuffer();
+        element.writeTo(buffer);
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        element.writeTo(out);
+        String str=writer.toString();
+        assertEquals(str,builder.toString());
+        assertEquals(str,buffer.toString());
+        assertEquals(str,new String(out.toByteArray(),StandardCharsets.UTF_8));
+        assertEquals(element.toString(),str);
+        return str;
+    }
+
+    @Test
+    public void testUnmodified() throws Exception{
+        assertEquals(SOURCE,write(new LazyObject(SOURCE)));
+        assertEquals(SOURCE,write(new LazyObject(SOURCE.getBytes(StandardCharsets.UTF_8))));
+        byte[] data=SOURCE.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct=ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        direct.flip();
+        assertEquals(SOURCE,write(new LazyObject(direct)));
+    }
+
+    @Test
+    public void testModified() throws Exception{
+        String expected="{\"name\":\"Bj\u00f8rn \ud83d\ude00\",\"tags\":[\"a\\\"b\",1,2.5e3,true,false,null,\"\u00e6\"],\"nested\":{\"x\":[{},[]],\"y\":7},\"new\":\"line\\nbreak\"}";
+        LazyObject obj=new LazyObject(SOURCE.getBytes(StandardCharsets.UTF_8));
+        obj.getJSONArray("tags").put("\u00e6");
+        obj.getJSONObject("nested").put("y",7);
+        obj.put("new","line\nbreak");
+        assertEquals(expected,write(obj));
+        assertEquals(expected,write(new LazyObject(expected)));
+
+        obj=new LazyObject(SOURCE);
+        obj.getJSONArray("tags").put("\u00e6");
+        obj.getJSONObject("nested").put("y",7);
+        obj.put("new","line\nbreak");
+        assertEquals(expected,write(obj));
+        assertEquals("line\nbreak",new LazyObject(write(obj)).getString("new"));
+    }
+
+    @Test
+    public void testEscapedNames() throws Exception{
+        LazyObject obj=new LazyObject("{\"a\\\"b\":[\"c\\\\d\"]}");
+        obj.put("e",true);
+        assertEquals("{\"a\\\"b\":[\"c\\\\d\"],\"e\":true}",write(obj));
+        LazyArray arr=new LazyArray("[\"c\\\\d\",{\"f\\tg\":1}]");
+        arr.put(false);
+        assertEquals("[\"c\\\\d\",{\"f\\tg\":1},false]",write(arr));
+    }
+
+    @Test
+    public void testLargeDocument() throws Exception{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<5000;i++){
+            if(i>0)buf.append(",");
+            buf.append("{\"id\":").append(i).append(",\"text\":\"\u00e5\u00e4\u00f6 ").append(i).append("\"}");
+        }
+        buf.append("]");
+        LazyArray arr=new LazyArray(buf.toString());
+        arr.getJSONObject(2500).put("id",-1);
+        String str=write(arr);
+        assertEquals(buf.toString().replace("{\"id\":2500,","{\"id\":-1,"),str);
+    }
+}